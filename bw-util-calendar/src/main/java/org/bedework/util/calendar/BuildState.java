@@ -20,13 +20,20 @@ package org.bedework.util.calendar;
 
 import net.fortuna.ical4j.data.ContentHandler;
 import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.CalendarException;
 import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.Parameter;
 import net.fortuna.ical4j.model.Property;
+import net.fortuna.ical4j.model.TimeZone;
 import net.fortuna.ical4j.model.TimeZoneRegistry;
+import net.fortuna.ical4j.model.property.DateListProperty;
+import net.fortuna.ical4j.model.property.DateProperty;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /** Track the state while building calendars.
  *
@@ -60,6 +67,18 @@ public class BuildState {
 
   private List<Property> datesMissingTimezones = new ArrayList<>();
 
+  /* Values for datesMissingTimezones - held back until the timezone is
+   * resolved so we only parse them once. Null if the value was set before
+   * we knew the timezone was missing.
+   */
+  private List<String> deferredValues = new ArrayList<>();
+
+  /* True if the value for the current property is deferred */
+  private boolean deferring;
+
+  /* Timezones looked up by this build. Value is null for not found. */
+  private final Map<String, TimeZone> timezones = new HashMap<>();
+
   /**Constructor
    *
    * @param tzRegistry
@@ -68,6 +87,20 @@ public class BuildState {
     this.tzRegistry = tzRegistry;
   }
 
+  /** Clear out any state left from a previous build so this object and its
+   * content handler can be reused.
+   */
+  public void reset() {
+    calendars.clear();
+    calendar = null;
+    components.clear();
+    property = null;
+    datesMissingTimezones.clear();
+    deferredValues.clear();
+    deferring = false;
+    timezones.clear();
+  }
+
   /**
    * @param val
    */
@@ -140,9 +173,117 @@ public class BuildState {
 
   public void setProperty(final Property property) {
     this.property = property;
+    deferring = false;
   }
 
   public List<Property> getDatesMissingTimezones() {
     return datesMissingTimezones;
   }
+
+  /** Each distinct tzid is resolved once per build. Successful lookups go
+   * through the shared TzidCache.
+   *
+   * @param tzid the id
+   * @return timezone or null if not known (yet)
+   */
+  public TimeZone getTimeZone(final String tzid) {
+    if (tzRegistry == null) {
+      return null;
+    }
+
+    if (timezones.containsKey(tzid)) {
+      return timezones.get(tzid);
+    }
+
+    final TimeZone tz = TzidCache.getTimeZone(tzRegistry, tzid);
+
+    timezones.put(tzid, tz);
+
+    return tz;
+  }
+
+  /** Register a timezone defined by the calendar being built.
+   *
+   * @param tz the timezone
+   */
+  public void registerTimeZone(final TimeZone tz) {
+    if (tzRegistry == null) {
+      return;
+    }
+
+    tzRegistry.register(tz);
+
+    TzidCache.remove(tzRegistry, tz.getID());
+    timezones.remove(tz.getID());
+  }
+
+  /** The timezone for the current property is not yet available - it may be
+   * defined later in the calendar. Hold back the value until we can resolve
+   * the timezone.
+   */
+  public void deferProperty() {
+    datesMissingTimezones.add(property);
+    deferredValues.add(null);
+    deferring = true;
+  }
+
+  /**
+   * @return true if the value of the current property is being deferred.
+   */
+  public boolean getDeferring() {
+    return deferring;
+  }
+
+  /**
+   * @param val the value for the current deferred property.
+   */
+  public void setDeferredValue(final String val) {
+    deferredValues.set(deferredValues.size() - 1, val);
+  }
+
+  /** Called at the end of the build. Set the timezone if we have it now and
+   * then set the deferred value. Each distinct tzid is only looked up once.
+   */
+  public void resolveTimezones() {
+    for (int i = 0; i < datesMissingTimezones.size(); i++) {
+      final Property prop = datesMissingTimezones.get(i);
+      String val = deferredValues.get(i);
+
+      final Parameter tzParam = prop.getParameter(Parameter.TZID);
+
+      TimeZone tz = null;
+
+      if (tzParam != null) {
+        tz = getTimeZone(tzParam.getValue());
+      }
+
+      if (tz == null) {
+        if (val == null) {
+          // Value already set - leave it as it is
+          continue;
+        }
+      } else {
+        if (val == null) {
+          // Get the String representation of date(s) as
+          // we will need this after changing the timezone
+          val = prop.getValue();
+        }
+
+        if (prop instanceof DateProperty) {
+          ((DateProperty)prop).setTimeZone(tz);
+        } else if (prop instanceof DateListProperty) {
+          ((DateListProperty)prop).setTimeZone(tz);
+        }
+      }
+
+      try {
+        prop.setValue(val);
+      } catch (final Throwable t) {
+        throw new CalendarException(t);
+      }
+    }
+
+    datesMissingTimezones.clear();
+    deferredValues.clear();
+  }
 }
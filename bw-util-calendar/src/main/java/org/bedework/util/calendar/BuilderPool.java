@@ -0,0 +1,318 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.calendar;
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/** A pool of builders, e.g. JsonCalendarBuilder or XmlCalendarBuilder. The
+ * builders are not thread-safe but can be reused, so they are kept once
+ * created along with their content handlers, factory registries and parsers.
+ *
+ * <p>Idle builders are held per thread so a builder is only ever used by
+ * the thread which created it. A typical use is:
+ * <pre>
+ *   final JsonCalendarBuilder bldr = pool.checkOut();
+ *   try {
+ *     cal = bldr.build(rdr);
+ *   } finally {
+ *     pool.checkIn(bldr);
+ *   }
+ * </pre>
+ *
+ * <p>Call register to make the usage visible in the platform MBean server
+ * as org.bedework.util:service=BuilderPools,name=the-name and unregister
+ * when the pool is no longer needed.
+ *
+ * @author Mike Douglass
+ *
+ * @param <T> builder class
+ */
+public class BuilderPool<T> implements BuilderPoolMBean {
+  private transient Logger log;
+
+  /** Creates builders for the pool
+   *
+   * @param <T> builder class
+   */
+  public interface Factory<T> {
+    /**
+     * @return a new builder
+     */
+    T newBuilder();
+  }
+
+  private final String name;
+
+  private final Factory<T> factory;
+
+  private volatile int maxPerThread;
+
+  /* Idle builders for one thread. Only that thread changes them. */
+  private static class Idle<T> {
+    final ArrayDeque<T> bldrs = new ArrayDeque<>();
+
+    /* Read by getIdle on other threads */
+    volatile int count;
+  }
+
+  /* Every thread's idle builders so getIdle can leave out threads which
+   * have ended - their builders can never be reused. */
+  private final Map<Thread, Idle<T>> threadIdle = new WeakHashMap<>();
+
+  private final ThreadLocal<Idle<T>> idleBuilders =
+          new ThreadLocal<Idle<T>>() {
+            @Override
+            protected Idle<T> initialValue() {
+              final Idle<T> i = new Idle<>();
+
+              synchronized (threadIdle) {
+                threadIdle.put(Thread.currentThread(), i);
+              }
+
+              return i;
+            }
+          };
+
+  private final AtomicInteger inUse = new AtomicInteger();
+
+  private final AtomicLong checkouts = new AtomicLong();
+  private final AtomicLong reused = new AtomicLong();
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong discarded = new AtomicLong();
+
+  /**
+   * @param name for the pool - used for display
+   * @param factory creates the builders
+   * @param maxPerThread maximum number of idle builders kept for each thread.
+   *                     Usually 1 unless builds are nested.
+   */
+  public BuilderPool(final String name,
+                     final Factory<T> factory,
+                     final int maxPerThread) {
+    this.name = name;
+    this.factory = factory;
+    this.maxPerThread = maxPerThread;
+  }
+
+  /** Get a builder for the current thread. It must be returned with
+   * checkIn when done.
+   *
+   * @return a builder - never null
+   */
+  public T checkOut() {
+    checkouts.incrementAndGet();
+    inUse.incrementAndGet();
+
+    final Idle<T> i = idleBuilders.get();
+    final T bldr = i.bldrs.poll();
+
+    if (bldr != null) {
+      i.count = i.bldrs.size();
+      reused.incrementAndGet();
+      return bldr;
+    }
+
+    created.incrementAndGet();
+
+    return factory.newBuilder();
+  }
+
+  /** Return a builder obtained from checkOut by the current thread.
+   *
+   * @param val the builder
+   */
+  public void checkIn(final T val) {
+    inUse.decrementAndGet();
+
+    final Idle<T> i = idleBuilders.get();
+
+    if (i.bldrs.size() >= maxPerThread) {
+      discarded.incrementAndGet();
+      return;
+    }
+
+    i.bldrs.push(val);
+    i.count = i.bldrs.size();
+  }
+
+  /** Register with the platform MBean server, replacing any pool
+   * registered with the same name.
+   */
+  public void register() {
+    try {
+      final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName on = new ObjectName(objectName());
+
+      if (mbs.isRegistered(on)) {
+        mbs.unregisterMBean(on);
+      }
+
+      mbs.registerMBean(new StandardMBean(this, BuilderPoolMBean.class), on);
+    } catch (final Throwable t) {
+      getLogger().warn("Unable to register " + objectName() + ": " +
+                               t.getMessage());
+    }
+  }
+
+  /** Remove from the platform MBean server.
+   */
+  public void unregister() {
+    try {
+      final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName on = new ObjectName(objectName());
+
+      if (mbs.isRegistered(on)) {
+        mbs.unregisterMBean(on);
+      }
+    } catch (final Throwable t) {
+      getLogger().warn("Unable to unregister " + objectName() + ": " +
+                               t.getMessage());
+    }
+  }
+
+  /* ====================================================================
+   *                   MBean methods
+   * ==================================================================== */
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public int getMaxPerThread() {
+    return maxPerThread;
+  }
+
+  @Override
+  public void setMaxPerThread(final int val) {
+    maxPerThread = val;
+  }
+
+  @Override
+  public int getIdle() {
+    int count = 0;
+
+    synchronized (threadIdle) {
+      final Iterator<Map.Entry<Thread, Idle<T>>> it =
+              threadIdle.entrySet().iterator();
+
+      while (it.hasNext()) {
+        final Map.Entry<Thread, Idle<T>> ent = it.next();
+
+        if (!ent.getKey().isAlive()) {
+          it.remove();
+          continue;
+        }
+
+        count += ent.getValue().count;
+      }
+    }
+
+    return count;
+  }
+
+  @Override
+  public int getInUse() {
+    return inUse.get();
+  }
+
+  @Override
+  public long getCheckouts() {
+    return checkouts.get();
+  }
+
+  @Override
+  public long getReused() {
+    return reused.get();
+  }
+
+  @Override
+  public long getCreated() {
+    return created.get();
+  }
+
+  @Override
+  public long getDiscarded() {
+    return discarded.get();
+  }
+
+  @Override
+  public int getReusePercent() {
+    final long cos = checkouts.get();
+
+    if (cos == 0) {
+      return 0;
+    }
+
+    return (int)((reused.get() * 100) / cos);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("BuilderPool{");
+
+    sb.append("name=");
+    sb.append(getName());
+    sb.append(", idle=");
+    sb.append(getIdle());
+    sb.append(", inUse=");
+    sb.append(getInUse());
+    sb.append(", checkouts=");
+    sb.append(getCheckouts());
+    sb.append(", reused=");
+    sb.append(getReused());
+    sb.append(", created=");
+    sb.append(getCreated());
+    sb.append(", discarded=");
+    sb.append(getDiscarded());
+    sb.append("}");
+
+    return sb.toString();
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private String objectName() {
+    return "org.bedework.util:service=BuilderPools,name=" +
+            ObjectName.quote(name);
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+}
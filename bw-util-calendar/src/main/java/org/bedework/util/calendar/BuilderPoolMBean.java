@@ -0,0 +1,76 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.calendar;
+
+/** Display usage of a builder pool.
+ *
+ * @author Mike Douglass
+ */
+public interface BuilderPoolMBean {
+  /**
+   * @return name of the pool
+   */
+  String getName();
+
+  /**
+   * @return maximum number of idle builders kept per thread
+   */
+  int getMaxPerThread();
+
+  /**
+   * @param val maximum number of idle builders kept per thread
+   */
+  void setMaxPerThread(int val);
+
+  /**
+   * @return number of idle builders held over all live threads
+   */
+  int getIdle();
+
+  /**
+   * @return number of builders currently checked out
+   */
+  int getInUse();
+
+  /**
+   * @return total number of checkouts
+   */
+  long getCheckouts();
+
+  /**
+   * @return number of checkouts satisfied by an idle builder
+   */
+  long getReused();
+
+  /**
+   * @return number of builders created
+   */
+  long getCreated();
+
+  /**
+   * @return number of builders discarded on return because the thread
+   *         already held the maximum
+   */
+  long getDiscarded();
+
+  /**
+   * @return percentage of checkouts which reused a builder
+   */
+  int getReusePercent();
+}
@@ -0,0 +1,36 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.calendar;
+
+import net.fortuna.ical4j.model.Component;
+
+/** Receives components as they are parsed by a StreamingCalendarBuilder.
+ *
+ * @author Mike Douglass
+ */
+public interface ComponentHandler {
+  /** Called for each complete top level component, including any
+   * VTIMEZONE components. Sub-components, e.g. VALARM, are delivered
+   * inside their parent.
+   *
+   * @param val the component
+   * @throws Throwable on error - parsing will be abandoned
+   */
+  void component(Component val) throws Throwable;
+}
@@ -112,11 +112,7 @@ public class ContentHandlerImpl implements ContentHandler {
         }
       }
     } else {
-      bs.getCalendar().getComponents().add(component);
-      if ((component instanceof VTimeZone) && (bs.getTzRegistry() != null)) {
-        // register the timezone for use with iCalendar objects..
-        bs.getTzRegistry().register(new TimeZone((VTimeZone) component));
-      }
+      topLevelComponent(component);
     }
   }
 
@@ -144,7 +140,7 @@ public class ContentHandlerImpl implements ContentHandler {
     final Parameter param = parameterFactory.createParameter(name.toUpperCase(), value);
     bs.getProperty().getParameters().add(param);
     if ((param instanceof TzId) && (bs.getTzRegistry() != null)) {
-      final TimeZone timezone = bs.getTzRegistry().getTimeZone(param.getValue());
+      final TimeZone timezone = bs.getTimeZone(param.getValue());
       if (timezone != null) {
         updateTimeZone(bs.getProperty(), timezone);
 
@@ -161,8 +157,9 @@ public class ContentHandlerImpl implements ContentHandler {
       } else {
         // VTIMEZONE may be defined later, so so keep
         // track of dates until all components have been
-        // parsed, and then try again later
-        bs.getDatesMissingTimezones().add(bs.getProperty());
+        // parsed, and then try again later. The value is held
+        // back so we only parse it once.
+        bs.deferProperty();
       }
     }
   }
@@ -176,12 +173,21 @@ public class ContentHandlerImpl implements ContentHandler {
 
     assertProperty(bs.getProperty());
 
+    final String val;
+
     if (bs.getProperty() instanceof Escapable) {
-      bs.getProperty().setValue(Strings.unescape(value));
+      val = Strings.unescape(value);
     }
     else {
-      bs.getProperty().setValue(value);
+      val = value;
+    }
+
+    if (bs.getDeferring()) {
+      bs.setDeferredValue(val);
+      return;
     }
+
+    bs.getProperty().setValue(val);
   }
 
   /**
@@ -209,6 +215,36 @@ public class ContentHandlerImpl implements ContentHandler {
     bs.setProperty(propertyFactory.createProperty(name.toUpperCase()));
   }
 
+  /** Called when a component which is a direct child of the calendar is
+   * complete. This implementation adds it to the calendar being built.
+   * Timezones are registered for use with the rest of the calendar.
+   *
+   * @param component the completed component
+   */
+  protected void topLevelComponent(final Component component) {
+    bs.getCalendar().getComponents().add(component);
+    registerTimeZone(component);
+  }
+
+  /**
+   * @return the build state
+   */
+  protected BuildState getBuildState() {
+    return bs;
+  }
+
+  /** Register the component as a timezone if it is a VTIMEZONE and we
+   * have a registry.
+   *
+   * @param component the completed component
+   */
+  protected void registerTimeZone(final Component component) {
+    if ((component instanceof VTimeZone) && (bs.getTzRegistry() != null)) {
+      // register the timezone for use with iCalendar objects..
+      bs.registerTimeZone(new TimeZone((VTimeZone) component));
+    }
+  }
+
   private void assertComponent(final Component component) {
     if (component == null) {
       throw new CalendarException("Expected component not initialised");
@@ -55,13 +55,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import net.fortuna.ical4j.data.ParserException;
 import net.fortuna.ical4j.model.Calendar;
-import net.fortuna.ical4j.model.CalendarException;
-import net.fortuna.ical4j.model.Parameter;
-import net.fortuna.ical4j.model.Property;
-import net.fortuna.ical4j.model.TimeZone;
 import net.fortuna.ical4j.model.TimeZoneRegistry;
-import net.fortuna.ical4j.model.property.DateListProperty;
-import net.fortuna.ical4j.model.property.DateProperty;
 import net.fortuna.ical4j.model.property.Geo;
 import net.fortuna.ical4j.model.property.RequestStatus;
 
@@ -99,6 +93,9 @@ public class JsonCalendarBuilder {
 
   private final TimeZoneRegistry tzRegistry;
 
+  /* Reused for each build */
+  private final BuildState bs;
+
   private String lastComponent;
   private String lastProperty;
 
@@ -107,6 +104,9 @@ public class JsonCalendarBuilder {
    */
   public JsonCalendarBuilder(final TimeZoneRegistry tzRegistry) {
     this.tzRegistry = tzRegistry;
+
+    bs = new BuildState(tzRegistry);
+    bs.setContentHandler(new ContentHandlerImpl(bs));
   }
 
   /**
@@ -131,9 +131,9 @@ public class JsonCalendarBuilder {
    */
   public Calendar build(final Reader in)
           throws IOException, ParserException {
-    BuildState bs = new BuildState(tzRegistry);
-
-    bs.setContentHandler(new ContentHandlerImpl(bs));
+    bs.reset();
+    lastComponent = null;
+    lastProperty = null;
 
     try {
       final JsonParser parser = jsonFactory.createParser(in);
@@ -143,8 +143,12 @@ public class JsonCalendarBuilder {
       throw new ParserException(t.getMessage(), 0, t);
     }
 
-    if ((bs.getDatesMissingTimezones().size() > 0) && (tzRegistry != null)) {
-      resolveTimezones(bs);
+    if (bs.getDatesMissingTimezones().size() > 0) {
+      try {
+        bs.resolveTimezones();
+      } catch (final Throwable t) {
+        throw new ParserException(t.getMessage(), 0, t);
+      }
     }
 
     return bs.getCalendars().iterator().next();
@@ -534,48 +538,6 @@ public class JsonCalendarBuilder {
     return tzRegistry;
   }
 
-  private void resolveTimezones(final BuildState bs) throws IOException {
-
-    // Go through each property and try to resolve the TZID.
-    for (final Property property: bs.getDatesMissingTimezones()) {
-      final Parameter tzParam = property.getParameter(Parameter.TZID);
-
-      // tzParam might be null:
-      if (tzParam == null) {
-        continue;
-      }
-
-      //lookup timezone
-      final TimeZone timezone = tzRegistry.getTimeZone(tzParam.getValue());
-
-      // If timezone found, then update date property
-      if (timezone != null) {
-        // Get the String representation of date(s) as
-        // we will need this after changing the timezone
-        final String strDate = property.getValue();
-
-        // Change the timezone
-        if(property instanceof DateProperty) {
-          ((DateProperty) property).setTimeZone(timezone);
-        }
-        else if(property instanceof DateListProperty) {
-          ((DateListProperty) property).setTimeZone(timezone);
-        }
-
-        // Reset value
-        try {
-          property.setValue(strDate);
-        } catch (final ParseException e) {
-          // shouldn't happen as its already been parsed
-          throw new CalendarException(e);
-        } catch (final URISyntaxException e) {
-          // shouldn't happen as its already been parsed
-          throw new CalendarException(e);
-        }
-      }
-    }
-  }
-
   /* ====================================================================
    *                   XmlUtil wrappers
    * ==================================================================== */
@@ -18,6 +18,7 @@
 */
 package org.bedework.util.calendar;
 
+import org.bedework.util.misc.NameIndex;
 import org.bedework.util.xml.tagdefs.BedeworkServerTags;
 import org.bedework.util.xml.tagdefs.WebdavTags;
 import org.bedework.util.xml.tagdefs.XcalTags;
@@ -248,8 +249,7 @@ public class PropertyIndex implements Serializable {
 
     private final Class xmlClass;
 
-    private final static Map<String, ComponentInfoIndex> pnameLookup =
-            new HashMap<>();
+    private final static NameIndex<ComponentInfoIndex> pnameLookup;
 
     private final static Map<QName, ComponentInfoIndex> qnameLookup =
             new HashMap<>();
@@ -258,15 +258,19 @@ public class PropertyIndex implements Serializable {
             new HashMap<>();
 
     static {
+      final Map<String, ComponentInfoIndex> pnames = new HashMap<>();
+
       for (final ComponentInfoIndex cii: values()) {
         final String pname = cii.getPnameLC();
 
-        pnameLookup.put(pname, cii);
+        pnames.put(pname, cii);
 
         qnameLookup.put(cii.getQname(), cii);
 
         xmlClassLookup.put(cii.xmlClass, cii);
       }
+
+      pnameLookup = new NameIndex<>(pnames, false);
     }
 
     ComponentInfoIndex(final QName qname,
@@ -339,7 +343,7 @@ public class PropertyIndex implements Serializable {
      * @return ComponentInfoIndex
      */
     public static ComponentInfoIndex lookupPname(final String val) {
-      return pnameLookup.get(val.toLowerCase());
+      return pnameLookup.get(val);
     }
 
     /** get the index given the qname
@@ -569,14 +573,22 @@ public class PropertyIndex implements Serializable {
 
     private final DataType ptype;
 
-    private final static HashMap<String, ParameterInfoIndex> pnameLookup =
-            new HashMap<>();
+    private final static NameIndex<ParameterInfoIndex> pnameLookup;
+
+    private final static NameIndex<ParameterInfoIndex> jnameLookup;
 
     static {
+      final Map<String, ParameterInfoIndex> pnames = new HashMap<>();
+      final Map<String, ParameterInfoIndex> jnames = new HashMap<>();
+
       for (final ParameterInfoIndex pii: values()) {
         final String pname = pii.getPnameLC();
-        pnameLookup.put(pname, pii);
+        pnames.put(pname, pii);
+        jnames.put(pii.getJname(), pii);
       }
+
+      pnameLookup = new NameIndex<>(pnames, false);
+      jnameLookup = new NameIndex<>(jnames, false);
     }
 
     ParameterInfoIndex(final String pname) {
@@ -642,7 +654,16 @@ public class PropertyIndex implements Serializable {
      * @return ParameterInfoIndex
      */
     public static ParameterInfoIndex lookupPname(final String val) {
-      return pnameLookup.get(val.toLowerCase());
+      return pnameLookup.get(val);
+    }
+
+    /** get the index given the json parameter name
+     *
+     * @param val json name
+     * @return ParameterInfoIndex
+     */
+    public static ParameterInfoIndex lookupJname(final String val) {
+      return jnameLookup.get(val);
     }
   }
 
@@ -1336,6 +1357,8 @@ public class PropertyIndex implements Serializable {
 
     private final ComponentFlags components;
 
+    private final static NameIndex<PropertyInfoIndex> nameLookup;
+
     private final static Map<QName, PropertyInfoIndex> qnameLookup =
             new HashMap<>();
 
@@ -1343,11 +1366,17 @@ public class PropertyIndex implements Serializable {
             new HashMap<>();
 
     static {
+      final Map<String, PropertyInfoIndex> names = new HashMap<>();
+
       for (final PropertyInfoIndex pii: values()) {
+        names.put(pii.name(), pii);
+
         qnameLookup.put(pii.getQname(), pii);
 
         xmlClassLookup.put(pii.xmlClass, pii);
       }
+
+      nameLookup = new NameIndex<>(names, true);
     }
 
     PropertyInfoIndex(final QName qname,
@@ -1394,26 +1423,15 @@ public class PropertyIndex implements Serializable {
       this.immutable = immutable;
     }
 
-    /** Property names can have "-" in them. This method takes the
-     * name, replaces any "-" with underscore and then tries valueOf.
+    /** Property names can have "-" in them. This method looks up the
+     * name treating any "-" as underscore and ignoring case, i.e. it matches
+     * the enum constant names.
      *
      * @param pname - any case
      * @return index or null if not found
      */
     public static PropertyInfoIndex fromName(final String pname) {
-      final String name;
-
-      if (!pname.contains("-")) {
-        name = pname.toUpperCase();
-      } else {
-        name = pname.replace("-", "_").toUpperCase();
-      }
-
-      try {
-        return PropertyInfoIndex.valueOf(name);
-      } catch (final Throwable ignored) {
-        return null;
-      }
+      return nameLookup.get(pname);
     }
 
     /** get the qname
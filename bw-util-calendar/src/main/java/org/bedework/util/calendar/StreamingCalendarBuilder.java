@@ -0,0 +1,142 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.calendar;
+
+import net.fortuna.ical4j.data.CalendarParser;
+import net.fortuna.ical4j.data.CalendarParserFactory;
+import net.fortuna.ical4j.data.ParserException;
+import net.fortuna.ical4j.data.UnfoldingReader;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.CalendarException;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.TimeZoneRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/** Parses iCalendar data and hands each top level component to a handler
+ * as soon as it is complete. The components are not added to the calendar
+ * so memory use does not grow with the size of the input - only the
+ * calendar properties are retained.
+ *
+ * <p>Timezones are registered as they are seen so, as long as any
+ * VTIMEZONE appears before it is referenced, date values are resolved
+ * before the component is delivered. Note that this class is not
+ * thread-safe but may be reused - see BuilderPool.
+ *
+ * @author Mike Douglass
+ */
+public class StreamingCalendarBuilder {
+  private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+  private final BuildState bs;
+
+  private final CalendarParser parser;
+
+  private ComponentHandler handler;
+
+  private int components;
+
+  private class StreamingContentHandler extends ContentHandlerImpl {
+    StreamingContentHandler(final BuildState bs) {
+      super(bs);
+    }
+
+    @Override
+    protected void topLevelComponent(final Component component) {
+      registerTimeZone(component);
+
+      final BuildState state = getBuildState();
+
+      if (state.getDatesMissingTimezones().size() > 0) {
+        // Anything deferred belongs to this component - it's now or never.
+        state.resolveTimezones();
+      }
+
+      components++;
+
+      try {
+        handler.component(component);
+      } catch (final CalendarException ce) {
+        throw ce;
+      } catch (final Throwable t) {
+        throw new CalendarException(t);
+      }
+    }
+  }
+
+  /**
+   * @param tzRegistry a custom timezone registry
+   */
+  public StreamingCalendarBuilder(final TimeZoneRegistry tzRegistry) {
+    bs = new BuildState(tzRegistry);
+    bs.setContentHandler(new StreamingContentHandler(bs));
+    parser = CalendarParserFactory.getInstance().createParser();
+  }
+
+  /** Parse the stream, assumed to be UTF-8.
+   *
+   * @param in an input stream to read calendar data from
+   * @param handler called for each component
+   * @return a calendar with no components
+   * @throws IOException where an error occurs reading data
+   * @throws ParserException on bad data or if the handler fails
+   */
+  public Calendar build(final InputStream in,
+                        final ComponentHandler handler)
+          throws IOException, ParserException {
+    return build(new InputStreamReader(in, DEFAULT_CHARSET), handler);
+  }
+
+  /** Parse the data and hand each top level component to the handler.
+   *
+   * @param in a reader to read calendar data from
+   * @param handler called for each component
+   * @return a calendar with no components
+   * @throws IOException where an error occurs reading data
+   * @throws ParserException on bad data or if the handler fails
+   */
+  public Calendar build(final Reader in,
+                        final ComponentHandler handler)
+          throws IOException, ParserException {
+    bs.reset();
+    this.handler = handler;
+    components = 0;
+
+    try {
+      parser.parse(new UnfoldingReader(in), bs.getContentHandler());
+    } catch (final CalendarException ce) {
+      throw new ParserException(ce.getMessage(), 0, ce);
+    } finally {
+      this.handler = null;
+    }
+
+    return bs.getCalendar();
+  }
+
+  /**
+   * @return number of components delivered by the last build
+   */
+  public int getComponentCount() {
+    return components;
+  }
+}
@@ -0,0 +1,154 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.calendar;
+
+import net.fortuna.ical4j.model.TimeZone;
+import net.fortuna.ical4j.model.TimeZoneRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/** A bounded cache of timezones resolved by tzid shared by all builds. The
+ * builders see the same few tzids over and over so this saves going to the
+ * registry - which may have to fetch or build the timezone - for each one.
+ *
+ * <p>Entries are held per registry and the least recently used are dropped
+ * when the cache for a registry is full. Only successful lookups are cached.
+ *
+ * @author Mike Douglass
+ */
+public class TzidCache {
+  private TzidCache() {} // Don't instantiate this
+
+  private static int maxSize = 200;
+
+  private static final Map<TimeZoneRegistry, Map<String, TimeZone>> caches =
+          new WeakHashMap<>();
+
+  private static long gets;
+  private static long hits;
+
+  /**
+   * @param val maximum number of timezones cached for each registry
+   */
+  public static void setMaxSize(final int val) {
+    synchronized (caches) {
+      maxSize = val;
+      caches.clear();
+    }
+  }
+
+  /**
+   * @return maximum number of timezones cached for each registry
+   */
+  public static int getMaxSize() {
+    return maxSize;
+  }
+
+  /** Look in the cache and if not found ask the registry.
+   *
+   * @param registry the registry
+   * @param tzid the id
+   * @return timezone or null if not known to the registry
+   */
+  public static TimeZone getTimeZone(final TimeZoneRegistry registry,
+                                     final String tzid) {
+    synchronized (caches) {
+      gets++;
+
+      final TimeZone tz = getCache(registry).get(tzid);
+
+      if (tz != null) {
+        hits++;
+        return tz;
+      }
+    }
+
+    /* Don't hold the lock while the registry does its work */
+    final TimeZone tz = registry.getTimeZone(tzid);
+
+    if (tz != null) {
+      synchronized (caches) {
+        getCache(registry).put(tzid, tz);
+      }
+    }
+
+    return tz;
+  }
+
+  /** Called when a timezone is registered so we don't hand out the old
+   * value.
+   *
+   * @param registry the registry
+   * @param tzid the id
+   */
+  public static void remove(final TimeZoneRegistry registry,
+                            final String tzid) {
+    synchronized (caches) {
+      final Map<String, TimeZone> cache = caches.get(registry);
+
+      if (cache != null) {
+        cache.remove(tzid);
+      }
+    }
+  }
+
+  /** Flush all cached values.
+   */
+  public static void clear() {
+    synchronized (caches) {
+      caches.clear();
+    }
+  }
+
+  /**
+   * @return number of lookups
+   */
+  public static long getGets() {
+    return gets;
+  }
+
+  /**
+   * @return number of lookups satisfied by the cache
+   */
+  public static long getHits() {
+    return hits;
+  }
+
+  /* Called with caches locked */
+  private static Map<String, TimeZone> getCache(final TimeZoneRegistry registry) {
+    Map<String, TimeZone> cache = caches.get(registry);
+
+    if (cache == null) {
+      final int max = maxSize;
+
+      cache = new LinkedHashMap<String, TimeZone>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, TimeZone> eldest) {
+          return size() > max;
+        }
+      };
+
+      caches.put(registry, cache);
+    }
+
+    return cache;
+  }
+}
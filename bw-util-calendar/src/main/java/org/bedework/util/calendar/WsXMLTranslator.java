@@ -73,6 +73,9 @@ import javax.xml.namespace.QName;
  *
  * <p>For the moment we build an ical4j structure and use that to create events
  *
+ * <p>Build state is reused between calls on the same thread, so an
+ * instance may be shared between threads.
+ *
  * @author douglm
  */
 public class WsXMLTranslator {
@@ -80,11 +83,28 @@ public class WsXMLTranslator {
 
   private final TimeZoneRegistry tzRegistry;
 
+  /* Build state for each thread */
+  private final BuilderPool<BuildState> states;
+
   /**
    * @param tzRegistry
    */
   public WsXMLTranslator(final TimeZoneRegistry tzRegistry) {
     this.tzRegistry = tzRegistry;
+
+    states = new BuilderPool<>(
+            "xcal",
+            new BuilderPool.Factory<BuildState>() {
+              @Override
+              public BuildState newBuilder() {
+                final BuildState bs = new BuildState(tzRegistry);
+
+                bs.setContentHandler(new ContentHandlerImpl(bs));
+
+                return bs;
+              }
+            },
+            1);
   }
 
   /**
@@ -93,10 +113,6 @@ public class WsXMLTranslator {
    * @throws Throwable
    */
   public Calendar fromXcal(final IcalendarType ical) throws Throwable {
-    BuildState bs = new BuildState(tzRegistry);
-
-    bs.setContentHandler(new ContentHandlerImpl(bs));
-
     List<VcalendarType> vcts = ical.getVcalendar();
     if (vcts.size() == 0) {
       return null;
@@ -106,9 +122,21 @@ public class WsXMLTranslator {
       throw new Exception("More than one vcalendar");
     }
 
-    processVcalendar(vcts.get(0), bs);
+    final BuildState bs = states.checkOut();
+
+    try {
+      processVcalendar(vcts.get(0), bs);
 
-    return bs.getCalendar();
+      if (bs.getDatesMissingTimezones().size() > 0) {
+        bs.resolveTimezones();
+      }
+
+      return bs.getCalendar();
+    } finally {
+      // Don't hold on to the result while idle
+      bs.reset();
+      states.checkIn(bs);
+    }
   }
 
   /**
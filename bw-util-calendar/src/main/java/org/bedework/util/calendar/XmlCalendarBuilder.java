@@ -54,13 +54,7 @@ import org.bedework.util.xml.tagdefs.XcalTags;
 
 import net.fortuna.ical4j.data.ParserException;
 import net.fortuna.ical4j.model.Calendar;
-import net.fortuna.ical4j.model.CalendarException;
-import net.fortuna.ical4j.model.Parameter;
-import net.fortuna.ical4j.model.Property;
-import net.fortuna.ical4j.model.TimeZone;
 import net.fortuna.ical4j.model.TimeZoneRegistry;
-import net.fortuna.ical4j.model.property.DateListProperty;
-import net.fortuna.ical4j.model.property.DateProperty;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -97,11 +91,19 @@ public class XmlCalendarBuilder {
 
   private final TimeZoneRegistry tzRegistry;
 
+  /* Reused for each build */
+  private final BuildState bs;
+
+  private DocumentBuilder docBuilder;
+
   /**
    * @param tzRegistry a custom timezone registry
    */
   public XmlCalendarBuilder(final TimeZoneRegistry tzRegistry) {
     this.tzRegistry = tzRegistry;
+
+    bs = new BuildState(tzRegistry);
+    bs.setContentHandler(new ContentHandlerImpl(bs));
   }
 
   /**
@@ -126,17 +128,10 @@ public class XmlCalendarBuilder {
    */
   public Calendar build(final Reader in) throws IOException,
   ParserException {
-    BuildState bs = new BuildState(tzRegistry);
-
-    bs.setContentHandler(new ContentHandlerImpl(bs));
+    bs.reset();
 
     try {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      factory.setNamespaceAware(true);
-
-      DocumentBuilder builder = factory.newDocumentBuilder();
-
-      Document doc = builder.parse(new InputSource(in));
+      Document doc = getDocBuilder().parse(new InputSource(in));
 
       process(doc, bs);
     } catch (SAXException e) {
@@ -145,14 +140,31 @@ public class XmlCalendarBuilder {
       throw new ParserException(t.getMessage(), 0, t);
     }
 
-    if ((bs.getDatesMissingTimezones().size() > 0) &&
-            (tzRegistry != null)) {
-      resolveTimezones(bs);
+    if (bs.getDatesMissingTimezones().size() > 0) {
+      try {
+        bs.resolveTimezones();
+      } catch (Throwable t) {
+        throw new ParserException(t.getMessage(), 0, t);
+      }
     }
 
     return bs.getCalendars().iterator().next();
   }
 
+  private DocumentBuilder getDocBuilder() throws Throwable {
+    if (docBuilder != null) {
+      docBuilder.reset();
+      return docBuilder;
+    }
+
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+
+    docBuilder = factory.newDocumentBuilder();
+
+    return docBuilder;
+  }
+
   private void process(final Document doc,
                        final BuildState bs) throws ParserException {
     // start = element icalendar { vcalendar+ }
@@ -397,48 +409,6 @@ public class XmlCalendarBuilder {
     return tzRegistry;
   }
 
-  private void resolveTimezones(final BuildState bs) throws IOException {
-
-    // Go through each property and try to resolve the TZID.
-    for (final Property property: bs.getDatesMissingTimezones()) {
-      final Parameter tzParam = property.getParameter(Parameter.TZID);
-
-      // tzParam might be null:
-      if (tzParam == null) {
-        continue;
-      }
-
-      //lookup timezone
-      final TimeZone timezone = tzRegistry.getTimeZone(tzParam.getValue());
-
-      // If timezone found, then update date property
-      if (timezone != null) {
-        // Get the String representation of date(s) as
-        // we will need this after changing the timezone
-        final String strDate = property.getValue();
-
-        // Change the timezone
-        if(property instanceof DateProperty) {
-          ((DateProperty) property).setTimeZone(timezone);
-        }
-        else if(property instanceof DateListProperty) {
-          ((DateListProperty) property).setTimeZone(timezone);
-        }
-
-        // Reset value
-        try {
-          property.setValue(strDate);
-        } catch (ParseException e) {
-          // shouldn't happen as its already been parsed
-          throw new CalendarException(e);
-        } catch (URISyntaxException e) {
-          // shouldn't happen as its already been parsed
-          throw new CalendarException(e);
-        }
-      }
-    }
-  }
-
   /* ====================================================================
    *                   XmlUtil wrappers
    * ==================================================================== */
@@ -117,6 +117,19 @@ abstract class BaseSetWrapper<T extends BaseWrapper,
     return found;
   }
 
+  @Override
+  void fingerprint(final Fingerprint fp) {
+    fp.start(getName());
+    fp.update(size());
+
+    /* The set is ordered so the result is independent of the original order */
+    for (T t: els) {
+      t.fingerprint(fp);
+    }
+
+    fp.end();
+  }
+
   @Override
   protected void toStringSegment(final StringBuilder sb) {
     sb.append("size=");
@@ -89,6 +89,14 @@ abstract class BaseWrapper<ParentT extends BaseWrapper> {
     appendNsName(sb, nsContext);
   }
 
+  /** Add the canonical form of this node and its descendants to the
+   * fingerprint. Skipped entities have already been dropped and the values are
+   * the normalized values used for comparison.
+   *
+   * @param fp accumulates the fingerprint
+   */
+  abstract void fingerprint(Fingerprint fp);
+
   protected void toStringSegment(final StringBuilder sb) {
     sb.append("name=");
     sb.append(name);
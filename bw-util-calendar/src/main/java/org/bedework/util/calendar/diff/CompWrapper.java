@@ -286,6 +286,32 @@ class CompWrapper extends BaseEntityWrapper<CompWrapper,
     return sel;
   }
 
+  @Override
+  void fingerprint(final Fingerprint fp) {
+    fp.start(getName());
+    fp.update(getEntity().getClass().getName());
+
+    if (props == null) {
+      fp.update((String)null);
+    } else {
+      props.fingerprint(fp);
+    }
+
+    comps.fingerprint(fp);
+    fp.end();
+  }
+
+  /**
+   * @return a canonical fingerprint of this component and its descendants.
+   */
+  String getFingerprint() {
+    Fingerprint fp = new Fingerprint();
+
+    fingerprint(fp);
+
+    return fp.getValue();
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   JAXBElement<? extends BaseComponentType> getJaxbElement() {
@@ -0,0 +1,111 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.calendar.diff;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+import javax.xml.namespace.QName;
+
+/** This class accumulates a canonical content fingerprint for a wrapped
+ * component. The wrappers feed it their names and normalized values in the
+ * same sorted order used by the diff process, skipping the same entities, so
+ * two components with equal fingerprints will produce no differences.
+ *
+ * <p>The converse is not guaranteed. Some values, e.g. recurrence-ids in
+ * different timezones, compare equal but fingerprint differently. A
+ * fingerprint mismatch only means a full diff is required.
+ *
+ * @author Mike Douglass
+ */
+class Fingerprint {
+  private static final String algorithm = "SHA-1";
+
+  private static final Charset utf8 = Charset.forName("UTF-8");
+
+  private static final char[] hexChars = "0123456789abcdef".toCharArray();
+
+  /* Separate the values so that ("ab", "c") and ("a", "bc") differ */
+  private static final byte separator = 0;
+
+  /* Distinguish null from the empty string */
+  private static final byte nullMarker = 1;
+
+  /* Bracket nested structures */
+  private static final byte startMarker = 2;
+  private static final byte endMarker = 3;
+
+  private final MessageDigest md;
+
+  Fingerprint() {
+    try {
+      md = MessageDigest.getInstance(algorithm);
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
+  void start(final QName val) {
+    md.update(startMarker);
+    update(val);
+  }
+
+  void end() {
+    md.update(endMarker);
+  }
+
+  void update(final QName val) {
+    update(val.getNamespaceURI());
+    update(val.getLocalPart());
+  }
+
+  void update(final String val) {
+    if (val == null) {
+      md.update(nullMarker);
+    } else {
+      md.update(val.getBytes(utf8));
+    }
+
+    md.update(separator);
+  }
+
+  void update(final int val) {
+    md.update((byte)(val >>> 24));
+    md.update((byte)(val >>> 16));
+    md.update((byte)(val >>> 8));
+    md.update((byte)val);
+  }
+
+  /**
+   * @return the fingerprint as a lower case hex string. The digest is reset.
+   */
+  String getValue() {
+    byte[] digest = md.digest();
+    char[] res = new char[digest.length * 2];
+
+    for (int i = 0; i < digest.length; i++) {
+      int b = digest[i] & 0xff;
+
+      res[i * 2] = hexChars[b >>> 4];
+      res[i * 2 + 1] = hexChars[b & 0xf];
+    }
+
+    return new String(res);
+  }
+}
@@ -112,6 +112,14 @@ class ParamWrapper extends BaseEntityWrapper<ParamWrapper,
     return comparator;
   }
 
+  @Override
+  void fingerprint(final Fingerprint fp) {
+    fp.start(getName());
+    fp.update(getEntity().getClass().getName());
+    getComparator().fingerprint(fp);
+    fp.end();
+  }
+
   @Override
   public int compareTo(final ParamWrapper o) {
     int res = super.compareTo(o);
@@ -156,6 +156,15 @@ class PropWrapper extends BaseEntityWrapper<PropWrapper,
     return comparator;
   }
 
+  @Override
+  void fingerprint(final Fingerprint fp) {
+    fp.start(getName());
+    fp.update(getEntity().getClass().getName());
+    params.fingerprint(fp);
+    getComparator().fingerprint(fp);
+    fp.end();
+  }
+
   @Override
   public int compareTo(final PropWrapper o) {
     if (getEntity() instanceof RecurrenceIdPropType) {
@@ -98,6 +98,15 @@ public class ValueComparator implements Comparable<ValueComparator> {
     vtes.add(new ValueTypeEntry(typeElement, value));
   }
 
+  void fingerprint(final Fingerprint fp) {
+    fp.update(vtes.size());
+
+    for (ValueTypeEntry vte: vtes) {
+      fp.update(vte.typeElement);
+      fp.update(vte.value);
+    }
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
@@ -30,7 +30,6 @@ import ietf.params.xml.ns.icalendar_2.DtstampPropType;
 import ietf.params.xml.ns.icalendar_2.IcalendarType;
 import ietf.params.xml.ns.icalendar_2.LastModifiedPropType;
 import ietf.params.xml.ns.icalendar_2.ProdidPropType;
-import ietf.params.xml.ns.icalendar_2.VcalendarType;
 import ietf.params.xml.ns.icalendar_2.VersionPropType;
 import ietf.params.xml.ns.icalendar_2.XBedeworkUidParamType;
 
@@ -95,6 +94,36 @@ public class XmlIcalCompare {
 
   private Globals globals;
 
+  /** A calendar wrapped, normalized and sorted ready for comparison. Create
+   * one of these with {@link #prepare(IcalendarType)} when the same value is
+   * to be compared against a series of other values, for example the stored
+   * entity against successive updates. Only the other side then needs to be
+   * normalized for each comparison.
+   *
+   * <p>The underlying calendar object must not be modified while this is in
+   * use. Instances are not thread-safe.
+   */
+  public static class Prepared {
+    private final CompWrapper cw;
+
+    private String fingerprint;
+
+    Prepared(final CompWrapper cw) {
+      this.cw = cw;
+    }
+
+    /**
+     * @return the canonical fingerprint - computed once
+     */
+    public String getFingerprint() {
+      if (fingerprint == null) {
+        fingerprint = cw.getFingerprint();
+      }
+
+      return fingerprint;
+    }
+  }
+
   /** The skippedEntities allow the diff process to ignore components,
    * properties and/or parameters that should not take part in the comparison.
    *
@@ -123,17 +152,82 @@ public class XmlIcalCompare {
    */
   public ComponentSelectionType diff(final IcalendarType newval,
                                      final IcalendarType oldval) {
-    VcalendarType nv = newval.getVcalendar().get(0);
-    VcalendarType ov = oldval.getVcalendar().get(0);
+    return wrap(newval).diff(wrap(oldval));
+  }
 
-    CompWrapper ncw = new CompWrapper(globals,
-                                      XcalTags.vcalendar,
-                                      nv);
-    CompWrapper ocw = new CompWrapper(globals,
-                                      XcalTags.vcalendar,
-                                      ov);
+  /** Compute a canonical fingerprint for the content of the calendar. This is
+   * computed from the normalized values and ignores the skipped entities, so
+   * two calendars with the same fingerprint will diff as equal.
+   *
+   * <p>The value may be stored alongside the entity and handed to
+   * {@link #diff(IcalendarType, IcalendarType, String)} on later comparisons.
+   *
+   * @param val the calendar
+   * @return fingerprint as a hex string
+   */
+  public String fingerprint(final IcalendarType val) {
+    return wrap(val).getFingerprint();
+  }
+
+  /** Compare the parameters. Return null for equal or a select element. The
+   * new value is fingerprinted first and if that matches the fingerprint for
+   * the old value no further comparison is done.
+   *
+   * @param newval
+   * @param oldval
+   * @param oldFingerprint fingerprint of oldval or null if not known
+   * @return SelectElementType if val1 and val2 differ else null.
+   */
+  public ComponentSelectionType diff(final IcalendarType newval,
+                                     final IcalendarType oldval,
+                                     final String oldFingerprint) {
+    CompWrapper ncw = wrap(newval);
+
+    if (oldFingerprint != null) {
+      if (oldFingerprint.equals(ncw.getFingerprint())) {
+        return null;
+      }
+    }
+
+    return ncw.diff(wrap(oldval));
+  }
+
+  /** Wrap and normalize a calendar so it can be compared repeatedly.
+   *
+   * @param val the calendar
+   * @return prepared form
+   */
+  public Prepared prepare(final IcalendarType val) {
+    return new Prepared(wrap(val));
+  }
+
+  /** Compare the new value against a prepared old value. Return null for
+   * equal or a select element.
+   *
+   * @param newval
+   * @param oldval prepared by this object
+   * @return SelectElementType if val1 and val2 differ else null.
+   */
+  public ComponentSelectionType diff(final IcalendarType newval,
+                                     final Prepared oldval) {
+    return wrap(newval).diff(oldval.cw);
+  }
+
+  /** Compare two prepared values. Return null for equal or a select element.
+   *
+   * @param newval prepared by this object
+   * @param oldval prepared by this object
+   * @return SelectElementType if val1 and val2 differ else null.
+   */
+  public ComponentSelectionType diff(final Prepared newval,
+                                     final Prepared oldval) {
+    return newval.cw.diff(oldval.cw);
+  }
 
-    return ncw.diff(ocw);
+  private CompWrapper wrap(final IcalendarType val) {
+    return new CompWrapper(globals,
+                           XcalTags.vcalendar,
+                           val.getVcalendar().get(0));
   }
 
   private Logger getLogger() {
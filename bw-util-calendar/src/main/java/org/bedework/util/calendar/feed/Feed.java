@@ -0,0 +1,293 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.calendar.feed;
+
+import org.bedework.util.misc.ToString;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A subscribed feed and the state we keep between polls: the validators
+ * for conditional requests and some statistics.
+ *
+ * @author Mike Douglass
+ */
+public class Feed {
+  private final String url;
+
+  private final long interval;
+
+  private final FeedHandler handler;
+
+  private volatile String etag;
+
+  private volatile String lastModified;
+
+  private volatile int lastStatus;
+
+  private volatile long lastPoll;
+
+  private volatile long lastChange;
+
+  private volatile long nextPoll;
+
+  private volatile String lastError;
+
+  /* Only touched by the thread running the poll */
+  private int consecutiveFailures;
+
+  private volatile ScheduledFuture<?> scheduled;
+
+  private volatile boolean removed;
+
+  private final AtomicLong polls = new AtomicLong();
+  private final AtomicLong notModified = new AtomicLong();
+  private final AtomicLong changed = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong components = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+
+  /**
+   * @param url the feed url - webcal and webcals are mapped to http(s)
+   * @param interval milliseconds between polls
+   * @param handler receives changed content
+   */
+  public Feed(final String url,
+              final long interval,
+              final FeedHandler handler) {
+    this.url = httpUrl(url);
+    this.interval = interval;
+    this.handler = handler;
+  }
+
+  /** webcal is just http by another name.
+   *
+   * @param url a feed url
+   * @return http or https equivalent
+   */
+  public static String httpUrl(final String url) {
+    final String lc = url.toLowerCase();
+
+    if (lc.startsWith("webcal://")) {
+      return "http://" + url.substring("webcal://".length());
+    }
+
+    if (lc.startsWith("webcals://")) {
+      return "https://" + url.substring("webcals://".length());
+    }
+
+    return url;
+  }
+
+  /**
+   * @return the (http) url
+   */
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * @return milliseconds between polls
+   */
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * @return the handler
+   */
+  public FeedHandler getHandler() {
+    return handler;
+  }
+
+  /**
+   * @return etag from the last changed response or null
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * @return Last-Modified from the last changed response or null
+   */
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return status from the last poll - 0 for none or no response
+   */
+  public int getLastStatus() {
+    return lastStatus;
+  }
+
+  /**
+   * @return millis time of last poll
+   */
+  public long getLastPoll() {
+    return lastPoll;
+  }
+
+  /**
+   * @return millis time we last saw new content
+   */
+  public long getLastChange() {
+    return lastChange;
+  }
+
+  /**
+   * @return millis time of the next scheduled poll
+   */
+  public long getNextPoll() {
+    return nextPoll;
+  }
+
+  /**
+   * @return message from the last failure or null
+   */
+  public String getLastError() {
+    return lastError;
+  }
+
+  /**
+   * @return number of failures since the last success
+   */
+  public int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  /**
+   * @return number of polls
+   */
+  public long getPolls() {
+    return polls.get();
+  }
+
+  /**
+   * @return number of polls answered with 304
+   */
+  public long getNotModified() {
+    return notModified.get();
+  }
+
+  /**
+   * @return number of polls which delivered new content
+   */
+  public long getChanged() {
+    return changed.get();
+  }
+
+  /**
+   * @return number of failed polls
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * @return total components delivered
+   */
+  public long getComponents() {
+    return components.get();
+  }
+
+  /**
+   * @return total bytes read from the wire - compressed if gzipped
+   */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  /* ====================================================================
+   *                   Package private methods
+   * ==================================================================== */
+
+  void polled(final int status) {
+    polls.incrementAndGet();
+    lastPoll = System.currentTimeMillis();
+    lastStatus = status;
+  }
+
+  void unchanged() {
+    notModified.incrementAndGet();
+    consecutiveFailures = 0;
+    lastError = null;
+  }
+
+  void changed(final String etag,
+               final String lastModified,
+               final int components,
+               final long bytes) {
+    this.etag = etag;
+    this.lastModified = lastModified;
+    changed.incrementAndGet();
+    this.components.addAndGet(components);
+    this.bytes.addAndGet(bytes);
+    lastChange = System.currentTimeMillis();
+    consecutiveFailures = 0;
+    lastError = null;
+  }
+
+  void failed(final Throwable t) {
+    failures.incrementAndGet();
+    consecutiveFailures++;
+    lastError = String.valueOf(t.getMessage());
+  }
+
+  void setScheduled(final ScheduledFuture<?> val,
+                    final long nextPoll) {
+    scheduled = val;
+    this.nextPoll = nextPoll;
+  }
+
+  ScheduledFuture<?> getScheduled() {
+    return scheduled;
+  }
+
+  void setRemoved() {
+    removed = true;
+  }
+
+  boolean getRemoved() {
+    return removed;
+  }
+
+  /* ====================================================================
+   *                   Object methods
+   * ==================================================================== */
+
+  @Override
+  public String toString() {
+    final ToString ts = new ToString(this);
+
+    ts.append("url", getUrl());
+    ts.append("interval", getInterval());
+    ts.append("etag", getEtag());
+    ts.append("lastModified", getLastModified());
+    ts.append("lastStatus", getLastStatus());
+    ts.append("polls", getPolls());
+    ts.append("notModified", getNotModified());
+    ts.append("changed", getChanged());
+    ts.append("failures", getFailures());
+    ts.append("components", getComponents());
+    ts.append("bytes", getBytes());
+
+    return ts.toString();
+  }
+}
@@ -0,0 +1,483 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.calendar.feed;
+
+import org.bedework.util.calendar.BuilderPool;
+import org.bedework.util.calendar.ComponentHandler;
+import org.bedework.util.calendar.StreamingCalendarBuilder;
+import org.bedework.util.http.BasicHttpClient;
+import org.bedework.util.http.ResponseHandle;
+import org.bedework.util.misc.Util;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.TimeZoneRegistry;
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpStatus;
+import org.apache.http.message.BasicHeader;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/** Poll iCalendar feeds (http, https, webcal) and deliver changed content
+ * to a FeedHandler.
+ *
+ * <p>Each poll is a conditional GET using the etag and Last-Modified value
+ * from the last changed response, so an unchanged feed costs a 304 and
+ * no parsing at all. We ask for gzip and decompress on the fly. The body
+ * is never buffered - it is parsed as it arrives and each component is
+ * handed to the handler as soon as it is complete.
+ *
+ * <p>Polls are spread out: the first poll for a feed is at a random point
+ * within its interval and each following poll is the interval plus or
+ * minus a random jitter. Failures back off exponentially up to a limit.
+ *
+ * <p>Requests go through the supplied BasicHttpClient so its connection
+ * pool, host limits and statistics apply.
+ *
+ * @author Mike Douglass
+ */
+public class FeedFetcher {
+  private transient Logger log;
+
+  private final BasicHttpClient client;
+
+  private final ScheduledThreadPoolExecutor scheduler;
+
+  private final BuilderPool<StreamingCalendarBuilder> builders;
+
+  private final Map<String, Feed> feeds = new ConcurrentHashMap<>();
+
+  /* Fraction of the interval */
+  private volatile double jitter = 0.1;
+
+  private volatile long maxBackoff = 6 * 60 * 60 * 1000;
+
+  private final AtomicLong polls = new AtomicLong();
+  private final AtomicLong notModified = new AtomicLong();
+  private final AtomicLong changed = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+
+  private static final AtomicInteger poolNum = new AtomicInteger();
+
+  /* Names our builder pools so each fetcher has its own MBean */
+  private static final AtomicInteger fetcherNum = new AtomicInteger();
+
+  private static class PollerFactory implements ThreadFactory {
+    private final String prefix =
+        "bw-feed-" + poolNum.incrementAndGet() + "-";
+
+    private final AtomicInteger threadNum = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      final Thread t = new Thread(r, prefix + threadNum.incrementAndGet());
+      t.setDaemon(true);
+
+      return t;
+    }
+  }
+
+  /* Counts the bytes we actually read from the connection */
+  private static class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    CountingInputStream(final InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+
+      if (b >= 0) {
+        count++;
+      }
+
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b,
+                    final int off,
+                    final int len) throws IOException {
+      final int n = super.read(b, off, len);
+
+      if (n > 0) {
+        count += n;
+      }
+
+      return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      final long skipped = super.skip(n);
+
+      count += skipped;
+
+      return skipped;
+    }
+  }
+
+  private class Poller implements Runnable {
+    private final Feed feed;
+
+    Poller(final Feed feed) {
+      this.feed = feed;
+    }
+
+    @Override
+    public void run() {
+      if (feed.getRemoved()) {
+        return;
+      }
+
+      try {
+        poll(feed);
+      } catch (final Throwable t) {
+        // Already counted and reported to the handler
+        if (getLogger().isDebugEnabled()) {
+          getLogger().debug("Poll failed for " + feed.getUrl(), t);
+        }
+      }
+
+      if (!feed.getRemoved() && !scheduler.isShutdown()) {
+        schedule(feed, nextDelay(feed));
+      }
+    }
+  }
+
+  /**
+   * @param client for the requests
+   * @param threads maximum number of concurrent polls
+   * @param tzRegistry for timezones in the feeds - may be null
+   */
+  public FeedFetcher(final BasicHttpClient client,
+                     final int threads,
+                     final TimeZoneRegistry tzRegistry) {
+    this.client = client;
+
+    scheduler = new ScheduledThreadPoolExecutor(threads,
+                                                new PollerFactory());
+    scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+    builders = new BuilderPool<>(
+            "feeds-" + fetcherNum.incrementAndGet(),
+            new BuilderPool.Factory<StreamingCalendarBuilder>() {
+              @Override
+              public StreamingCalendarBuilder newBuilder() {
+                return new StreamingCalendarBuilder(tzRegistry);
+              }
+            },
+            1);
+    builders.register();
+  }
+
+  /**
+   * @param val fraction of the interval by which polls are randomly
+   *            moved earlier or later. 0 for none.
+   */
+  public void setJitter(final double val) {
+    if ((val < 0) || (val >= 1)) {
+      throw new IllegalArgumentException("Jitter must be in [0, 1)");
+    }
+
+    jitter = val;
+  }
+
+  /**
+   * @return fraction of the interval
+   */
+  public double getJitter() {
+    return jitter;
+  }
+
+  /**
+   * @param val maximum millis between polls of a failing feed
+   */
+  public void setMaxBackoff(final long val) {
+    maxBackoff = val;
+  }
+
+  /**
+   * @return maximum millis between polls of a failing feed
+   */
+  public long getMaxBackoff() {
+    return maxBackoff;
+  }
+
+  /** Add a feed and schedule its first poll at a random point within
+   * the first interval. Replaces any feed with the same url.
+   *
+   * @param url http, https, webcal or webcals url
+   * @param pollSeconds seconds between polls
+   * @param handler receives the content
+   * @return the feed
+   */
+  public Feed add(final String url,
+                  final int pollSeconds,
+                  final FeedHandler handler) {
+    final Feed feed = new Feed(url, pollSeconds * 1000L, handler);
+
+    final Feed old = feeds.put(feed.getUrl(), feed);
+
+    if (old != null) {
+      cancel(old);
+    }
+
+    schedule(feed, (long)(ThreadLocalRandom.current().nextDouble() *
+                                  feed.getInterval()));
+
+    return feed;
+  }
+
+  /**
+   * @param url of the feed
+   * @return the feed or null
+   */
+  public Feed getFeed(final String url) {
+    return feeds.get(Feed.httpUrl(url));
+  }
+
+  /**
+   * @return all the feeds
+   */
+  public Collection<Feed> getFeeds() {
+    return feeds.values();
+  }
+
+  /** Stop polling a feed. A poll in progress is allowed to complete.
+   *
+   * @param url of the feed
+   * @return true if it was present
+   */
+  public boolean remove(final String url) {
+    final Feed feed = feeds.remove(Feed.httpUrl(url));
+
+    if (feed == null) {
+      return false;
+    }
+
+    cancel(feed);
+
+    return true;
+  }
+
+  /** Poll the feed now on the calling thread. This does not affect the
+   * schedule.
+   *
+   * @param feed to poll
+   * @return true if new content was delivered, false for unchanged
+   * @throws HttpException on failure - also reported to the handler
+   */
+  public boolean poll(final Feed feed) throws HttpException {
+    final FeedHandler handler = feed.getHandler();
+
+    final List<Header> hdrs = new ArrayList<>();
+
+    hdrs.add(new BasicHeader("Accept", "text/calendar"));
+    hdrs.add(new BasicHeader("Accept-Encoding", "gzip"));
+
+    final String etag = feed.getEtag();
+    if (etag != null) {
+      hdrs.add(new BasicHeader("If-None-Match", etag));
+    }
+
+    final String lastModified = feed.getLastModified();
+    if (lastModified != null) {
+      hdrs.add(new BasicHeader("If-Modified-Since", lastModified));
+    }
+
+    polls.incrementAndGet();
+
+    try (ResponseHandle resp = client.execute("GET", feed.getUrl(), hdrs)) {
+      final int status = resp.getStatus();
+
+      feed.polled(status);
+
+      if (status == HttpStatus.SC_NOT_MODIFIED) {
+        feed.unchanged();
+        notModified.incrementAndGet();
+
+        return false;
+      }
+
+      if (status != HttpStatus.SC_OK) {
+        throw new HttpException("Got response " + status +
+                                        " from " + feed.getUrl());
+      }
+
+      final InputStream body = resp.getBodyAsStream();
+
+      if (body == null) {
+        throw new HttpException("No content from " + feed.getUrl());
+      }
+
+      final CountingInputStream counted = new CountingInputStream(body);
+      InputStream in = counted;
+
+      final String encoding = resp.getFirstHeaderValue("Content-Encoding");
+      if ((encoding != null) &&
+              (encoding.equalsIgnoreCase("gzip") ||
+                       encoding.equalsIgnoreCase("x-gzip"))) {
+        in = new GZIPInputStream(in, 8192);
+      }
+
+      String charset = resp.getCharSet();
+      if (charset == null) {
+        charset = "UTF-8";
+      }
+
+      handler.start(feed);
+
+      final Calendar cal;
+      final int count;
+
+      final StreamingCalendarBuilder bldr = builders.checkOut();
+      try {
+        cal = bldr.build(new BufferedReader(new InputStreamReader(in, charset)),
+                         new ComponentHandler() {
+                           @Override
+                           public void component(final Component val)
+                                   throws Throwable {
+                             handler.component(feed, val);
+                           }
+                         });
+        count = bldr.getComponentCount();
+      } finally {
+        builders.checkIn(bldr);
+      }
+
+      handler.end(feed, cal);
+
+      feed.changed(resp.getFirstHeaderValue("ETag"),
+                   resp.getFirstHeaderValue("Last-Modified"),
+                   count, counted.count);
+      changed.incrementAndGet();
+      bytes.addAndGet(counted.count);
+
+      return true;
+    } catch (final Throwable t) {
+      feed.failed(t);
+      failures.incrementAndGet();
+
+      try {
+        handler.failed(feed, t);
+      } catch (final Throwable ignored) {}
+
+      if (t instanceof HttpException) {
+        throw (HttpException)t;
+      }
+
+      throw new HttpException(t.getLocalizedMessage(), t);
+    }
+  }
+
+  /**
+   * @return current statistics
+   */
+  public String getStats() {
+    final StringBuilder sb = new StringBuilder();
+
+    Util.statline(sb, "feeds", feeds.size());
+    Util.statline(sb, "polls", polls.get());
+    Util.statline(sb, "notModified", notModified.get());
+    Util.statline(sb, "changed", changed.get());
+    Util.statline(sb, "failures", failures.get());
+    Util.statline(sb, "bytes", bytes.get());
+    Util.statline(sb, "active", scheduler.getActiveCount());
+
+    return sb.toString();
+  }
+
+  /** Stop all polling. Polls in progress are interrupted.
+   */
+  public void shutdown() {
+    scheduler.shutdownNow();
+    builders.unregister();
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private void schedule(final Feed feed,
+                        final long delay) {
+    feed.setScheduled(scheduler.schedule(new Poller(feed),
+                                         delay, TimeUnit.MILLISECONDS),
+                      System.currentTimeMillis() + delay);
+  }
+
+  private void cancel(final Feed feed) {
+    feed.setRemoved();
+
+    if (feed.getScheduled() != null) {
+      feed.getScheduled().cancel(false);
+    }
+  }
+
+  /* The interval, doubled for each consecutive failure up to the limit,
+   * then moved by a random amount up to the jitter either way.
+   */
+  private long nextDelay(final Feed feed) {
+    long delay = feed.getInterval();
+
+    final int fails = Math.min(feed.getConsecutiveFailures(), 16);
+    if (fails > 0) {
+      delay = Math.min(delay << fails,
+                       Math.max(maxBackoff, feed.getInterval()));
+    }
+
+    final double j = jitter;
+    if (j == 0) {
+      return delay;
+    }
+
+    final double r = ThreadLocalRandom.current().nextDouble() * 2 - 1;
+
+    return Math.max(1000, delay + (long)(r * j * delay));
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+}
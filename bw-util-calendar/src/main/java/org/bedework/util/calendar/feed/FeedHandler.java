@@ -0,0 +1,65 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.calendar.feed;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+
+/** Receives the content of a feed when it has changed. For each changed
+ * feed start is called, then component for each top level component as it
+ * is parsed, then end. An unchanged feed results in no calls at all.
+ *
+ * <p>Calls for a single feed are never concurrent but different feeds may
+ * be delivered on different threads at the same time.
+ *
+ * @author Mike Douglass
+ */
+public interface FeedHandler {
+  /** New content is about to be delivered
+   *
+   * @param feed the feed
+   * @throws Throwable on error - the fetch is abandoned
+   */
+  void start(Feed feed) throws Throwable;
+
+  /**
+   * @param feed the feed
+   * @param val a top level component, including VTIMEZONE
+   * @throws Throwable on error - the fetch is abandoned
+   */
+  void component(Feed feed,
+                 Component val) throws Throwable;
+
+  /** All components have been delivered.
+   *
+   * @param feed the feed
+   * @param cal the calendar properties - it has no components
+   * @throws Throwable on error
+   */
+  void end(Feed feed,
+           Calendar cal) throws Throwable;
+
+  /** A fetch failed. Any content delivered since start should be discarded.
+   *
+   * @param feed the feed
+   * @param t the reason
+   */
+  void failed(Feed feed,
+              Throwable t);
+}
@@ -107,7 +107,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
  * @param <T>
  */
 public abstract class ConfigBase<T extends ConfigBase>
-        implements Comparable<T>, Serializable {
+        implements Comparable<T>, Serializable, ToString.Segment {
   /** The default namespace for the XML elements.
    *
    */
@@ -144,6 +144,7 @@ public abstract class ConfigBase<T extends ConfigBase>
    *
    * @param ts    ToString for result
    */
+  @Override
   public void toStringSegment(final ToString ts) {
     ts.append("name", getName());
     ts.append("lastChanged", getLastChanged());
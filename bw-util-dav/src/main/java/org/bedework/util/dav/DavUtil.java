@@ -18,37 +18,44 @@
 */
 package org.bedework.util.dav;
 
+import org.bedework.util.http.AsyncHttpClient;
 import org.bedework.util.http.BasicHttpClient;
+import org.bedework.util.http.BodyConsumer;
+import org.bedework.util.http.ResponseHandle;
+import org.bedework.util.http.WriterEntity;
 import org.bedework.util.misc.Util;
 import org.bedework.util.xml.XmlEmit;
 import org.bedework.util.xml.XmlEmit.NameSpace;
 import org.bedework.util.xml.XmlUtil;
+import org.bedework.util.xml.tagdefs.CaldavTags;
+import org.bedework.util.xml.tagdefs.CarddavTags;
 import org.bedework.util.xml.tagdefs.WebdavTags;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.protocol.HTTP;
 import org.apache.log4j.Logger;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.xml.sax.InputSource;
 
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Serializable;
-import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 /** Helper for DAV interactions
 *
@@ -85,6 +92,26 @@ public class DavUtil implements Serializable {
     }
   }
 
+  /** Default number of hrefs in each multiget REPORT */
+  public static final int defaultMultigetBatchSize = 100;
+
+  /** Receives the results of a multiget as each batch completes. Calls
+   * are serialized so implementations need not be thread safe.
+   */
+  public interface MultigetHandler {
+    /**
+     * @param resp response for a single href
+     * @throws Throwable on error - the remainder of the batch is abandoned
+     */
+    void response(MultiStatusResponseElement resp) throws Throwable;
+
+    /**
+     * @param hrefs the batch which failed
+     * @param t the reason
+     */
+    void failed(List<String> hrefs, Throwable t);
+  }
+
   /** Represents the child of a collection
    *
    * @author Mike Douglass
@@ -203,103 +230,143 @@ public class DavUtil implements Serializable {
     public String responseDescription;
   }
 
+  /** Receives the responses from a multistatus as they are parsed.
+   *
+   * @param <T> type of response
+   */
+  public interface ResponseHandler<T> {
+    /**
+     * @param val a response
+     * @throws Throwable to abandon processing
+     */
+    void response(T val) throws Throwable;
+  }
+
   /**
    * @param in input stream
    * @return Collection<DavChild>
    * @throws Throwable
    */
   public MultiStatusResponse getMultiStatusResponse(final InputStream in) throws Throwable {
-    MultiStatusResponse res = new MultiStatusResponse();
+    final MultiStatusResponse res = new MultiStatusResponse();
 
-    Document doc = parseContent(in);
+    res.responseDescription = getMultiStatusResponses(in,
+            new ResponseHandler<MultiStatusResponseElement>() {
+              @Override
+              public void response(final MultiStatusResponseElement val) {
+                res.responses.add(val);
+              }
+            });
 
-    Element root = doc.getDocumentElement();
+    return res;
+  }
 
+  /** Parse a multistatus response one response at a time. Memory use is
+   * bounded by the size of the largest response rather than the whole
+   * body.
+   *
+   * @param in input stream
+   * @param handler called for each response element
+   * @return the responsedescription or null
+   * @throws Throwable
+   */
+  public String getMultiStatusResponses(final InputStream in,
+                                        final ResponseHandler<MultiStatusResponseElement> handler) throws Throwable {
     /*    <!ELEMENT multistatus (response+, responsedescription?) > */
 
-    expect(root, WebdavTags.multistatus);
+    final MultiStatusReader rdr = new MultiStatusReader(in);
+    String responseDescription = null;
 
-    Collection<Element> responses = getChildren(root);
+    try {
+      for (;;) {
+        final Element resp = rdr.next();
 
-    int count = 0; // validity
-    for (Element resp: responses) {
-      count++;
+        if (resp == null) {
+          return responseDescription;
+        }
 
-      if (XmlUtil.nodeMatches(resp, WebdavTags.responseDescription)) {
-        // Has to be last
-        if (responses.size() > count) {
+        if (responseDescription != null) {
+          // Has to be last
           throw new Exception("Bad multstatus Expected " +
               "(response+, responsedescription?)");
         }
 
-        res.responseDescription = getElementContent(resp);
-        continue;
-      }
+        if (XmlUtil.nodeMatches(resp, WebdavTags.responseDescription)) {
+          responseDescription = getElementContent(resp);
+          continue;
+        }
 
-      if (!XmlUtil.nodeMatches(resp, WebdavTags.response)) {
-        throw new Exception("Bad multstatus Expected " +
-            "(response+, responsedescription?) found " + resp);
+        handler.response(makeMultiStatusResponseElement(resp));
       }
+    } finally {
+      rdr.close();
+    }
+  }
 
-      /*    <!ELEMENT response (href, ((href*, status)|(propstat+)),
-                          responsedescription?) >
-       */
-      MultiStatusResponseElement msre = new MultiStatusResponseElement();
-      res.responses.add(msre);
+  private MultiStatusResponseElement makeMultiStatusResponseElement(
+          final Element resp) throws Throwable {
+    if (!XmlUtil.nodeMatches(resp, WebdavTags.response)) {
+      throw new Exception("Bad multstatus Expected " +
+          "(response+, responsedescription?) found " + resp);
+    }
 
-      Iterator<Element> elit = getChildren(resp).iterator();
+    /*    <!ELEMENT response (href, ((href*, status)|(propstat+)),
+                        responsedescription?) >
+     */
+    final MultiStatusResponseElement msre = new MultiStatusResponseElement();
 
-      Node nd = elit.next();
+    final Iterator<Element> elit = getChildren(resp).iterator();
 
-      if (!XmlUtil.nodeMatches(nd, WebdavTags.href)) {
-        throw new Exception("Bad response. Expected href found " + nd);
-      }
+    Node nd = elit.next();
 
-      msre.href = getElementContent((Element)nd);
+    if (!XmlUtil.nodeMatches(nd, WebdavTags.href)) {
+      throw new Exception("Bad response. Expected href found " + nd);
+    }
 
-      while (elit.hasNext()) {
-        nd = elit.next();
+    msre.href = getElementContent((Element)nd);
 
-        if (!XmlUtil.nodeMatches(nd, WebdavTags.propstat)) {
-          throw new Exception("Bad response. Expected propstat found " + nd);
-        }
+    while (elit.hasNext()) {
+      nd = elit.next();
 
-        /*    <!ELEMENT propstat (prop, status, responsedescription?) > */
+      if (!XmlUtil.nodeMatches(nd, WebdavTags.propstat)) {
+        throw new Exception("Bad response. Expected propstat found " + nd);
+      }
 
-        PropstatElement pse = new PropstatElement();
-        msre.propstats.add(pse);
+      /*    <!ELEMENT propstat (prop, status, responsedescription?) > */
 
-        Iterator<Element> propstatit = getChildren(nd).iterator();
-        Node propnd = propstatit.next();
+      final PropstatElement pse = new PropstatElement();
+      msre.propstats.add(pse);
 
-        if (!XmlUtil.nodeMatches(propnd, WebdavTags.prop)) {
-          throw new Exception("Bad response. Expected prop found " + propnd);
-        }
+      final Iterator<Element> propstatit = getChildren(nd).iterator();
+      final Node propnd = propstatit.next();
 
-        if (!propstatit.hasNext()) {
-          throw new Exception("Bad response. Expected propstat/status");
-        }
+      if (!XmlUtil.nodeMatches(propnd, WebdavTags.prop)) {
+        throw new Exception("Bad response. Expected prop found " + propnd);
+      }
 
-        pse.status = httpStatus(propstatit.next());
+      if (!propstatit.hasNext()) {
+        throw new Exception("Bad response. Expected propstat/status");
+      }
 
-        if (propstatit.hasNext()) {
-          Node rdesc = propstatit.next();
+      pse.status = httpStatus(propstatit.next());
 
-          if (!XmlUtil.nodeMatches(rdesc, WebdavTags.responseDescription)) {
-            throw new Exception("Bad response, expected null or " +
-                "responsedescription. Found: " + rdesc);
-          }
+      if (propstatit.hasNext()) {
+        final Element rdesc = propstatit.next();
 
-          pse.responseDescription = getElementContent(resp);
+        if (!XmlUtil.nodeMatches(rdesc, WebdavTags.responseDescription)) {
+          throw new Exception("Bad response, expected null or " +
+              "responsedescription. Found: " + rdesc);
         }
 
-        /* process each property with this status */
-
-        pse.props = getChildren(propnd);
+        pse.responseDescription = getElementContent(rdesc);
       }
+
+      /* process each property with this status */
+
+      pse.props = getChildren(propnd);
     }
 
-    return res;
+    return msre;
   }
 
   /** Do a synch report on the targeted collection.
@@ -316,12 +383,74 @@ public class DavUtil implements Serializable {
                                          final String path,
                                          final String syncToken,
                                          final Collection<QName> props) throws Throwable {
-    final StringWriter sw = new StringWriter();
+    final Collection<DavChild> res = new ArrayList<>();
+
+    if (!syncReport(cl, path, syncToken, props,
+                    new ResponseHandler<DavChild>() {
+                      @Override
+                      public void response(final DavChild val) {
+                        res.add(val);
+                      }
+                    })) {
+      return null;
+    }
+
+    return res;
+  }
+
+  /** Do a synch report on the targeted collection, handing each child
+   * to the handler as it is parsed. The new sync token is delivered as a
+   * DavChild with a single sync-token property.
+   *
+   * @param cl http client
+   * @param path of collection
+   * @param syncToken from last report or null
+   * @param props   null for a default set
+   * @param handler for each child
+   * @return false for not found or no multistatus response
+   * @throws Throwable
+   */
+  public boolean syncReport(final BasicHttpClient cl,
+                            final String path,
+                            final String syncToken,
+                            final Collection<QName> props,
+                            final ResponseHandler<DavChild> handler) throws Throwable {
+    final int res = sendRequest(cl, "REPORT", path,
+                                depth0,
+                                new WriterEntity(new WriterEntity.Producer() {
+                                  @Override
+                                  public void write(final Writer wtr) throws Throwable {
+                                    emitSyncReport(wtr, syncToken, props);
+                                  }
+                                }, "text/xml"));
+
+    if (res == HttpServletResponse.SC_NOT_FOUND) {
+      return false;
+    }
+
+    final int SC_MULTI_STATUS = 207; // not defined for some reason
+    if (res != SC_MULTI_STATUS) {
+      if (debug) {
+        debugMsg("Got response " + res + " for path " + path);
+      }
+
+      //throw new Exception("Got response " + res + " for path " + path);
+      return false;
+    }
+
+    processResponses(cl.getResponseBodyAsStream(), null, handler);
+
+    return true;
+  }
+
+  private void emitSyncReport(final Writer wtr,
+                              final String syncToken,
+                              final Collection<QName> props) throws Throwable {
     final XmlEmit xml = new XmlEmit();
 
     addNs(xml, WebdavTags.namespace);
 
-    xml.startEmit(sw);
+    xml.startEmit(wtr);
 
     /*
       <?xml version="1.0" encoding="utf-8" ?>
@@ -356,38 +485,6 @@ public class DavUtil implements Serializable {
 
     xml.closeTag(WebdavTags.prop);
     xml.closeTag(WebdavTags.syncCollection);
-
-    final byte[] content = sw.toString().getBytes();
-
-    final int res = sendRequest(cl, "REPORT", path,
-                                depth0,
-                                "text/xml", // contentType,
-                                content.length, // contentLen,
-                                content);
-
-    if (res == HttpServletResponse.SC_NOT_FOUND) {
-      return null;
-    }
-
-    final int SC_MULTI_STATUS = 207; // not defined for some reason
-    if (res != SC_MULTI_STATUS) {
-      if (debug) {
-        debugMsg("Got response " + res + " for path " + path);
-      }
-
-      //throw new Exception("Got response " + res + " for path " + path);
-      return null;
-    }
-
-    final Document doc = parseContent(cl.getResponseBodyAsStream());
-
-    final Element root = doc.getDocumentElement();
-
-    /*    <!ELEMENT multistatus (response+, responsedescription?) > */
-
-    expect(root, WebdavTags.multistatus);
-
-    return processResponses(getChildren(root), null);
   }
 
   /** Return the DavChild element for the targeted node.
@@ -435,12 +532,55 @@ public class DavUtil implements Serializable {
                                       final String path,
                                       final Collection<QName> props,
                                       final Header depthHeader) throws Throwable {
-    final StringWriter sw = new StringWriter();
+    final int res = sendRequest(cl, "PROPFIND", path,
+                                depthHeader,
+                                new WriterEntity(new WriterEntity.Producer() {
+                                  @Override
+                                  public void write(final Writer wtr) throws Throwable {
+                                    emitPropfind(wtr, props);
+                                  }
+                                }, "text/xml"));
+
+    if (res == HttpServletResponse.SC_NOT_FOUND) {
+      return null;
+    }
+
+    final int SC_MULTI_STATUS = 207; // not defined for some reason
+    if (res != SC_MULTI_STATUS) {
+      if (debug) {
+        debugMsg("Got response " + res + " for path " + path);
+      }
+
+      //throw new Exception("Got response " + res + " for path " + path);
+      return null;
+    }
+
+    final Collection<Element> children = new ArrayList<>();
+    final MultiStatusReader rdr =
+            new MultiStatusReader(cl.getResponseBodyAsStream());
+
+    try {
+      for (;;) {
+        final Element el = rdr.next();
+
+        if (el == null) {
+          return children;
+        }
+
+        children.add(el);
+      }
+    } finally {
+      rdr.close();
+    }
+  }
+
+  private void emitPropfind(final Writer wtr,
+                            final Collection<QName> props) throws Throwable {
     final XmlEmit xml = new XmlEmit();
 
     addNs(xml, WebdavTags.namespace);
 
-    xml.startEmit(sw);
+    xml.startEmit(wtr);
 
     xml.openTag(WebdavTags.propfind);
     xml.openTag(WebdavTags.prop);
@@ -464,38 +604,211 @@ public class DavUtil implements Serializable {
 
     xml.closeTag(WebdavTags.prop);
     xml.closeTag(WebdavTags.propfind);
+  }
 
-    final byte[] content = sw.toString().getBytes();
+  /** Fetch many resources with calendar-multiget or addressbook-multiget
+   * REPORTs of at most batchSize hrefs each. Batches run concurrently, up
+   * to the connection limit for the target host, and each response is
+   * handed to the handler as its batch arrives. Returns once all batches
+   * have completed.
+   *
+   * @param cl the client
+   * @param path of the collection
+   * @param hrefs of the resources
+   * @param props extra properties or null - getetag and the data are
+   *              always fetched
+   * @param addressbook true for CardDAV, false for CalDAV
+   * @param batchSize maximum hrefs per REPORT - defaultMultigetBatchSize
+   *                  if not positive
+   * @param handler for the responses
+   * @throws Throwable
+   */
+  public void multiget(final AsyncHttpClient cl,
+                       final String path,
+                       final Collection<String> hrefs,
+                       final Collection<QName> props,
+                       final boolean addressbook,
+                       final int batchSize,
+                       final MultigetHandler handler) throws Throwable {
+    if (Util.isEmpty(hrefs)) {
+      return;
+    }
 
-    final int res = sendRequest(cl, "PROPFIND", path,
-                                depthHeader,
-                                "text/xml", // contentType,
-                                content.length, // contentLen,
-                                content);
+    int bsize = batchSize;
+    if (bsize <= 0) {
+      bsize = defaultMultigetBatchSize;
+    }
 
-    if (res == HttpServletResponse.SC_NOT_FOUND) {
-      return null;
+    final Semaphore inFlight =
+            new Semaphore(Math.max(1, cl.getClient().getHostLimit(path)));
+    final List<Future<Integer>> futures = new ArrayList<>();
+    final List<Header> hdrs = makeHeaders(null);
+
+    final Iterator<String> it = hrefs.iterator();
+
+    while (it.hasNext()) {
+      final List<String> batch = new ArrayList<>(bsize);
+
+      while (it.hasNext() && (batch.size() < bsize)) {
+        batch.add(it.next());
+      }
+
+      final WriterEntity content =
+              new WriterEntity(new WriterEntity.Producer() {
+                @Override
+                public void write(final Writer wtr) throws Throwable {
+                  emitMultiget(wtr, batch, props, addressbook);
+                }
+              }, "text/xml");
+
+      boolean acquired = false;
+
+      try {
+        inFlight.acquire();
+        acquired = true;
+
+        futures.add(cl.send("REPORT", path, hdrs, content,
+                            new BodyConsumer<Integer>() {
+                              @Override
+                              public Integer consume(final ResponseHandle resp) throws Throwable {
+                                return multigetResponse(resp, handler);
+                              }
+                            },
+                            new FutureCallback<Integer>() {
+                              @Override
+                              public void completed(final Integer result) {
+                                inFlight.release();
+                              }
+
+                              @Override
+                              public void failed(final Exception ex) {
+                                inFlight.release();
+
+                                synchronized (handler) {
+                                  handler.failed(batch, ex);
+                                }
+                              }
+
+                              @Override
+                              public void cancelled() {
+                                inFlight.release();
+                              }
+                            }));
+      } catch (final Throwable t) {
+        /* Interrupted or not sent - give back any permit and abandon the
+           batches in flight */
+        if (acquired) {
+          inFlight.release();
+        }
+
+        cancelAll(futures);
+
+        throw t;
+      }
     }
 
-    final int SC_MULTI_STATUS = 207; // not defined for some reason
-    if (res != SC_MULTI_STATUS) {
-      if (debug) {
-        debugMsg("Got response " + res + " for path " + path);
+    for (final Future<Integer> f: futures) {
+      try {
+        f.get();
+      } catch (final ExecutionException ignored) {
+        // Reported to the handler
+      } catch (final InterruptedException ie) {
+        cancelAll(futures);
+
+        throw ie;
       }
+    }
+  }
 
-      //throw new Exception("Got response " + res + " for path " + path);
-      return null;
+  private static void cancelAll(final List<Future<Integer>> futures) {
+    for (final Future<Integer> f: futures) {
+      f.cancel(true);
     }
+  }
 
-    final Document doc = parseContent(cl.getResponseBodyAsStream());
+  private int multigetResponse(final ResponseHandle resp,
+                               final MultigetHandler handler) throws Throwable {
+    final int SC_MULTI_STATUS = 207; // not defined for some reason
+    if (resp.getStatus() != SC_MULTI_STATUS) {
+      throw new HttpException("Got response " + resp.getStatus() +
+                                      " for multiget");
+    }
 
-    final Element root = doc.getDocumentElement();
+    final int[] count = new int[1];
 
-    /*    <!ELEMENT multistatus (response+, responsedescription?) > */
+    /* Parse concurrently with the other batches - only the handler calls
+       are serialized */
+    getMultiStatusResponses(resp.getBodyAsStream(),
+            new ResponseHandler<MultiStatusResponseElement>() {
+              @Override
+              public void response(final MultiStatusResponseElement val) throws Throwable {
+                count[0]++;
+
+                synchronized (handler) {
+                  handler.response(val);
+                }
+              }
+            });
+
+    return count[0];
+  }
+
+  private void emitMultiget(final Writer wtr,
+                            final Collection<String> hrefs,
+                            final Collection<QName> props,
+                            final boolean addressbook) throws Throwable {
+    final XmlEmit xml = new XmlEmit();
+
+    final QName report;
+    final QName data;
+
+    if (addressbook) {
+      report = CarddavTags.addressbookMultiget;
+      data = CarddavTags.addressData;
+    } else {
+      report = CaldavTags.calendarMultiget;
+      data = CaldavTags.calendarData;
+    }
+
+    addNs(xml, WebdavTags.namespace);
+    addNs(xml, report.getNamespaceURI());
+
+    xml.startEmit(wtr);
+
+    /*
+      <C:calendar-multiget xmlns:D="DAV:"
+                           xmlns:C="urn:ietf:params:xml:ns:caldav">
+        <D:prop>
+          <D:getetag/>
+          <C:calendar-data/>
+        </D:prop>
+        <D:href>/bernard/work/abcd1.ics</D:href>
+        <D:href>/bernard/work/mtg1.ics</D:href>
+      </C:calendar-multiget>
+     */
+    xml.openTag(report);
+    xml.openTag(WebdavTags.prop);
+    xml.emptyTag(WebdavTags.getetag);
+    xml.emptyTag(data);
+
+    if (props != null) {
+      for (final QName pr: props) {
+        if (pr.equals(WebdavTags.getetag) || pr.equals(data)) {
+          continue;
+        }
+
+        addNs(xml, pr.getNamespaceURI());
+        xml.emptyTag(pr);
+      }
+    }
 
-    expect(root, WebdavTags.multistatus);
+    xml.closeTag(WebdavTags.prop);
 
-    return getChildren(root);
+    for (final String href: hrefs) {
+      xml.property(WebdavTags.href, href);
+    }
+
+    xml.closeTag(report);
   }
 
   /**
@@ -516,6 +829,28 @@ public class DavUtil implements Serializable {
                          final String contentType,
                          final int contentLen,
                          final byte[] content) throws Throwable {
+    return cl.sendRequest(methodName, url, makeHeaders(header),
+                          contentType, contentLen, content);
+  }
+
+  /**
+   * @param cl the client
+   * @param methodName
+   * @param url
+   * @param header
+   * @param content streamed content - e.g. a WriterEntity
+   * @return status code
+   * @throws Throwable
+   */
+  public int sendRequest(final BasicHttpClient cl,
+                         final String methodName,
+                         final String url,
+                         final Header header,
+                         final HttpEntity content) throws Throwable {
+    return cl.sendRequest(methodName, url, makeHeaders(header), content);
+  }
+
+  private List<Header> makeHeaders(final Header header) {
     int hdrSize = 0;
 
     if (header != null) {
@@ -539,8 +874,7 @@ public class DavUtil implements Serializable {
       }
     }
 
-    return cl.sendRequest(methodName, url, hdrs,
-                          contentType, contentLen, content);
+    return hdrs;
   }
 
   /* ====================================================================
@@ -559,21 +893,6 @@ public class DavUtil implements Serializable {
     }
   }
 
-  /** Parse the content, and return the DOM representation.
-   *
-   * @param in         content as stream
-   * @return Document  Parsed body or null for no body
-   * @exception Throwable Some error occurred.
-   */
-  private Document parseContent(final InputStream in) throws Throwable {
-    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    factory.setNamespaceAware(true);
-
-    DocumentBuilder builder = factory.newDocumentBuilder();
-
-    return builder.parse(new InputSource(new InputStreamReader(in)));
-  }
-
   /**
    * @param nd
    * @return Collection<Element>
@@ -791,44 +1110,98 @@ public class DavUtil implements Serializable {
         continue;
       }
 
-      if (XmlUtil.nodeMatches(resp, WebdavTags.syncToken)) {
-        // We did a sync report. Add the token to the list
+      final DavChild dc = makeChild(resp, parentURI);
 
-        DavChild dc = new DavChild();
+      if (dc != null) {
+        result.add(dc);
+      }
+    }
 
-        DavProp dp = new DavProp();
-        dp.name = WebdavTags.syncToken;
-        dp.element = resp;
-        dp.status = HttpServletResponse.SC_OK;
+    return result;
+  }
 
-        dc.propVals.add(dp);
+  /** Parse a multistatus response, handing each child to the handler as
+   * it is parsed. Memory use is bounded by the size of the largest
+   * response rather than the whole body.
+   *
+   * @param in the multistatus response body
+   * @param parentURI if non-null the response for the parent is skipped
+   * @param handler for each child
+   * @throws Throwable
+   */
+  public void processResponses(final InputStream in,
+                               final URI parentURI,
+                               final ResponseHandler<DavChild> handler) throws Throwable {
+    final MultiStatusReader rdr = new MultiStatusReader(in);
+    boolean sawDescription = false;
 
-        dc.status = HttpServletResponse.SC_OK;
-        result.add(dc);
+    try {
+      for (;;) {
+        final Element resp = rdr.next();
 
-        continue;
-      }
+        if (resp == null) {
+          return;
+        }
 
-      if (!XmlUtil.nodeMatches(resp, WebdavTags.response)) {
-        throw new Exception("Bad multstatus Expected " +
-                                    "(response+, responsedescription?) found " + resp);
-      }
+        if (sawDescription) {
+          // Has to be last
+          throw new Exception("Bad multstatus Expected " +
+                                      "(response+, responsedescription?)");
+        }
 
-      DavChild dc = makeDavResponse(resp);
+        if (XmlUtil.nodeMatches(resp, WebdavTags.responseDescription)) {
+          sawDescription = true;
+          continue;
+        }
 
-      if (parentURI != null) {
-        /* We get the collection back as well - check for it and skip it. */
-        URI childURI = new URI("http", "localhost", dc.uri, null);
+        final DavChild dc = makeChild(resp, parentURI);
 
-        if (parentURI.getPath().equals(childURI.getPath())) {
-          continue;
+        if (dc != null) {
+          handler.response(dc);
         }
       }
+    } finally {
+      rdr.close();
+    }
+  }
+
+  /* Returns null for the parent */
+  private DavChild makeChild(final Element resp,
+                             final URI parentURI) throws Throwable {
+    if (XmlUtil.nodeMatches(resp, WebdavTags.syncToken)) {
+      // We did a sync report. Add the token to the list
+
+      final DavChild dc = new DavChild();
+
+      final DavProp dp = new DavProp();
+      dp.name = WebdavTags.syncToken;
+      dp.element = resp;
+      dp.status = HttpServletResponse.SC_OK;
+
+      dc.propVals.add(dp);
 
-      result.add(dc);
+      dc.status = HttpServletResponse.SC_OK;
+
+      return dc;
     }
 
-    return result;
+    if (!XmlUtil.nodeMatches(resp, WebdavTags.response)) {
+      throw new Exception("Bad multstatus Expected " +
+                                  "(response+, responsedescription?) found " + resp);
+    }
+
+    final DavChild dc = makeDavResponse(resp);
+
+    if (parentURI != null) {
+      /* We get the collection back as well - check for it and skip it. */
+      final URI childURI = new URI("http", "localhost", dc.uri, null);
+
+      if (parentURI.getPath().equals(childURI.getPath())) {
+        return null;
+      }
+    }
+
+    return dc;
   }
 
   /** Return the DavChild element for the targeted node.
@@ -0,0 +1,220 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.dav;
+
+import org.bedework.util.xml.tagdefs.WebdavTags;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.Closeable;
+import java.io.InputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/** Pull the children of a multistatus response - response, sync-token
+ * and responsedescription elements - one at a time using StAX. Each child
+ * is returned as a small DOM element so that the usual DavUtil processing
+ * applies, but the response as a whole is never held in memory.
+ *
+ * <p>Only the checks which need the whole document are made here: the
+ * root must be multistatus and there may be no text between its
+ * children.
+ *
+ * @author Mike Douglass
+ */
+public class MultiStatusReader implements Closeable {
+  private static final XMLInputFactory inputFactory;
+
+  private static final DocumentBuilderFactory docFactory;
+
+  static {
+    inputFactory = XMLInputFactory.newInstance();
+    inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+    docFactory = DocumentBuilderFactory.newInstance();
+    docFactory.setNamespaceAware(true);
+  }
+
+  private final XMLStreamReader rdr;
+
+  /* Owner of the elements we return - never has children */
+  private final Document doc;
+
+  private boolean done;
+
+  /**
+   * @param in the response body
+   * @throws Throwable if the root is not multistatus
+   */
+  public MultiStatusReader(final InputStream in) throws Throwable {
+    rdr = inputFactory.createXMLStreamReader(in);
+    doc = docFactory.newDocumentBuilder().newDocument();
+
+    while (rdr.hasNext()) {
+      if (rdr.next() == XMLStreamConstants.START_ELEMENT) {
+        break;
+      }
+    }
+
+    if (!rdr.isStartElement() || !matches(WebdavTags.multistatus)) {
+      throw new Exception("Expected " + WebdavTags.multistatus);
+    }
+  }
+
+  /**
+   * @return the next child of multistatus or null at the end
+   * @throws Throwable on bad or unreadable xml
+   */
+  public Element next() throws Throwable {
+    if (done) {
+      return null;
+    }
+
+    while (rdr.hasNext()) {
+      final int ev = rdr.next();
+
+      switch (ev) {
+        case XMLStreamConstants.START_ELEMENT:
+          return readElement();
+
+        case XMLStreamConstants.END_ELEMENT:
+          // End of multistatus
+          done = true;
+          return null;
+
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+          if (!rdr.isWhiteSpace()) {
+            throw new Exception("Non-whitespace text in element body for " +
+                                        WebdavTags.multistatus.getLocalPart() +
+                                        "\n text=" + rdr.getText());
+          }
+          break;
+
+        default:
+          // Comments, whitespace, processing instructions
+      }
+    }
+
+    done = true;
+    return null;
+  }
+
+  @Override
+  public void close() {
+    try {
+      rdr.close();
+    } catch (final Throwable ignored) {
+    }
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private boolean matches(final QName nm) {
+    return nm.getLocalPart().equals(rdr.getLocalName()) &&
+            nm.getNamespaceURI().equals(nsUri(rdr.getNamespaceURI()));
+  }
+
+  /* Positioned at a start element - build it and its content */
+  private Element readElement() throws XMLStreamException {
+    final Element el = doc.createElementNS(nullIfEmpty(rdr.getNamespaceURI()),
+                                           qualified(rdr.getPrefix(),
+                                                     rdr.getLocalName()));
+
+    for (int i = 0; i < rdr.getNamespaceCount(); i++) {
+      final String pfx = rdr.getNamespacePrefix(i);
+      final String qn;
+
+      if ((pfx == null) || pfx.isEmpty()) {
+        qn = XMLConstants.XMLNS_ATTRIBUTE;
+      } else {
+        qn = XMLConstants.XMLNS_ATTRIBUTE + ":" + pfx;
+      }
+
+      el.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, qn,
+                        nsUri(rdr.getNamespaceURI(i)));
+    }
+
+    for (int i = 0; i < rdr.getAttributeCount(); i++) {
+      el.setAttributeNS(nullIfEmpty(rdr.getAttributeNamespace(i)),
+                        qualified(rdr.getAttributePrefix(i),
+                                  rdr.getAttributeLocalName(i)),
+                        rdr.getAttributeValue(i));
+    }
+
+    while (rdr.hasNext()) {
+      switch (rdr.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          el.appendChild(readElement());
+          break;
+
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          el.appendChild(doc.createTextNode(rdr.getText()));
+          break;
+
+        case XMLStreamConstants.END_ELEMENT:
+          return el;
+
+        default:
+          // Comments and processing instructions are dropped
+      }
+    }
+
+    throw new XMLStreamException("Unexpected end of document in " +
+                                         rdr.getLocalName());
+  }
+
+  private static String qualified(final String prefix,
+                                  final String localName) {
+    if ((prefix == null) || prefix.isEmpty()) {
+      return localName;
+    }
+
+    return prefix + ":" + localName;
+  }
+
+  private static String nsUri(final String val) {
+    if (val == null) {
+      return "";
+    }
+
+    return val;
+  }
+
+  private static String nullIfEmpty(final String val) {
+    if ((val == null) || val.isEmpty()) {
+      return null;
+    }
+
+    return val;
+  }
+}
@@ -1,5 +1,6 @@
 package org.bedework.util.deployment;
 
+import org.bedework.util.misc.PropertyTemplate;
 import org.bedework.util.misc.Util;
 
 import java.util.ArrayDeque;
@@ -86,25 +87,18 @@ public class PropertiesChain implements Util.PropertyFetcher {
     return pstack.peek().stringPropertyNames();
   }
 
-  @Override
-  public String get(final String name) {
-    String pname = name;
-    int level = pstack.size();
-
-    for (final Properties props: pstack) {
-      if ((level == 1) && pname.startsWith("app.")) {
-        pname = "org.bedework.global" + pname.substring(3);
-      }
-
-      final String s = props.getProperty(pname);
-      if (s != null) {
-        return Util.propertyReplace(s, this);
-      }
-
-      level--;
+  /* Unexpanded values - references are expanded by PropertyTemplate
+   * which detects reference loops */
+  private final Util.PropertyFetcher raw = new Util.PropertyFetcher() {
+    @Override
+    public String get(final String name) {
+      return getRaw(name);
     }
+  };
 
-    return null;
+  @Override
+  public String get(final String name) {
+    return PropertyTemplate.expandProperty(name, raw);
   }
 
   @SuppressWarnings("unused")
@@ -112,7 +106,7 @@ public class PropertiesChain implements Util.PropertyFetcher {
     for (final Properties props: pstack) {
       final String s = props.getProperty(name);
       if (s != null) {
-        return Util.propertyReplace(s, this);
+        return PropertyTemplate.compile(s).render(raw, true);
       }
     }
 
@@ -140,11 +134,35 @@ public class PropertiesChain implements Util.PropertyFetcher {
       return null;
     }
 
-    return Util.propertyReplace(s, this);
+    return PropertyTemplate.compile(s).render(raw, true);
   }
 
   public void pushFiltered(final String prefix,
                            final String newPrefix) {
     push(Utils.filter(pstack.peek(), prefix, newPrefix));
   }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private String getRaw(final String name) {
+    String pname = name;
+    int level = pstack.size();
+
+    for (final Properties props: pstack) {
+      if ((level == 1) && pname.startsWith("app.")) {
+        pname = "org.bedework.global" + pname.substring(3);
+      }
+
+      final String s = props.getProperty(pname);
+      if (s != null) {
+        return s;
+      }
+
+      level--;
+    }
+
+    return null;
+  }
 }
@@ -0,0 +1,439 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Send requests without tying up the caller. This is a thread pool in
+ * front of the blocking BasicHttpClient, not non-blocking I/O: each
+ * request in progress holds a worker thread until its response has been
+ * delivered or consumed, so at most maxThreads requests are in progress.
+ *
+ * <p>Requests are built by the wrapped BasicHttpClient so they share its
+ * scheme registry, SSL setup, credentials and base URI, and they are
+ * executed over the same pooled connection manager - limits set with
+ * BasicHttpClient.setHostLimit apply here as well.
+ *
+ * <p>Requests waiting for a worker are held in a bounded queue. When it
+ * is full a send either waits for space or is rejected, so a large fan
+ * out can't grow memory without bound.
+ *
+ * <p>Each request returns a Future which may also be given a callback.
+ * Either a ResponseHandle is delivered, which the caller must release, or
+ * the body is handed to a BodyConsumer as a stream and the connection
+ * released when it returns.
+ *
+ * <p>Cancelling a future aborts the underlying request.
+ *
+ * @author Mike Douglass
+ */
+public class AsyncHttpClient {
+  private transient Logger log;
+
+  private final BasicHttpClient client;
+
+  private final ThreadPoolExecutor executor;
+
+  private static final AtomicInteger poolNum = new AtomicInteger();
+
+  private static final long defaultShutdownMillis = 60 * 1000;
+
+  /* Queued requests per worker when not given */
+  private static final int defaultQueuedPerThread = 10;
+
+  /* Wait for queue space rather than reject */
+  private static class WaitWhenFull implements RejectedExecutionHandler {
+    @Override
+    public void rejectedExecution(final Runnable r,
+                                  final ThreadPoolExecutor executor) {
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException("Client is shut down");
+      }
+
+      try {
+        executor.getQueue().put(r);
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("Interrupted waiting to queue",
+                                             ie);
+      }
+    }
+  }
+
+  private static class WorkerFactory implements ThreadFactory {
+    private final String prefix =
+        "bw-http-async-" + poolNum.incrementAndGet() + "-";
+
+    private final AtomicInteger threadNum = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      final Thread t = new Thread(r, prefix + threadNum.incrementAndGet());
+      t.setDaemon(true);
+
+      return t;
+    }
+  }
+
+  /* A future which aborts the request when cancelled */
+  private static class RequestFuture<T> extends BasicFuture<T> {
+    private volatile HttpRequestBase request;
+
+    RequestFuture(final FutureCallback<T> callback) {
+      super(callback);
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      final HttpRequestBase req = request;
+      if (req != null) {
+        req.abort();
+      }
+
+      return super.cancel(mayInterruptIfRunning);
+    }
+  }
+
+  /** Up to ten requests per thread are queued. A send waits for space
+   * when the queue is full.
+   *
+   * @param client used to build requests and to execute them
+   * @param maxThreads maximum concurrent requests
+   */
+  public AsyncHttpClient(final BasicHttpClient client,
+                         final int maxThreads) {
+    this(client, maxThreads, maxThreads * defaultQueuedPerThread, true);
+  }
+
+  /**
+   * @param client used to build requests and to execute them
+   * @param maxThreads maximum concurrent requests
+   * @param maxQueued maximum requests waiting for a worker
+   * @param waitWhenFull true if a send waits for space when maxQueued
+   *                     requests are waiting, false to reject it with a
+   *                     RejectedExecutionException
+   */
+  public AsyncHttpClient(final BasicHttpClient client,
+                         final int maxThreads,
+                         final int maxQueued,
+                         final boolean waitWhenFull) {
+    this.client = client;
+
+    final RejectedExecutionHandler whenFull;
+
+    if (waitWhenFull) {
+      whenFull = new WaitWhenFull();
+    } else {
+      whenFull = new ThreadPoolExecutor.AbortPolicy();
+    }
+
+    executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                                      60, TimeUnit.SECONDS,
+                                      new ArrayBlockingQueue<Runnable>(
+                                              Math.max(1, maxQueued)),
+                                      new WorkerFactory(),
+                                      whenFull);
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @return the client used to build and execute requests
+   */
+  public BasicHttpClient getClient() {
+    return client;
+  }
+
+  /**
+   * @return number of requests waiting for a worker
+   */
+  public int getQueued() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * @return number of requests being executed
+   */
+  public int getActive() {
+    return executor.getActiveCount();
+  }
+
+  /** Send a request. The caller must release the delivered response.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @param contentType may be null
+   * @param content may be null
+   * @param callback may be null
+   * @return future response
+   */
+  public Future<ResponseHandle> send(final String methodName,
+                                     final String url,
+                                     final List<Header> hdrs,
+                                     final String contentType,
+                                     final byte[] content,
+                                     final FutureCallback<ResponseHandle> callback) {
+    return submit(methodName, url, hdrs,
+                  BasicHttpClient.byteEntity(content, contentType),
+                  null, callback);
+  }
+
+  /** Send a request and hand the response to the consumer. The response
+   * is released once the consumer returns.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @param contentType may be null
+   * @param content may be null
+   * @param consumer handles the response
+   * @param callback may be null
+   * @param <T> type of result
+   * @return future result of the consumer
+   */
+  public <T> Future<T> send(final String methodName,
+                            final String url,
+                            final List<Header> hdrs,
+                            final String contentType,
+                            final byte[] content,
+                            final BodyConsumer<T> consumer,
+                            final FutureCallback<T> callback) {
+    return send(methodName, url, hdrs,
+                BasicHttpClient.byteEntity(content, contentType),
+                consumer, callback);
+  }
+
+  /** Send a request with content from any entity - for example a
+   * WriterEntity. The caller must release the delivered response.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @param content may be null
+   * @param callback may be null
+   * @return future response
+   */
+  public Future<ResponseHandle> send(final String methodName,
+                                     final String url,
+                                     final List<Header> hdrs,
+                                     final HttpEntity content,
+                                     final FutureCallback<ResponseHandle> callback) {
+    return submit(methodName, url, hdrs, content, null, callback);
+  }
+
+  /** Send a request with content from any entity and hand the response
+   * to the consumer. The response is released once the consumer returns.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @param content may be null
+   * @param consumer handles the response
+   * @param callback may be null
+   * @param <T> type of result
+   * @return future result of the consumer
+   */
+  public <T> Future<T> send(final String methodName,
+                            final String url,
+                            final List<Header> hdrs,
+                            final HttpEntity content,
+                            final BodyConsumer<T> consumer,
+                            final FutureCallback<T> callback) {
+    if (consumer == null) {
+      throw new IllegalArgumentException("Null consumer");
+    }
+
+    return submit(methodName, url, hdrs, content, consumer, callback);
+  }
+
+  /**
+   * @param url the url
+   * @param hdrs may be null
+   * @param consumer handles the response
+   * @param callback may be null
+   * @param <T> type of result
+   * @return future result of the consumer
+   */
+  public <T> Future<T> get(final String url,
+                           final List<Header> hdrs,
+                           final BodyConsumer<T> consumer,
+                           final FutureCallback<T> callback) {
+    return send("GET", url, hdrs, (HttpEntity)null, consumer, callback);
+  }
+
+  /** Stop accepting requests and abandon any not yet started. Requests
+   * in progress are allowed up to a minute to complete.
+   */
+  public void shutdown() {
+    shutdown(defaultShutdownMillis);
+  }
+
+  /** Stop accepting requests and abandon any not yet started. Requests
+   * in progress are allowed to complete - any still running after the
+   * timeout are interrupted.
+   *
+   * @param timeoutMillis maximum wait for requests in progress
+   */
+  public void shutdown(final long timeoutMillis) {
+    executor.shutdown();
+
+    final List<Runnable> waiting = new ArrayList<>();
+    executor.getQueue().drainTo(waiting);
+    cancel(waiting);
+
+    try {
+      if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+        return;
+      }
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+
+    getLogger().warn("Interrupting requests still running after " +
+                             timeoutMillis + "ms");
+    cancel(executor.shutdownNow());
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private static void cancel(final List<Runnable> tasks) {
+    for (final Runnable r: tasks) {
+      if (r instanceof Task) {
+        ((Task<?>)r).future.cancel(false);
+      }
+    }
+  }
+
+  private class Task<T> implements Runnable {
+    private final String methodName;
+    private final String url;
+    private final List<Header> hdrs;
+    private final HttpEntity content;
+    private final BodyConsumer<T> consumer;
+    private final RequestFuture<T> future;
+
+    Task(final String methodName,
+         final String url,
+         final List<Header> hdrs,
+         final HttpEntity content,
+         final BodyConsumer<T> consumer,
+         final RequestFuture<T> future) {
+      this.methodName = methodName;
+      this.url = url;
+      this.hdrs = hdrs;
+      this.content = content;
+      this.consumer = consumer;
+      this.future = future;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run() {
+      if (future.isCancelled()) {
+        return;
+      }
+
+      ResponseHandle resp = null;
+
+      try {
+        final HttpRequestBase req = client.makeRequest(methodName, url, hdrs,
+                                                       content, null);
+        future.request = req;
+
+        if (future.isCancelled()) {
+          return;
+        }
+
+        resp = client.executeRequest(req);
+
+        if (consumer == null) {
+          if (!future.completed((T)resp)) {
+            // Cancelled while executing
+            resp.close();
+          }
+          resp = null;
+          return;
+        }
+
+        future.completed(consumer.consume(resp));
+      } catch (final Exception e) {
+        failed(e);
+      } catch (final Throwable t) {
+        failed(new HttpException(t.getLocalizedMessage(), t));
+      } finally {
+        if (resp != null) {
+          resp.close();
+        }
+      }
+    }
+
+    private void failed(final Exception e) {
+      if (future.isCancelled()) {
+        return;
+      }
+
+      if (getLogger().isDebugEnabled()) {
+        getLogger().debug("Request failed: " + methodName + " " + url, e);
+      }
+
+      future.failed(e);
+    }
+  }
+
+  private <T> Future<T> submit(final String methodName,
+                               final String url,
+                               final List<Header> hdrs,
+                               final HttpEntity content,
+                               final BodyConsumer<T> consumer,
+                               final FutureCallback<T> callback) {
+    final RequestFuture<T> future = new RequestFuture<>(callback);
+
+    executor.execute(new Task<>(methodName, url, hdrs,
+                                content, consumer, future));
+
+    return future;
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+}
@@ -40,13 +40,18 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ClientConnectionRequest;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.FileEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.message.BasicHeaderElementIterator;
@@ -55,11 +60,12 @@ import org.apache.http.params.HttpParams;
 import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
@@ -82,14 +88,68 @@ public class BasicHttpClient extends DefaultHttpClient {
 
   private static PoolingClientConnectionManager connManager;
 
+  /* Record the time spent waiting for a pooled connection */
+  private static class TimedConnectionManager
+          extends PoolingClientConnectionManager {
+    TimedConnectionManager(final SchemeRegistry schemeRegistry) {
+      super(schemeRegistry);
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection(final HttpRoute route,
+                                                     final Object state) {
+      final ClientConnectionRequest req = super.requestConnection(route,
+                                                                  state);
+
+      if (poolController != null) {
+        poolController.seen(route);
+      }
+
+      return new ClientConnectionRequest() {
+        @Override
+        public ManagedClientConnection getConnection(final long timeout,
+                                                     final TimeUnit tunit)
+                throws InterruptedException, ConnectionPoolTimeoutException {
+          final long start = System.currentTimeMillis();
+
+          try {
+            return req.getConnection(timeout, tunit);
+          } finally {
+            HttpOutStats.leased(routeKey(route.getTargetHost()),
+                                System.currentTimeMillis() - start);
+          }
+        }
+
+        @Override
+        public void abortRequest() {
+          req.abortRequest();
+        }
+      };
+    }
+  }
+
+  private static final PoolController poolController;
+
   public static class IdleConnectionMonitorThread extends Thread {
 
     private final PoolingClientConnectionManager connMgr;
+    private final PoolController controller;
     private volatile boolean shutdown;
 
     public IdleConnectionMonitorThread(PoolingClientConnectionManager connMgr) {
-      super();
+      this(connMgr, null);
+    }
+
+    /**
+     * @param connMgr the manager
+     * @param controller adjusts the pool and idle timeout - may be null
+     */
+    public IdleConnectionMonitorThread(final PoolingClientConnectionManager connMgr,
+                                       final PoolController controller) {
+      super("bw-http-idle-monitor");
+      setDaemon(true);
       this.connMgr = connMgr;
+      this.controller = controller;
     }
 
     @Override
@@ -97,12 +157,29 @@ public class BasicHttpClient extends DefaultHttpClient {
       try {
         while (!shutdown) {
           synchronized (this) {
-            wait(5000);
+            if (controller == null) {
+              wait(5000);
+            } else {
+              wait(controller.getIntervalMillis());
+            }
+
             // Close expired connections
             connMgr.closeExpiredConnections();
-            // Optionally, close connections
-            // that have been idle longer than 30 sec
-            connMgr.closeIdleConnections(30, TimeUnit.SECONDS);
+
+            if (controller == null) {
+              connMgr.closeIdleConnections(30, TimeUnit.SECONDS);
+              continue;
+            }
+
+            try {
+              controller.adjust();
+            } catch (final Throwable t) {
+              Logger.getLogger(this.getClass()).warn(
+                      "Pool adjustment failed: " + t.getLocalizedMessage());
+            }
+
+            connMgr.closeIdleConnections(controller.getIdleSeconds(),
+                                         TimeUnit.SECONDS);
           }
         }
       } catch (InterruptedException ex) {
@@ -131,28 +208,29 @@ public class BasicHttpClient extends DefaultHttpClient {
     sr.register(new Scheme("webcal", 80, PlainSocketFactory.getSocketFactory()));
     sr.register(new Scheme("webcals", 443, getSslSocketFactory()));
 
-    connManager = new PoolingClientConnectionManager(sr);
+    connManager = new TimedConnectionManager(sr);
 
- // Increase max total connection to 200
+    /* Starting points - the controller raises per route limits within
+       its bounds once it sees traffic and never lowers them below these.
+     */
     connManager.setMaxTotal(200);
-    // Increase default max connection per route to 20
     connManager.setDefaultMaxPerRoute(20);
 
-    // Increase max connections for localhost:80 to 50
-    HttpHost localhost = new HttpHost("localhost", 80);
-    connManager.setMaxPerRoute(new HttpRoute(localhost), 50);
+    // Local traffic starts higher
+    connManager.setMaxPerRoute(new HttpRoute(new HttpHost("localhost", 80)),
+                               50);
+    connManager.setMaxPerRoute(new HttpRoute(new HttpHost("localhost", 8080)),
+                               50);
 
-    // Increase max connections for localhost:8080 to 50
-    HttpHost localhost8080 = new HttpHost("localhost", 8080);
-    connManager.setMaxPerRoute(new HttpRoute(localhost8080), 50);
+    poolController = new PoolController(connManager);
 
-    idleConnectionMonitor = new IdleConnectionMonitorThread(connManager);
+    idleConnectionMonitor = new IdleConnectionMonitorThread(connManager,
+                                                            poolController);
     idleConnectionMonitor.start();
   }
 
-  private HttpRequestBase method;
-
-  private HttpResponse response;
+  /* The response for the stateful methods - sendRequest, getResponse* etc */
+  private ResponseHandle current;
 
   private ConnectionKeepAliveStrategy kas = new ConnectionKeepAliveStrategy() {
 
@@ -179,15 +257,15 @@ public class BasicHttpClient extends DefaultHttpClient {
     }
   };
 
-  private int status;
+  private volatile Credentials credentials;
 
-  private Credentials credentials;
+  private volatile ResponseCache responseCache;
 
   private boolean hostSpecified;
 
-  private String baseURIValue;
+  private volatile String baseURIValue;
 
-  private URI baseURI;
+  private volatile URI baseURI;
 
   /**
    * @param timeOut - millisecs, 0 for no timeout
@@ -383,8 +461,70 @@ public class BasicHttpClient extends DefaultHttpClient {
   public static void setHostLimit(final String host,
                                   final int port,
                                   final int max) {
-    HttpHost hostPort = new HttpHost(host, port);
-    connManager.setMaxPerRoute(new HttpRoute(hostPort), max);
+    final HttpRoute route = new HttpRoute(new HttpHost(host, port));
+    connManager.setMaxPerRoute(route, max);
+
+    // An explicit limit is not adjusted
+    poolController.pin(route);
+  }
+
+  /**
+   * @return the controller which adjusts the connection pool
+   */
+  public static PoolController getPoolController() {
+    return poolController;
+  }
+
+  /**
+   * @param host the host
+   * @param port the port number
+   * @return limit set by setHostLimit or the default per route
+   */
+  public static int getHostLimit(final String host,
+                                 final int port) {
+    final HttpHost hostPort = new HttpHost(host, port);
+    return connManager.getMaxPerRoute(new HttpRoute(hostPort));
+  }
+
+  /** Find the connection limit for the host targeted by a url. Relative
+   * urls are resolved against the base URI or default host.
+   *
+   * @param url the url
+   * @return limit for the host
+   * @throws HttpException
+   */
+  public int getHostLimit(final String url) throws HttpException {
+    try {
+      final URI u = new URI(url);
+
+      HttpHost target = URIUtils.extractHost(u);
+
+      if ((target == null) && (baseURIValue != null)) {
+        target = URIUtils.extractHost(new URI(baseURIValue));
+      }
+
+      if ((target == null) && (baseURI != null)) {
+        target = URIUtils.extractHost(baseURI);
+      }
+
+      if (target == null) {
+        target = (HttpHost)getParams().getParameter(ClientPNames.DEFAULT_HOST);
+      }
+
+      if (target == null) {
+        return getDefaultMaxPerRoute();
+      }
+
+      int port = target.getPort();
+
+      if (port < 0) {
+        port = sr.getScheme(target.getSchemeName()).getDefaultPort();
+      }
+
+      return getHostLimit(target.getHostName(), port);
+    } catch (final Throwable t) {
+      throw new HttpException(t.getLocalizedMessage(), t);
+    }
   }
 
   /* *
@@ -429,6 +569,20 @@ public class BasicHttpClient extends DefaultHttpClient {
     }
   }
 
+  /**
+   * @param val a cache for GET responses or null for none
+   */
+  public void setResponseCache(final ResponseCache val) {
+    responseCache = val;
+  }
+
+  /**
+   * @return the cache for GET responses or null
+   */
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
   /** Send a (simple) request to the server
    *
    * @param method the method, GET, PUT etc
@@ -462,7 +616,9 @@ public class BasicHttpClient extends DefaultHttpClient {
                        contentType, contentLen, content, null);
   }
 
-  /** Send a request to the server
+  /** Send a request to the server. The response is retained for the
+   * getResponse... methods and release, so one client cannot be used for
+   * concurrent requests this way - use the execute methods for that.
    *
    * @param methodName
    * @param url
@@ -477,7 +633,7 @@ public class BasicHttpClient extends DefaultHttpClient {
   public int sendRequest(final String methodName,
                          final String url,
                          final List<Header> hdrs,
-                         String contentType, final int contentLen,
+                         final String contentType, final int contentLen,
                          final byte[] content,
                          final HttpParams params) throws HttpException {
     int sz = 0;
@@ -493,66 +649,250 @@ public class BasicHttpClient extends DefaultHttpClient {
                " contentType=" + contentType);
     }
 
+    current = execute(methodName, url, hdrs, contentType, content, params);
+
+    return current.getStatus();
+  }
+
+  /** Send a request to the server with content from any entity - for
+   * example a WriterEntity, ByteBufferEntity or fileEntity.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @param content may be null
+   * @return int    status code
+   * @throws HttpException
+   */
+  public int sendRequest(final String methodName,
+                         final String url,
+                         final List<Header> hdrs,
+                         final HttpEntity content) throws HttpException {
+    if (debug) {
+      debugMsg("About to send request: method=" + methodName +
+               " url=" + url +
+               " content=" + content);
+    }
+
+    current = execute(methodName, url, hdrs, content, null);
+
+    return current.getStatus();
+  }
+
+  /** Execute a (simple) request. The caller owns the result and must
+   * release it. This does not affect the state used by sendRequest
+   * and may be called from many threads at once.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @return the response
+   * @throws HttpException
+   */
+  public ResponseHandle execute(final String methodName,
+                                final String url,
+                                final List<Header> hdrs) throws HttpException {
+    return execute(methodName, url, hdrs, null, null, null);
+  }
+
+  /** Execute a request. The caller owns the result and must release it.
+   * This does not affect the state used by sendRequest and may be called
+   * from many threads at once.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @param contentType may be null
+   * @param content may be null
+   * @param params may be null
+   * @return the response
+   * @throws HttpException
+   */
+  public ResponseHandle execute(final String methodName,
+                                final String url,
+                                final List<Header> hdrs,
+                                final String contentType,
+                                final byte[] content,
+                                final HttpParams params) throws HttpException {
     try {
-      URI u = new URI(url);
+      return executeRequest(makeRequest(methodName, url, hdrs,
+                                        contentType, content, params));
+    } catch (final HttpException he) {
+      throw he;
+    } catch (final Throwable t) {
+      throw new HttpException(t.getLocalizedMessage(), t);
+    }
+  }
 
-      if (!hostSpecified && (u.getHost() == null)) {
-        if ((baseURI == null) && (baseURIValue != null)) {
-          baseURI = new URI(baseURIValue);
-        }
+  /** Execute a request with content from any entity. The caller owns the
+   * result and must release it.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @param content may be null
+   * @param params may be null
+   * @return the response
+   * @throws HttpException
+   */
+  public ResponseHandle execute(final String methodName,
+                                final String url,
+                                final List<Header> hdrs,
+                                final HttpEntity content,
+                                final HttpParams params) throws HttpException {
+    try {
+      return executeRequest(makeRequest(methodName, url, hdrs,
+                                        content, params));
+    } catch (final HttpException he) {
+      throw he;
+    } catch (final Throwable t) {
+      throw new HttpException(t.getLocalizedMessage(), t);
+    }
+  }
 
-        if (baseURI == null) {
-          throw new HttpException("No base URI specified for non-absolute URI " + url);
-        }
+  /** Execute a request built by the caller or by makeRequest. The caller
+   * owns the result and must release it.
+   *
+   * @param req the request
+   * @return the response
+   * @throws HttpException
+   */
+  public ResponseHandle executeRequest(final HttpRequestBase req) throws HttpException {
+    final ResponseCache cache = responseCache;
 
-        if (baseURI.getHost() == null) {
-          throw new HttpException("Base URI must be absolute: " + baseURI);
-        }
+    if (cache != null) {
+      return cache.execute(this, req);
+    }
 
-        u = baseURI.resolve(u);
-      }
+    return executeUncached(req);
+  }
 
-      if (debug) {
-        debugMsg("      url resolves to " + u);
-      }
+  /* Execute bypassing any response cache */
+  ResponseHandle executeUncached(final HttpRequestBase req) throws HttpException {
+    final long start = System.currentTimeMillis();
+    HttpResponse resp = null;
+
+    try {
+      resp = execute(req);
+
+      return new ResponseHandle(req, resp);
+    } catch (final Throwable t) {
+      throw new HttpException(t.getLocalizedMessage(), t);
+    } finally {
+      recordRequest(req, resp, System.currentTimeMillis() - start);
+    }
+  }
+
+  /**
+   * @param host target of a request
+   * @return key used for per route statistics
+   */
+  public static String routeKey(final HttpHost host) {
+    if (host == null) {
+      return HttpOutStats.otherRoutes;
+    }
 
-      method = findMethod(methodName, u);
+    int port = host.getPort();
 
-      if (credentials != null) {
-        getCredentialsProvider().setCredentials(new AuthScope(u.getHost(),
-                                                              u.getPort()),
-                                                credentials);
+    if (port < 0) {
+      try {
+        port = sr.getScheme(host.getSchemeName()).getDefaultPort();
+      } catch (final IllegalStateException ignored) {
+        // Unregistered scheme - leave the port unspecified
       }
+    }
 
-      if (!Util.isEmpty(hdrs)) {
-        for (final Header hdr: hdrs) {
-          method.addHeader(hdr);
-        }
+    return host.getSchemeName() + "://" +
+            host.getHostName().toLowerCase() + ":" + port;
+  }
+
+  /** Build a request ready to be executed. Relative urls are resolved
+   * against the base URI and any credentials, headers and content are set.
+   *
+   * <p>This does not touch the current method or response so it may be used
+   * to execute requests independently of the sendRequest methods.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @param contentType may be null
+   * @param content may be null
+   * @param params may be null
+   * @return the request
+   * @throws Throwable
+   */
+  protected HttpRequestBase makeRequest(final String methodName,
+                                        final String url,
+                                        final List<Header> hdrs,
+                                        final String contentType,
+                                        final byte[] content,
+                                        final HttpParams params) throws Throwable {
+    return makeRequest(methodName, url, hdrs,
+                       byteEntity(content, contentType), params);
+  }
+
+  /** Build a request ready to be executed with content from any entity -
+   * for example a WriterEntity, ByteBufferEntity or fileEntity.
+   *
+   * @param methodName the method, GET, PUT etc
+   * @param url the url
+   * @param hdrs may be null
+   * @param content may be null
+   * @param params may be null
+   * @return the request
+   * @throws Throwable
+   */
+  protected HttpRequestBase makeRequest(final String methodName,
+                                        final String url,
+                                        final List<Header> hdrs,
+                                        final HttpEntity content,
+                                        final HttpParams params) throws Throwable {
+    URI u = new URI(url);
+
+    if (!hostSpecified && (u.getHost() == null)) {
+      if ((baseURI == null) && (baseURIValue != null)) {
+        baseURI = new URI(baseURIValue);
       }
 
-      if (method instanceof HttpEntityEnclosingRequestBase) {
-        if (contentType == null) {
-          contentType = "text/xml";
-        }
+      if (baseURI == null) {
+        throw new HttpException("No base URI specified for non-absolute URI " + url);
+      }
 
-        if (content != null) {
-          setContent(content, contentType);
-        }
+      if (baseURI.getHost() == null) {
+        throw new HttpException("Base URI must be absolute: " + baseURI);
       }
 
-      if (params != null) {
-        method.setParams(params);
+      u = baseURI.resolve(u);
+    }
+
+    if (debug) {
+      debugMsg("      url resolves to " + u);
+    }
+
+    final HttpRequestBase req = findMethod(methodName, u);
+
+    if (credentials != null) {
+      getCredentialsProvider().setCredentials(new AuthScope(u.getHost(),
+                                                            u.getPort()),
+                                              credentials);
+    }
+
+    if (!Util.isEmpty(hdrs)) {
+      for (final Header hdr: hdrs) {
+        req.addHeader(hdr);
       }
+    }
 
-      response = execute(method);
-    } catch (final HttpException he) {
-      throw he;
-    } catch (final Throwable t) {
-      throw new HttpException(t.getLocalizedMessage(), t);
+    if ((content != null) &&
+            (req instanceof HttpEntityEnclosingRequestBase)) {
+      ((HttpEntityEnclosingRequestBase)req).setEntity(content);
     }
-    status = response.getStatusLine().getStatusCode();
 
-    return status;
+    if (params != null) {
+      req.setParams(params);
+    }
+
+    return req;
   }
 
   public InputStream post(final String url,
@@ -562,21 +902,49 @@ public class BasicHttpClient extends DefaultHttpClient {
 
     poster.setEntity(entity);
 
-    try {
-      // Make the request
-      response = execute(poster);
+    // Make the request
+    current = executeRequest(poster);
+
+    return getResponseBodyAsStream();
+  }
 
-      status = response.getStatusLine().getStatusCode();
+  /** A file entity sent chunked so that large files are streamed.
+   *
+   * @param f the file
+   * @param contentType may be null
+   * @return an entity
+   */
+  public static HttpEntity fileEntity(final File f,
+                                      final String contentType) {
+    final FileEntity entity = new FileEntity(f);
 
-      return getResponseBodyAsStream();
-    } catch (final HttpException he) {
-      throw he;
-    } catch (final Throwable t) {
-      throw new HttpException(t.getLocalizedMessage(), t);
+    if (contentType != null) {
+      entity.setContentType(contentType);
+    }
+    entity.setChunked(true);
+
+    return entity;
+  }
+
+  /* The entity for byte array content - content type defaults to text/xml */
+  static HttpEntity byteEntity(final byte[] content,
+                                       final String contentType) {
+    if (content == null) {
+      return null;
+    }
+
+    final ByteArrayEntity entity = new ByteArrayEntity(content);
+
+    if (contentType == null) {
+      entity.setContentType("text/xml");
+    } else {
+      entity.setContentType(contentType);
     }
+
+    return entity;
   }
 
-  /** Send content
+  /** Set the content of the last request sent by sendRequest
    *
    * @param content the content as bytes
    * @param contentType its type
@@ -584,6 +952,12 @@ public class BasicHttpClient extends DefaultHttpClient {
    */
   public void setContent(final byte[] content,
                          final String contentType) throws HttpException {
+    if (current == null) {
+      throw new HttpException("No current method");
+    }
+
+    final HttpRequestBase method = current.getRequest();
+
     if (!(method instanceof HttpEntityEnclosingRequestBase)) {
       throw new HttpException("Invalid operation for method " +
                                method.getMethod());
@@ -716,6 +1090,56 @@ public class BasicHttpClient extends DefaultHttpClient {
     }
   }
 
+  /* The host a request goes to - the default host for relative urls */
+  HttpHost getTarget(final HttpRequestBase req) {
+    final HttpHost target = URIUtils.extractHost(req.getURI());
+
+    if (target != null) {
+      return target;
+    }
+
+    return (HttpHost)getParams().getParameter(ClientPNames.DEFAULT_HOST);
+  }
+
+  /* For the response cache which keys on who is asking */
+  Credentials getCredentials() {
+    return credentials;
+  }
+
+  private void recordRequest(final HttpRequestBase req,
+                             final HttpResponse resp,
+                             final long millis) {
+    try {
+      final HttpHost target = getTarget(req);
+
+      long out = -1;
+      if (req instanceof HttpEntityEnclosingRequestBase) {
+        final HttpEntity ent = ((HttpEntityEnclosingRequestBase)req).getEntity();
+        if (ent != null) {
+          out = ent.getContentLength();
+        }
+      }
+
+      int status = -1;
+      long in = -1;
+      if (resp != null) {
+        status = resp.getStatusLine().getStatusCode();
+
+        final HttpEntity ent = resp.getEntity();
+        if (ent != null) {
+          in = ent.getContentLength();
+        }
+      }
+
+      HttpOutStats.request(routeKey(target), req.getMethod(),
+                           status, millis, out, in);
+    } catch (final Throwable t) {
+      if (debug) {
+        error(t);
+      }
+    }
+  }
+
   /** Specify the next method by name.
    *
    * @param name of the method
@@ -854,13 +1278,21 @@ public class BasicHttpClient extends DefaultHttpClient {
                        final List<Header> hdrs,
                        final Object o,
                        final String contentType) throws HttpException {
-    String content = String.valueOf(o);
+    /* Encode using the charset from the content type - defaulting to
+       UTF-8 rather than the platform charset */
+    String ctype = contentType;
+    if (ctype == null) {
+      ctype = "text/xml";
+    }
+
+    final Charset cs = WriterEntity.charsetFor(ctype);
+
     int respCode = sendRequest("PUT",
                                path,
-                               null,
-                               contentType,
-                               content.length(),
-                               content.getBytes());    //content
+                               hdrs,
+                               byteEntity(String.valueOf(o).getBytes(cs),
+                                          WriterEntity.withCharset(ctype,
+                                                                   cs)));
 
     if (debug) {
       debugMsg("response code " + respCode);
@@ -874,29 +1306,22 @@ public class BasicHttpClient extends DefaultHttpClient {
    * @throws HttpException
    */
   public String getResponseContentType() throws HttpException {
-    HttpEntity ent = getResponseEntity();
-
-    if (ent == null) {
+    if (current == null) {
       return null;
     }
 
-    Header hdr = ent.getContentType();
-    if (hdr == null) {
-      return null;
-    }
-
-    return hdr.getValue();
+    return current.getContentType();
   }
 
   /**
    * @return the response entity or null
    */
   public HttpEntity getResponseEntity() {
-    if (response == null) {
+    if (current == null) {
       return null;
     }
 
-    return response.getEntity();
+    return current.getEntity();
   }
 
   /**
@@ -904,13 +1329,11 @@ public class BasicHttpClient extends DefaultHttpClient {
    * @throws HttpException
    */
   public long getResponseContentLength() throws HttpException {
-    HttpEntity ent = getResponseEntity();
-
-    if (ent == null) {
+    if (current == null) {
       return 0;
     }
 
-    return ent.getContentLength();
+    return current.getContentLength();
   }
 
   /**
@@ -918,13 +1341,11 @@ public class BasicHttpClient extends DefaultHttpClient {
    * @throws HttpException
    */
   public String getResponseCharSet() throws HttpException {
-    HttpEntity ent = getResponseEntity();
-
-    if (ent == null) {
+    if (current == null) {
       return null;
     }
 
-    return EntityUtils.getContentCharSet(ent);
+    return current.getCharSet();
   }
 
   /**
@@ -932,11 +1353,11 @@ public class BasicHttpClient extends DefaultHttpClient {
    * @throws HttpException
    */
   public StatusLine getResponseStatusLine() throws HttpException {
-    if (response == null) {
+    if (current == null) {
       return null;
     }
 
-    return response.getStatusLine();
+    return current.getStatusLine();
   }
 
   /**
@@ -947,17 +1368,11 @@ public class BasicHttpClient extends DefaultHttpClient {
    * @throws HttpException
    */
   public InputStream getResponseBodyAsStream() throws HttpException {
-    try {
-      HttpEntity ent = getResponseEntity();
-
-      if (ent == null) {
-        return null;
-      }
-
-      return ent.getContent();
-    } catch (Throwable t) {
-      throw new HttpException(t.getLocalizedMessage(), t);
+    if (current == null) {
+      return null;
     }
+
+    return current.getBodyAsStream();
   }
 
   /**
@@ -965,11 +1380,11 @@ public class BasicHttpClient extends DefaultHttpClient {
    * @throws HttpException
    */
   public Header[] getHeaders() throws HttpException {
-    if (response == null) {
+    if (current == null) {
       return null;
     }
 
-    return response.getAllHeaders();
+    return current.getHeaders();
   }
 
   /**
@@ -978,11 +1393,11 @@ public class BasicHttpClient extends DefaultHttpClient {
    * @throws HttpException
    */
   public Header getFirstHeader(final String name) throws HttpException {
-    if (response == null) {
+    if (current == null) {
       return null;
     }
 
-    return response.getFirstHeader(name);
+    return current.getFirstHeader(name);
   }
 
   /**
@@ -1042,15 +1457,8 @@ public class BasicHttpClient extends DefaultHttpClient {
    * @throws HttpException
    */
   public void release() throws HttpException {
-    try {
-      HttpEntity ent = getResponseEntity();
-
-      if (ent != null) {
-        InputStream is = ent.getContent();
-        is.close();
-      }
-    } catch (Throwable t) {
-      throw new HttpException(t.getLocalizedMessage(), t);
+    if (current != null) {
+      current.release();
     }
   }
 
@@ -0,0 +1,37 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http;
+
+/** Consume the body of a response as it arrives. Implementations should
+ * read from the handle's stream rather than buffer the whole entity.
+ *
+ * <p>The caller releases the handle once consume returns or fails.
+ *
+ * @author Mike Douglass
+ *
+ * @param <T> type of result
+ */
+public interface BodyConsumer<T> {
+  /**
+   * @param resp the response
+   * @return the result of consuming the body
+   * @throws Throwable on error
+   */
+  T consume(ResponseHandle resp) throws Throwable;
+}
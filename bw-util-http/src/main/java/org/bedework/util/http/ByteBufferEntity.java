@@ -0,0 +1,130 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/** A request entity backed by the remaining content of a ByteBuffer -
+ * heap or direct. The buffer itself is never modified so the entity is
+ * repeatable.
+ *
+ * @author Mike Douglass
+ */
+public class ByteBufferEntity extends AbstractHttpEntity {
+  private static final int copySize = 8192;
+
+  private final ByteBuffer content;
+
+  /**
+   * @param content the content - from position to limit
+   * @param contentType may be null
+   * @param chunked true to send chunked rather than with a length
+   */
+  public ByteBufferEntity(final ByteBuffer content,
+                          final String contentType,
+                          final boolean chunked) {
+    if (content == null) {
+      throw new IllegalArgumentException("Content may not be null");
+    }
+
+    this.content = content.duplicate();
+
+    if (contentType != null) {
+      setContentType(contentType);
+    }
+    setChunked(chunked);
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return content.remaining();
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    final ByteBuffer buf = content.duplicate();
+
+    return new InputStream() {
+      @Override
+      public int read() {
+        if (!buf.hasRemaining()) {
+          return -1;
+        }
+
+        return buf.get() & 0xff;
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) {
+        if (!buf.hasRemaining()) {
+          return -1;
+        }
+
+        final int n = Math.min(len, buf.remaining());
+        buf.get(b, off, n);
+
+        return n;
+      }
+
+      @Override
+      public int available() {
+        return buf.remaining();
+      }
+    };
+  }
+
+  @Override
+  public void writeTo(final OutputStream out) throws IOException {
+    if (out == null) {
+      throw new IllegalArgumentException("Output stream may not be null");
+    }
+
+    final ByteBuffer buf = content.duplicate();
+
+    if (buf.hasArray()) {
+      out.write(buf.array(), buf.arrayOffset() + buf.position(),
+                buf.remaining());
+    } else {
+      final byte[] b = new byte[Math.min(copySize, buf.remaining())];
+
+      while (buf.hasRemaining()) {
+        final int n = Math.min(b.length, buf.remaining());
+        buf.get(b, 0, n);
+        out.write(b, 0, n);
+      }
+    }
+
+    out.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
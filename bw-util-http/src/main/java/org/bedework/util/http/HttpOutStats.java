@@ -0,0 +1,362 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Per route statistics for outbound requests made by BasicHttpClient.
+ *
+ * <p>The number of routes tracked is bounded - once the limit is reached
+ * requests to new routes are counted under the single route "other".
+ *
+ * <p>A listener may be registered to receive individual request samples in
+ * batches. Samples are only collected while a listener is set. A batch is
+ * queued for delivery once it is full or once the oldest sample has waited
+ * longer than the maximum delay - the delivery thread checks for that
+ * itself so samples don't wait when traffic stops. Batches are delivered
+ * on that background thread so a slow listener never holds up a request -
+ * if too many batches are waiting new ones are dropped and counted. Call
+ * flush to deliver any remainder on the calling thread.
+ *
+ * @author Mike Douglass
+ */
+public class HttpOutStats {
+  /** Route used once maxRoutes is reached */
+  public static final String otherRoutes = "other";
+
+  private static volatile int maxRoutes = 500;
+
+  private static final ConcurrentMap<String, RouteStats> routes =
+      new ConcurrentHashMap<>();
+
+  /* Shared by all routes past maxRoutes */
+  private static volatile RouteStats other = new RouteStats(otherRoutes);
+
+  /** A single completed request
+   */
+  public static class Sample {
+    /** */
+    public final String route;
+
+    /** */
+    public final String method;
+
+    /** status code or -1 for no response */
+    public final int status;
+
+    /** time to receive the response */
+    public final long millis;
+
+    Sample(final String route,
+           final String method,
+           final int status,
+           final long millis) {
+      this.route = route;
+      this.method = method;
+      this.status = status;
+      this.millis = millis;
+    }
+  }
+
+  /** Receives batches of samples.
+   */
+  public interface Listener {
+    /**
+     * @param batch of samples - never empty
+     */
+    void samples(List<Sample> batch);
+  }
+
+  private static volatile Listener listener;
+
+  private static volatile int batchSize;
+
+  private static volatile long maxDelayMillis;
+
+  private static final Object batchLock = new Object();
+
+  private static List<Sample> batch = new ArrayList<>();
+
+  private static long batchStart;
+
+  /* Batches waiting for the delivery thread */
+  private static final int maxQueuedBatches = 64;
+
+  private static final BlockingQueue<List<Sample>> toDeliver =
+          new ArrayBlockingQueue<>(maxQueuedBatches);
+
+  private static volatile Thread deliverer;
+
+  private static final AtomicLong droppedBatches = new AtomicLong();
+
+  /**
+   * @param val maximum number of routes tracked separately
+   */
+  public static void setMaxRoutes(final int val) {
+    maxRoutes = val;
+  }
+
+  /**
+   * @return maximum number of routes tracked separately
+   */
+  public static int getMaxRoutes() {
+    return maxRoutes;
+  }
+
+  /** Set or remove the listener for samples.
+   *
+   * @param l listener or null to stop collecting samples
+   * @param size maximum batch size
+   * @param delayMillis maximum time a sample waits for delivery
+   */
+  public static void setListener(final Listener l,
+                                 final int size,
+                                 final long delayMillis) {
+    flush();
+
+    if (l != null) {
+      startDeliverer();
+    }
+
+    batchSize = Math.max(1, size);
+    maxDelayMillis = delayMillis;
+    listener = l;
+  }
+
+  /**
+   * @return number of sample batches dropped because delivery fell behind
+   */
+  public static long getDroppedBatches() {
+    return droppedBatches.get();
+  }
+
+  /** Deliver any waiting samples.
+   */
+  public static void flush() {
+    final List<Sample> b;
+
+    synchronized (batchLock) {
+      if (batch.isEmpty()) {
+        return;
+      }
+
+      b = batch;
+      batch = new ArrayList<>();
+    }
+
+    deliver(b);
+  }
+
+  /**
+   * @param route the route key
+   * @return stats for the route - never null
+   */
+  public static RouteStats getRouteStats(final String route) {
+    RouteStats rs = routes.get(route);
+
+    if (rs != null) {
+      return rs;
+    }
+
+    if (otherRoutes.equals(route) || (routes.size() >= maxRoutes)) {
+      final RouteStats o = other;
+
+      if (!routes.containsKey(otherRoutes)) {
+        routes.putIfAbsent(otherRoutes, o);
+      }
+
+      return o;
+    }
+
+    rs = new RouteStats(route);
+    final RouteStats prev = routes.putIfAbsent(route, rs);
+    if (prev != null) {
+      return prev;
+    }
+
+    return rs;
+  }
+
+  /**
+   * @param route the route key
+   * @return stats kept for that route alone or null if it has none
+   */
+  public static RouteStats findRouteStats(final String route) {
+    if (otherRoutes.equals(route)) {
+      return null;
+    }
+
+    return routes.get(route);
+  }
+
+  /**
+   * @return stats for all routes
+   */
+  public static Collection<RouteStats> getAllRouteStats() {
+    return routes.values();
+  }
+
+  /** Discard all statistics.
+   */
+  public static void reset() {
+    other = new RouteStats(otherRoutes);
+    routes.clear();
+  }
+
+  /* ====================================================================
+   *                   Package methods
+   * ==================================================================== */
+
+  static void request(final String route,
+                      final String method,
+                      final int status,
+                      final long millis,
+                      final long out,
+                      final long in) {
+    getRouteStats(route).request(status, millis, out, in);
+
+    if (listener == null) {
+      return;
+    }
+
+    List<Sample> full = null;
+    final long now = System.currentTimeMillis();
+
+    synchronized (batchLock) {
+      if (batch.isEmpty()) {
+        batchStart = now;
+      }
+
+      batch.add(new Sample(route, method, status, millis));
+
+      if ((batch.size() >= batchSize) ||
+              ((now - batchStart) >= maxDelayMillis)) {
+        full = batch;
+        batch = new ArrayList<>();
+      }
+    }
+
+    if (full != null) {
+      queue(full);
+    }
+  }
+
+  static void leased(final String route,
+                     final long millis) {
+    getRouteStats(route).leased(millis);
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private static synchronized void startDeliverer() {
+    if (deliverer != null) {
+      return;
+    }
+
+    deliverer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (;;) {
+          try {
+            final List<Sample> b = toDeliver.poll(untilStale(),
+                                                  TimeUnit.MILLISECONDS);
+
+            if (b != null) {
+              deliver(b);
+            }
+
+            final List<Sample> stale = takeStale();
+
+            if (stale != null) {
+              deliver(stale);
+            }
+          } catch (final InterruptedException ie) {
+            return;
+          }
+        }
+      }
+    }, "bw-httpout-stats");
+
+    deliverer.setDaemon(true);
+    deliverer.start();
+  }
+
+  /* Millisecs until the current batch reaches the maximum delay */
+  private static long untilStale() {
+    final long delay = Math.max(1, maxDelayMillis);
+
+    synchronized (batchLock) {
+      if (batch.isEmpty()) {
+        return delay;
+      }
+
+      return Math.max(1,
+                      batchStart + delay - System.currentTimeMillis());
+    }
+  }
+
+  /* The current batch if it has waited the maximum delay */
+  private static List<Sample> takeStale() {
+    synchronized (batchLock) {
+      if (batch.isEmpty() ||
+              ((System.currentTimeMillis() - batchStart) < maxDelayMillis)) {
+        return null;
+      }
+
+      final List<Sample> b = batch;
+      batch = new ArrayList<>();
+
+      return b;
+    }
+  }
+
+  private static void queue(final List<Sample> b) {
+    if (deliverer == null) {
+      return;
+    }
+
+    if (!toDeliver.offer(b)) {
+      droppedBatches.incrementAndGet();
+    }
+  }
+
+  private static void deliver(final List<Sample> b) {
+    final Listener l = listener;
+
+    if (l == null) {
+      return;
+    }
+
+    try {
+      l.samples(b);
+    } catch (final Throwable ignored) {
+      // Statistics must never break a request
+    }
+  }
+}
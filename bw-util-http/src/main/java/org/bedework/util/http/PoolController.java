@@ -0,0 +1,477 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Adjust the connection pool to the traffic it sees. Called periodically
+ * by the idle connection monitor.
+ *
+ * <p>A route whose requests queued for a connection has its limit
+ * doubled. One whose requests waited too long for a connection has it
+ * raised by a quarter. A route which has used less than a quarter of its
+ * limit for several periods has it lowered by a quarter, but never below
+ * the limit it started with, so the pool only gives back what it added.
+ * Limits stay within the per route bounds and routes given an explicit
+ * limit with BasicHttpClient.setHostLimit are left alone.
+ *
+ * <p>Routes beyond the limit on separately tracked statistics are not
+ * adjusted. A route unused for a long time is returned to its starting
+ * limit and forgotten.
+ *
+ * <p>The idle timeout is halved while most pooled connections sit idle
+ * and doubled while new connections have to be waited for, within the
+ * idle bounds.
+ *
+ * @author Mike Douglass
+ */
+public class PoolController {
+  private transient Logger log;
+
+  private final PoolingClientConnectionManager connMgr;
+
+  private volatile boolean adaptive = true;
+
+  private volatile long intervalMillis = 5000;
+
+  private volatile int minPerRoute;
+
+  private volatile int maxPerRoute = 100;
+
+  /* Average lease wait which counts as starved */
+  private volatile long waitThresholdMillis = 20;
+
+  /* Periods of low use before we shrink */
+  private volatile int idlePeriods = 6;
+
+  /* Periods without use before we forget an unpinned route */
+  private static final int forgetPeriods = 60;
+
+  private volatile int minIdleSeconds = 5;
+
+  private volatile int maxIdleSeconds = 120;
+
+  private volatile int idleSeconds = 30;
+
+  private static final int maxDecisions = 50;
+
+  private final LinkedList<String> decisions = new LinkedList<>();
+
+  private static class RouteState {
+    final HttpRoute route;
+    final String key;
+
+    /* Limit when first seen - we never shrink below it */
+    final int startMax;
+
+    volatile boolean pinned;
+
+    long lastLeases;
+    long lastWaitMillis;
+
+    int lowUsePeriods;
+
+    int unusedPeriods;
+
+    RouteState(final HttpRoute route,
+               final String key,
+               final int startMax) {
+      this.route = route;
+      this.key = key;
+      this.startMax = startMax;
+
+      // Only count from now if we saw this route before and forgot it
+      final RouteStats stats = HttpOutStats.findRouteStats(key);
+
+      if (stats != null) {
+        lastLeases = stats.getLeases();
+        lastWaitMillis = stats.getLeaseWaitMillis();
+      }
+    }
+  }
+
+  private final ConcurrentMap<HttpRoute, RouteState> routes =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param connMgr the manager we control
+   */
+  public PoolController(final PoolingClientConnectionManager connMgr) {
+    this.connMgr = connMgr;
+    minPerRoute = connMgr.getDefaultMaxPerRoute();
+  }
+
+  /**
+   * @param val true to adjust limits and idle timeout
+   */
+  public void setAdaptive(final boolean val) {
+    adaptive = val;
+  }
+
+  /**
+   * @return true if we adjust limits and idle timeout
+   */
+  public boolean getAdaptive() {
+    return adaptive;
+  }
+
+  /**
+   * @param val millisecs between adjustments
+   */
+  public void setIntervalMillis(final long val) {
+    intervalMillis = Math.max(100, val);
+  }
+
+  /**
+   * @return millisecs between adjustments
+   */
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  /** Defaults to the pool's default per route limit. Routes are also
+   * never lowered below the limit they started with.
+   *
+   * @param val lowest limit for a route
+   */
+  public void setMinPerRoute(final int val) {
+    minPerRoute = Math.max(1, val);
+  }
+
+  /**
+   * @return lowest limit for a route
+   */
+  public int getMinPerRoute() {
+    return minPerRoute;
+  }
+
+  /**
+   * @param val highest limit for a route
+   */
+  public void setMaxPerRoute(final int val) {
+    maxPerRoute = val;
+  }
+
+  /**
+   * @return highest limit for a route
+   */
+  public int getMaxPerRoute() {
+    return maxPerRoute;
+  }
+
+  /**
+   * @param val average millisecs waiting for a connection which causes
+   *            a route limit to be raised
+   */
+  public void setWaitThresholdMillis(final long val) {
+    waitThresholdMillis = val;
+  }
+
+  /**
+   * @return average millisecs waiting for a connection which causes
+   *            a route limit to be raised
+   */
+  public long getWaitThresholdMillis() {
+    return waitThresholdMillis;
+  }
+
+  /**
+   * @param min shortest idle timeout in seconds
+   * @param max longest idle timeout in seconds
+   */
+  public void setIdleBounds(final int min,
+                            final int max) {
+    minIdleSeconds = Math.max(1, min);
+    maxIdleSeconds = Math.max(minIdleSeconds, max);
+    idleSeconds = clamp(idleSeconds, minIdleSeconds, maxIdleSeconds);
+  }
+
+  /**
+   * @return shortest idle timeout in seconds
+   */
+  public int getMinIdleSeconds() {
+    return minIdleSeconds;
+  }
+
+  /**
+   * @return longest idle timeout in seconds
+   */
+  public int getMaxIdleSeconds() {
+    return maxIdleSeconds;
+  }
+
+  /**
+   * @return current idle timeout in seconds
+   */
+  public int getIdleSeconds() {
+    return idleSeconds;
+  }
+
+  /** Called for each connection request so we know the active routes.
+   *
+   * @param route the route
+   */
+  void seen(final HttpRoute route) {
+    if (!routes.containsKey(route)) {
+      state(route);
+    }
+  }
+
+  /** Exclude a route from adjustment.
+   *
+   * @param route with an explicit limit
+   */
+  void pin(final HttpRoute route) {
+    for (;;) {
+      final RouteState rs = state(route);
+
+      rs.pinned = true;
+
+      // Unless adjust forgot it at the same moment
+      if (routes.get(route) == rs) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the current limit and usage for each route seen
+   */
+  public List<String> getCurrentLimits() {
+    final List<String> res = new ArrayList<>();
+
+    for (final RouteState rs: routes.values()) {
+      final PoolStats ps = connMgr.getStats(rs.route);
+
+      res.add(rs.key +
+                      " max=" + ps.getMax() +
+                      " leased=" + ps.getLeased() +
+                      " available=" + ps.getAvailable() +
+                      " pending=" + ps.getPending() +
+                      (rs.pinned ? " (fixed)" : ""));
+    }
+
+    Collections.sort(res);
+
+    return res;
+  }
+
+  /**
+   * @return most recent decisions - oldest first
+   */
+  public List<String> getDecisions() {
+    synchronized (decisions) {
+      return new ArrayList<>(decisions);
+    }
+  }
+
+  /** Review the routes and idle timeout.
+   */
+  public void adjust() {
+    if (!adaptive) {
+      return;
+    }
+
+    int waiting = 0;
+
+    for (final RouteState rs: routes.values()) {
+      final PoolStats ps = connMgr.getStats(rs.route);
+
+      if ((ps.getLeased() == 0) && (ps.getPending() == 0) &&
+              (ps.getAvailable() == 0)) {
+        rs.unusedPeriods++;
+
+        if (!rs.pinned && (rs.unusedPeriods >= forgetPeriods)) {
+          if (routes.remove(rs.route, rs) &&
+                  (ps.getMax() > rs.startMax)) {
+            setLimit(rs, ps.getMax(), rs.startMax, "unused");
+          }
+          continue;
+        }
+      } else {
+        rs.unusedPeriods = 0;
+      }
+
+      final RouteStats stats = HttpOutStats.findRouteStats(rs.key);
+
+      if (stats == null) {
+        // Counted under "other" - we can't judge it alone
+        continue;
+      }
+
+      final long leases = stats.getLeases();
+      final long waitMillis = stats.getLeaseWaitMillis();
+
+      final long newLeases = leases - rs.lastLeases;
+      final long newWait = waitMillis - rs.lastWaitMillis;
+
+      rs.lastLeases = leases;
+      rs.lastWaitMillis = waitMillis;
+
+      final boolean starved = (ps.getPending() > 0) ||
+              ((newLeases > 0) &&
+                       ((newWait / newLeases) >= waitThresholdMillis));
+
+      if (starved) {
+        waiting++;
+      }
+
+      if (rs.pinned) {
+        continue;
+      }
+
+      final int max = ps.getMax();
+
+      final int floor = Math.max(minPerRoute, rs.startMax);
+
+      if (starved) {
+        rs.lowUsePeriods = 0;
+
+        /* Queued requests mean a burst - catch up quickly */
+        final int step;
+
+        if (ps.getPending() > 0) {
+          step = Math.max(max, ps.getPending());
+        } else {
+          step = Math.max(1, max / 4);
+        }
+
+        final int newMax = clamp(max + step, floor, maxPerRoute);
+
+        if (newMax != max) {
+          setLimit(rs, max, newMax, "lease wait " +
+                  ((newLeases == 0) ? 0 : newWait / newLeases) +
+                  "ms, pending " + ps.getPending());
+        }
+
+        continue;
+      }
+
+      if ((ps.getLeased() * 4) < max) {
+        rs.lowUsePeriods++;
+      } else {
+        rs.lowUsePeriods = 0;
+      }
+
+      if (rs.lowUsePeriods >= idlePeriods) {
+        rs.lowUsePeriods = 0;
+
+        final int newMax = clamp(max - Math.max(1, max / 4),
+                                 floor, maxPerRoute);
+
+        if (newMax != max) {
+          setLimit(rs, max, newMax, "low use, leased " + ps.getLeased());
+        }
+      }
+    }
+
+    adjustIdle(waiting);
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private RouteState state(final HttpRoute route) {
+    final RouteState rs = routes.get(route);
+
+    if (rs != null) {
+      return rs;
+    }
+
+    final RouteState newRs =
+            new RouteState(route,
+                           BasicHttpClient.routeKey(route.getTargetHost()),
+                           connMgr.getMaxPerRoute(route));
+    final RouteState prev = routes.putIfAbsent(route, newRs);
+
+    if (prev != null) {
+      return prev;
+    }
+
+    return newRs;
+  }
+
+  private void adjustIdle(final int waiting) {
+    final PoolStats total = connMgr.getTotalStats();
+    final int cur = idleSeconds;
+    int newIdle = cur;
+
+    if (waiting > 0) {
+      newIdle = clamp(cur * 2, minIdleSeconds, maxIdleSeconds);
+    } else if (total.getAvailable() > (total.getLeased() * 2)) {
+      newIdle = clamp(cur / 2, minIdleSeconds, maxIdleSeconds);
+    }
+
+    if (newIdle != cur) {
+      idleSeconds = newIdle;
+      decision("idle timeout " + cur + "s -> " + newIdle + "s (leased " +
+                       total.getLeased() + ", available " +
+                       total.getAvailable() + ")");
+    }
+  }
+
+  private void setLimit(final RouteState rs,
+                        final int oldMax,
+                        final int newMax,
+                        final String reason) {
+    connMgr.setMaxPerRoute(rs.route, newMax);
+    decision(rs.key + " limit " + oldMax + " -> " + newMax +
+                     " (" + reason + ")");
+  }
+
+  private void decision(final String msg) {
+    if (getLogger().isDebugEnabled()) {
+      getLogger().debug(msg);
+    }
+
+    synchronized (decisions) {
+      decisions.add(new Date() + ": " + msg);
+
+      if (decisions.size() > maxDecisions) {
+        decisions.removeFirst();
+      }
+    }
+  }
+
+  private static int clamp(final int val,
+                           final int min,
+                           final int max) {
+    return Math.max(min, Math.min(max, val));
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+}
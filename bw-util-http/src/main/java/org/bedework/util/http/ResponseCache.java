@@ -0,0 +1,887 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http;
+
+import org.bedework.util.misc.Util;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** An opt-in cache for GET responses, enabled for a client with
+ * BasicHttpClient.setResponseCache. A cache may be shared by many clients.
+ *
+ * <p>Entries are keyed on the absolute url and the client's credentials,
+ * so clients talking to different hosts or as different users never see
+ * each other's responses. Requests carrying their own Authorization header
+ * bypass the cache.
+ *
+ * <p>Only 200 responses without a Vary header are stored. Cache-Control
+ * no-store, max-age and no-cache are honoured as are Expires and,
+ * heuristically, Last-Modified. Stale entries with an ETag or Last-Modified
+ * are revalidated with If-None-Match or If-Modified-Since and a 304 is
+ * turned back into the cached 200. Requests which already carry
+ * conditional headers bypass the cache, so callers which manage their own
+ * etags are unaffected. Any other method invalidates the entries for its
+ * url.
+ *
+ * <p>Bodies are held in a memory tier bounded by total size. If a
+ * directory is given, entries evicted from memory move to an on-disk tier,
+ * also bounded by total size. The disk tier is not persistent: its index
+ * lives in memory and its files are removed as entries are evicted.
+ *
+ * @author Mike Douglass
+ */
+public class ResponseCache {
+  private transient Logger log;
+
+  private static final Map<String, ResponseCache> caches =
+      new ConcurrentHashMap<>();
+
+  /* Heuristic freshness is this fraction of the time since modification */
+  private static final long heuristicDivisor = 10;
+
+  private static final long maxHeuristicMillis = 24 * 60 * 60 * 1000;
+
+  private final String name;
+
+  private final long maxMemoryBytes;
+
+  private final long maxEntryBytes;
+
+  private final File diskDir;
+
+  private final long maxDiskBytes;
+
+  private long memoryBytes;
+
+  private long diskBytes;
+
+  private final AtomicLong lookups = new AtomicLong();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong revalidated = new AtomicLong();
+
+  private final AtomicLong stored = new AtomicLong();
+
+  private final AtomicLong bytesSaved = new AtomicLong();
+
+  private static class Entry {
+    final String key;
+    final String url;
+    final int status;
+    final String reason;
+    Header[] headers;
+    final int length;
+
+    byte[] body;
+    File file;
+
+    String etag;
+    String lastModified;
+
+    /* Millis after which we must revalidate */
+    long expires;
+
+    Entry(final String key,
+          final String url,
+          final HttpResponse resp,
+          final byte[] body) {
+      this.key = key;
+      this.url = url;
+      status = resp.getStatusLine().getStatusCode();
+      reason = resp.getStatusLine().getReasonPhrase();
+      this.body = body;
+      length = body.length;
+
+      update(resp.getAllHeaders());
+    }
+
+    void update(final Header[] hdrs) {
+      headers = hdrs;
+      etag = value("ETag");
+      lastModified = value("Last-Modified");
+      expires = freshUntil(this);
+    }
+
+    String value(final String name) {
+      for (final Header h: headers) {
+        if (h.getName().equalsIgnoreCase(name)) {
+          return h.getValue();
+        }
+      }
+
+      return null;
+    }
+
+    boolean canRevalidate() {
+      return (etag != null) || (lastModified != null);
+    }
+  }
+
+  /* Access ordered - both tiers */
+  private final LinkedHashMap<String, Entry> memory =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  private final LinkedHashMap<String, Entry> disk =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /* Evicted from memory and being written to disk without the lock. Still
+     served from their bodies. Removing one here abandons the write. */
+  private final Map<String, Entry> spilling = new HashMap<>();
+
+  /* Keys held for each url - an update through any client invalidates
+     the entries for every user */
+  private final Map<String, Set<String>> urlKeys = new HashMap<>();
+
+  /** A memory only cache.
+   *
+   * @param name identifies the cache in statistics
+   * @param maxMemoryBytes bound on bodies held in memory
+   * @param maxEntryBytes larger responses are not cached
+   */
+  public ResponseCache(final String name,
+                       final long maxMemoryBytes,
+                       final long maxEntryBytes) {
+    this(name, maxMemoryBytes, maxEntryBytes, null, 0);
+  }
+
+  /**
+   * @param name identifies the cache in statistics
+   * @param maxMemoryBytes bound on bodies held in memory
+   * @param maxEntryBytes larger responses are not cached
+   * @param diskDir directory for the disk tier or null for none
+   * @param maxDiskBytes bound on bodies held on disk
+   */
+  public ResponseCache(final String name,
+                       final long maxMemoryBytes,
+                       final long maxEntryBytes,
+                       final File diskDir,
+                       final long maxDiskBytes) {
+    this.name = name;
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.maxEntryBytes = Math.min(maxEntryBytes, Integer.MAX_VALUE);
+    this.diskDir = diskDir;
+    this.maxDiskBytes = maxDiskBytes;
+
+    if ((diskDir != null) && !diskDir.isDirectory() && !diskDir.mkdirs()) {
+      throw new IllegalArgumentException("Unable to create " + diskDir);
+    }
+
+    caches.put(name, this);
+  }
+
+  /**
+   * @return all caches which have not been closed
+   */
+  public static Collection<ResponseCache> getCaches() {
+    return caches.values();
+  }
+
+  /**
+   * @return name of this cache
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return percentage of lookups satisfied without transferring a body
+   */
+  public long getHitRatio() {
+    final long l = lookups.get();
+
+    if (l == 0) {
+      return 0;
+    }
+
+    return ((hits.get() + revalidated.get()) * 100) / l;
+  }
+
+  /**
+   * @return body bytes not transferred thanks to the cache
+   */
+  public long getBytesSaved() {
+    return bytesSaved.get();
+  }
+
+  /**
+   * @return statistics, one per line
+   */
+  public synchronized String getStats() {
+    final StringBuilder sb = new StringBuilder();
+
+    Util.statline(sb, "name", name);
+    Util.statline(sb, "lookups", lookups.get());
+    Util.statline(sb, "hits", hits.get());
+    Util.statline(sb, "revalidated", revalidated.get());
+    Util.statline(sb, "stored", stored.get());
+    Util.statline(sb, "hitRatio", getHitRatio() + "%");
+    Util.statline(sb, "bytesSaved", getBytesSaved());
+    Util.statline(sb, "memoryEntries", memory.size());
+    Util.statline(sb, "memoryBytes", memoryBytes);
+    Util.statline(sb, "diskEntries", disk.size());
+    Util.statline(sb, "diskBytes", diskBytes);
+
+    return sb.toString();
+  }
+
+  /** Drop everything and remove any disk files.
+   */
+  public synchronized void clear() {
+    for (final Entry e: disk.values()) {
+      deleteFile(e);
+    }
+
+    memory.clear();
+    disk.clear();
+    spilling.clear();
+    urlKeys.clear();
+    memoryBytes = 0;
+    diskBytes = 0;
+  }
+
+  /** Clear the cache and stop reporting its statistics.
+   */
+  public void close() {
+    clear();
+    caches.remove(name);
+  }
+
+  /* ====================================================================
+   *                   Package methods
+   * ==================================================================== */
+
+  /** Execute the request through the cache.
+   *
+   * @param cl the client
+   * @param req the request
+   * @return response handle
+   * @throws HttpException
+   */
+  ResponseHandle execute(final BasicHttpClient cl,
+                         final HttpRequestBase req) throws HttpException {
+    final String url = absoluteUrl(cl, req);
+
+    if (url == null) {
+      // Can't tell which server it's for
+      return cl.executeUncached(req);
+    }
+
+    if (!"GET".equals(req.getMethod())) {
+      removeUrl(url);
+      return cl.executeUncached(req);
+    }
+
+    if (req.containsHeader("If-None-Match") ||
+            req.containsHeader("If-Modified-Since") ||
+            req.containsHeader("Range") ||
+            req.containsHeader("Authorization")) {
+      return cl.executeUncached(req);
+    }
+
+    final String key = key(url, cl.getCredentials());
+
+    lookups.incrementAndGet();
+
+    final Entry e = get(key);
+
+    if (e != null) {
+      if (System.currentTimeMillis() < e.expires) {
+        final ResponseHandle cached = fromEntry(req, e);
+
+        if (cached != null) {
+          hits.incrementAndGet();
+          bytesSaved.addAndGet(e.length);
+
+          return cached;
+        }
+      }
+    }
+
+    final ResponseHandle resp;
+
+    if ((e == null) || !e.canRevalidate()) {
+      resp = cl.executeUncached(req);
+    } else {
+      /* The validators only apply to this call - take them off again so
+         the caller can reuse the request.
+       */
+      try {
+        if (e.etag != null) {
+          req.addHeader("If-None-Match", e.etag);
+        }
+
+        if (e.lastModified != null) {
+          req.addHeader("If-Modified-Since", e.lastModified);
+        }
+
+        resp = cl.executeUncached(req);
+      } finally {
+        req.removeHeaders("If-None-Match");
+        req.removeHeaders("If-Modified-Since");
+      }
+
+      if (resp.getStatus() == HttpStatus.SC_NOT_MODIFIED) {
+        resp.close();
+
+        synchronized (this) {
+          e.update(merge(e.headers, resp.getHeaders()));
+        }
+
+        final ResponseHandle cached = fromEntry(req, e);
+
+        if (cached != null) {
+          revalidated.incrementAndGet();
+          bytesSaved.addAndGet(e.length);
+
+          return cached;
+        }
+
+        // Evicted while we were revalidating - fetch it again
+        remove(key);
+
+        return execute(cl, req);
+      }
+    }
+
+    if ((resp.getStatus() != HttpStatus.SC_OK) || !storable(resp)) {
+      if (e != null) {
+        remove(key);
+      }
+
+      return resp;
+    }
+
+    return store(key, url, req, resp);
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private boolean storable(final ResponseHandle resp) {
+    final String cc = resp.getFirstHeaderValue("Cache-Control");
+
+    if ((cc != null) && cc.toLowerCase().contains("no-store")) {
+      return false;
+    }
+
+    /* The request headers aren't part of the key so we can't tell
+       which variant we have */
+    if (resp.getFirstHeader("Vary") != null) {
+      return false;
+    }
+
+    final HttpEntity ent = resp.getEntity();
+
+    return (ent != null) && (ent.getContentLength() <= maxEntryBytes);
+  }
+
+  /* Buffer the body - if it turns out to be too large hand back what
+     we read followed by the rest of the stream.
+   */
+  private ResponseHandle store(final String key,
+                               final String url,
+                               final HttpRequestBase req,
+                               final ResponseHandle resp) throws HttpException {
+    final HttpResponse hresp = resp.getResponse();
+
+    try {
+      final InputStream in = resp.getBodyAsStream();
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buf = new byte[4096];
+
+      for (;;) {
+        final int len = in.read(buf);
+
+        if (len < 0) {
+          break;
+        }
+
+        out.write(buf, 0, len);
+
+        if (out.size() > maxEntryBytes) {
+          // Too big - don't cache
+          final HttpEntity ent = hresp.getEntity();
+          final TailEntity tail = new TailEntity(
+                  new SequenceInputStream(
+                          new ByteArrayInputStream(out.toByteArray()), in),
+                  ent);
+          hresp.setEntity(tail);
+
+          return resp;
+        }
+      }
+
+      in.close();
+
+      final byte[] body = out.toByteArray();
+      final Entry e = new Entry(key, url, hresp, body);
+
+      if ((e.expires > System.currentTimeMillis()) || e.canRevalidate()) {
+        put(e);
+        stored.incrementAndGet();
+      }
+
+      final ByteArrayEntity ent = new ByteArrayEntity(body);
+      ent.setContentType(hresp.getEntity().getContentType());
+      ent.setContentEncoding(hresp.getEntity().getContentEncoding());
+      hresp.setEntity(ent);
+
+      return resp;
+    } catch (final Throwable t) {
+      resp.close();
+      throw new HttpException(t.getLocalizedMessage(), t);
+    }
+  }
+
+  /* An entity for a partially read body */
+  private static class TailEntity extends InputStreamEntity {
+    TailEntity(final InputStream in,
+               final HttpEntity original) {
+      super(in, original.getContentLength());
+      setContentType(original.getContentType());
+      setContentEncoding(original.getContentEncoding());
+    }
+  }
+
+  /* Returns null if the entry has gone from the disk tier. A disk body is
+     opened with the lock held so eviction can't delete it from under us -
+     once open the stream survives the delete.
+   */
+  private ResponseHandle fromEntry(final HttpRequestBase req,
+                                   final Entry e) {
+    final BasicHttpResponse resp =
+            new BasicHttpResponse(HttpVersion.HTTP_1_1, e.status, e.reason);
+    resp.setHeaders(e.headers);
+
+    final HttpEntity ent;
+
+    synchronized (this) {
+      if (e.body != null) {
+        ent = new CachedEntity(new ByteArrayInputStream(e.body), e);
+      } else {
+        try {
+          ent = new CachedEntity(new FileInputStream(e.file), e);
+        } catch (final Throwable t) {
+          return null;
+        }
+      }
+    }
+
+    resp.setEntity(ent);
+
+    return new ResponseHandle(req, resp);
+  }
+
+  private static class CachedEntity extends InputStreamEntity {
+    CachedEntity(final InputStream in,
+                 final Entry e) {
+      super(in, e.length);
+      setContentType(e.value("Content-Type"));
+      setContentEncoding(e.value("Content-Encoding"));
+    }
+  }
+
+  /* Null if we can't tell where the request is going */
+  private static String absoluteUrl(final BasicHttpClient cl,
+                                    final HttpRequestBase req) {
+    final HttpHost target = cl.getTarget(req);
+
+    if (target == null) {
+      return null;
+    }
+
+    final URI u = req.getURI();
+    final StringBuilder sb = new StringBuilder(BasicHttpClient.routeKey(target));
+
+    final String path = u.getRawPath();
+
+    if ((path == null) || (path.length() == 0)) {
+      sb.append("/");
+    } else {
+      sb.append(path);
+    }
+
+    if (u.getRawQuery() != null) {
+      sb.append("?");
+      sb.append(u.getRawQuery());
+    }
+
+    return sb.toString();
+  }
+
+  /* The url followed by a digest of the credentials, if any */
+  private static String key(final String url,
+                            final Credentials creds) throws HttpException {
+    if (creds == null) {
+      return url;
+    }
+
+    final String name;
+
+    if (creds.getUserPrincipal() == null) {
+      name = "";
+    } else {
+      name = creds.getUserPrincipal().getName();
+    }
+
+    try {
+      return url + " " + sha1(name + "\u0000" + creds.getPassword());
+    } catch (final Throwable t) {
+      throw new HttpException(t.getLocalizedMessage(), t);
+    }
+  }
+
+  private static Header[] merge(final Header[] stored,
+                                final Header[] fresh) {
+    final List<Header> res = new ArrayList<>();
+
+    for (final Header h: stored) {
+      boolean replaced = false;
+
+      for (final Header f: fresh) {
+        if (f.getName().equalsIgnoreCase(h.getName())) {
+          replaced = true;
+          break;
+        }
+      }
+
+      if (!replaced) {
+        res.add(h);
+      }
+    }
+
+    for (final Header f: fresh) {
+      res.add(f);
+    }
+
+    return res.toArray(new Header[res.size()]);
+  }
+
+  private static long freshUntil(final Entry e) {
+    final long now = System.currentTimeMillis();
+    final String cc = e.value("Cache-Control");
+
+    if (cc != null) {
+      long maxAge = -1;
+
+      for (final String dir: cc.toLowerCase().split(",")) {
+        final String d = dir.trim();
+
+        if (d.equals("no-cache") || d.equals("must-revalidate")) {
+          return 0;
+        }
+
+        if (d.startsWith("max-age=")) {
+          try {
+            maxAge = Long.parseLong(d.substring(8).trim());
+          } catch (final NumberFormatException ignored) {
+          }
+        }
+      }
+
+      if (maxAge >= 0) {
+        return now + maxAge * 1000;
+      }
+    }
+
+    final Date expires = parseDate(e.value("Expires"));
+
+    if (expires != null) {
+      return expires.getTime();
+    }
+
+    final Date lastMod = parseDate(e.lastModified);
+
+    if (lastMod != null) {
+      final long age = Math.max(0, now - lastMod.getTime());
+
+      return now + Math.min(age / heuristicDivisor, maxHeuristicMillis);
+    }
+
+    return 0;
+  }
+
+  private static Date parseDate(final String val) {
+    if (val == null) {
+      return null;
+    }
+
+    try {
+      return DateUtils.parseDate(val);
+    } catch (final Throwable t) {
+      return null;
+    }
+  }
+
+  private synchronized Entry get(final String key) {
+    Entry e = memory.get(key);
+
+    if (e != null) {
+      return e;
+    }
+
+    e = spilling.get(key);
+
+    if (e != null) {
+      return e;
+    }
+
+    e = disk.get(key);
+
+    if ((e != null) && !e.file.exists()) {
+      disk.remove(key);
+      diskBytes -= e.length;
+      unindex(e);
+      return null;
+    }
+
+    return e;
+  }
+
+  private synchronized void remove(final String key) {
+    Entry e = memory.remove(key);
+
+    if (e != null) {
+      memoryBytes -= e.length;
+      unindex(e);
+    }
+
+    e = disk.remove(key);
+
+    if (e != null) {
+      diskBytes -= e.length;
+      deleteFile(e);
+      unindex(e);
+    }
+
+    e = spilling.remove(key);
+
+    if (e != null) {
+      unindex(e);
+    }
+  }
+
+  private synchronized void removeUrl(final String url) {
+    final Set<String> keys = urlKeys.get(url);
+
+    if (keys == null) {
+      return;
+    }
+
+    for (final String key: new ArrayList<>(keys)) {
+      remove(key);
+    }
+  }
+
+  /* The disk writes for entries evicted from memory are done without the
+     lock so a slow disk doesn't hold up lookups.
+   */
+  private void put(final Entry e) {
+    final List<Entry> evicted = new ArrayList<>();
+
+    synchronized (this) {
+      remove(e.key);
+
+      memory.put(e.key, e);
+      memoryBytes += e.length;
+
+      Set<String> keys = urlKeys.get(e.url);
+
+      if (keys == null) {
+        keys = new HashSet<>();
+        urlKeys.put(e.url, keys);
+      }
+
+      keys.add(e.key);
+
+      final Iterator<Entry> it = memory.values().iterator();
+
+      while ((memoryBytes > maxMemoryBytes) && it.hasNext()) {
+        final Entry old = it.next();
+        it.remove();
+        memoryBytes -= old.length;
+
+        if ((diskDir == null) || (old.length > maxDiskBytes)) {
+          unindex(old);
+          continue;
+        }
+
+        spilling.put(old.key, old);
+        evicted.add(old);
+      }
+    }
+
+    for (final Entry old: evicted) {
+      toDisk(old, writeTemp(old));
+    }
+  }
+
+  /* Called with the lock held when an entry leaves both tiers */
+  private void unindex(final Entry e) {
+    final Set<String> keys = urlKeys.get(e.url);
+
+    if ((keys != null) && keys.remove(e.key) && keys.isEmpty()) {
+      urlKeys.remove(e.url);
+    }
+  }
+
+  /* Called without the lock. Null if the body couldn't be written */
+  private File writeTemp(final Entry e) {
+    File tmp = null;
+
+    try {
+      tmp = File.createTempFile("bdy", ".tmp", diskDir);
+
+      try (FileOutputStream out = new FileOutputStream(tmp)) {
+        out.write(e.body);
+      }
+
+      return tmp;
+    } catch (final Throwable t) {
+      getLogger().warn("Unable to write cache file: " + t.getLocalizedMessage());
+
+      if (tmp != null) {
+        tmp.delete();
+      }
+
+      return null;
+    }
+  }
+
+  /* Move a written entry into the disk tier unless it was removed or
+     replaced while we wrote it. */
+  private synchronized void toDisk(final Entry e,
+                                   final File tmp) {
+    if (spilling.get(e.key) != e) {
+      if (tmp != null) {
+        tmp.delete();
+      }
+
+      return;
+    }
+
+    spilling.remove(e.key);
+
+    try {
+      if (tmp == null) {
+        throw new IOException("not written");
+      }
+
+      final File f = new File(diskDir, fileName(e.key));
+
+      if (!tmp.renameTo(f)) {
+        tmp.delete();
+        throw new IOException("Unable to rename " + tmp + " to " + f);
+      }
+
+      e.file = f;
+      e.body = null;
+    } catch (final Throwable t) {
+      if (tmp != null) {
+        getLogger().warn("Unable to store cache file: " +
+                                 t.getLocalizedMessage());
+      }
+
+      unindex(e);
+      return;
+    }
+
+    disk.put(e.key, e);
+    diskBytes += e.length;
+
+    final Iterator<Entry> it = disk.values().iterator();
+
+    while ((diskBytes > maxDiskBytes) && it.hasNext()) {
+      final Entry old = it.next();
+      it.remove();
+      diskBytes -= old.length;
+      deleteFile(old);
+      unindex(old);
+    }
+  }
+
+  private void deleteFile(final Entry e) {
+    if ((e.file != null) && !e.file.delete() && e.file.exists()) {
+      getLogger().warn("Unable to delete cache file " + e.file);
+    }
+  }
+
+  private static String fileName(final String key) throws Throwable {
+    return sha1(key) + ".bdy";
+  }
+
+  private static String sha1(final String val) throws Throwable {
+    final byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+            val.getBytes("UTF-8"));
+    final StringBuilder sb = new StringBuilder(digest.length * 2);
+
+    for (final byte b: digest) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+      sb.append(Character.forDigit(b & 0xf, 16));
+    }
+
+    return sb.toString();
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+}
@@ -0,0 +1,230 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.InputStream;
+
+/** The result of executing a single request. The handle owns the response
+ * entity and the pooled connection behind it - callers must call release
+ * (or close) once they are done with the body.
+ *
+ * <p>A handle is never reused, so unlike the stateful methods of
+ * BasicHttpClient it may be handed between threads.
+ *
+ * @author Mike Douglass
+ */
+public class ResponseHandle implements Closeable {
+  private final HttpRequestBase request;
+
+  private final HttpResponse response;
+
+  private final int status;
+
+  private volatile boolean released;
+
+  ResponseHandle(final HttpRequestBase request,
+                 final HttpResponse response) {
+    this.request = request;
+    this.response = response;
+    status = response.getStatusLine().getStatusCode();
+  }
+
+  /**
+   * @return the request which produced this response
+   */
+  public HttpRequestBase getRequest() {
+    return request;
+  }
+
+  /* For the cache which may replace the entity */
+  HttpResponse getResponse() {
+    return response;
+  }
+
+  /**
+   * @return the status code
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  /**
+   * @return response status line
+   */
+  public StatusLine getStatusLine() {
+    return response.getStatusLine();
+  }
+
+  /**
+   * @return headers - never null
+   */
+  public Header[] getHeaders() {
+    return response.getAllHeaders();
+  }
+
+  /**
+   * @param name of header
+   * @return header or null
+   */
+  public Header getFirstHeader(final String name) {
+    return response.getFirstHeader(name);
+  }
+
+  /**
+   * @param name of header
+   * @return value of header or null
+   */
+  public String getFirstHeaderValue(final String name) {
+    final Header h = getFirstHeader(name);
+
+    if (h == null) {
+      return null;
+    }
+
+    return h.getValue();
+  }
+
+  /**
+   * @return the response entity or null
+   */
+  public HttpEntity getEntity() {
+    return response.getEntity();
+  }
+
+  /**
+   * @return String content type or null
+   */
+  public String getContentType() {
+    final HttpEntity ent = getEntity();
+
+    if (ent == null) {
+      return null;
+    }
+
+    final Header hdr = ent.getContentType();
+    if (hdr == null) {
+      return null;
+    }
+
+    return hdr.getValue();
+  }
+
+  /**
+   * @return long content length - negative if unknown
+   */
+  public long getContentLength() {
+    final HttpEntity ent = getEntity();
+
+    if (ent == null) {
+      return 0;
+    }
+
+    return ent.getContentLength();
+  }
+
+  /**
+   * @return String response character set or null
+   */
+  public String getCharSet() {
+    final HttpEntity ent = getEntity();
+
+    if (ent == null) {
+      return null;
+    }
+
+    return EntityUtils.getContentCharSet(ent);
+  }
+
+  /** The body may only be read once.
+   *
+   * @return InputStream response body or null
+   * @throws HttpException
+   */
+  public InputStream getBodyAsStream() throws HttpException {
+    try {
+      final HttpEntity ent = getEntity();
+
+      if (ent == null) {
+        return null;
+      }
+
+      return ent.getContent();
+    } catch (final Throwable t) {
+      throw new HttpException(t.getLocalizedMessage(), t);
+    }
+  }
+
+  /**
+   * @return true if release or abort has been called
+   */
+  public boolean isReleased() {
+    return released;
+  }
+
+  /** Release the connection. Any unread content is consumed so that the
+   * connection can go back to the pool. Calling this more than once is
+   * harmless.
+   *
+   * @throws HttpException
+   */
+  public void release() throws HttpException {
+    if (released) {
+      return;
+    }
+
+    released = true;
+
+    try {
+      final HttpEntity ent = getEntity();
+
+      if (ent != null) {
+        final InputStream is = ent.getContent();
+        is.close();
+      }
+    } catch (final Throwable t) {
+      throw new HttpException(t.getLocalizedMessage(), t);
+    }
+  }
+
+  /** Abandon the response. The connection is shut down rather than
+   * returned to the pool - use when the remaining body is large and
+   * of no interest.
+   */
+  public void abort() {
+    released = true;
+    request.abort();
+  }
+
+  @Override
+  public void close() {
+    try {
+      release();
+    } catch (final Throwable ignored) {
+    }
+  }
+}
@@ -0,0 +1,293 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http;
+
+import org.bedework.util.misc.Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Statistics for outbound requests to a single route - that is
+ * scheme, host and port. All updates are lock free.
+ *
+ * <p>Byte counts are taken from the Content-Length of the request and
+ * response entities so streamed content of unknown length is not counted.
+ *
+ * @author Mike Douglass
+ */
+public class RouteStats {
+  /** Upper bounds in millisecs of the latency histogram buckets. There is
+   * a final bucket for anything slower.
+   */
+  public static final long[] latencyBounds = {
+    1, 2, 5, 10, 20, 50, 100, 200, 500,
+    1000, 2000, 5000, 10000, 30000
+  };
+
+  private final String route;
+
+  private final AtomicLong requests = new AtomicLong();
+
+  private final AtomicLong failures = new AtomicLong();
+
+  private final AtomicLong totalMillis = new AtomicLong();
+
+  private final AtomicLong maxMillis = new AtomicLong();
+
+  private final AtomicLongArray latency =
+      new AtomicLongArray(latencyBounds.length + 1);
+
+  private final AtomicLong leases = new AtomicLong();
+
+  private final AtomicLong leaseWaitMillis = new AtomicLong();
+
+  private final AtomicLong maxLeaseWaitMillis = new AtomicLong();
+
+  private final AtomicLong bytesOut = new AtomicLong();
+
+  private final AtomicLong bytesIn = new AtomicLong();
+
+  /* Indexed by status code - 100 */
+  private final AtomicLongArray statusCodes = new AtomicLongArray(500);
+
+  /**
+   * @param route the key for this route
+   */
+  public RouteStats(final String route) {
+    this.route = route;
+  }
+
+  /**
+   * @return the route
+   */
+  public String getRoute() {
+    return route;
+  }
+
+  /** Record a completed request.
+   *
+   * @param status the status code or -1 if the request failed
+   * @param millis time to receive the response
+   * @param out bytes sent or negative if unknown
+   * @param in bytes received or negative if unknown
+   */
+  public void request(final int status,
+                      final long millis,
+                      final long out,
+                      final long in) {
+    requests.incrementAndGet();
+
+    if ((status >= 100) && (status < 600)) {
+      statusCodes.incrementAndGet(status - 100);
+    } else {
+      failures.incrementAndGet();
+    }
+
+    totalMillis.addAndGet(millis);
+    setMax(maxMillis, millis);
+    latency.incrementAndGet(bucket(millis));
+
+    if (out > 0) {
+      bytesOut.addAndGet(out);
+    }
+
+    if (in > 0) {
+      bytesIn.addAndGet(in);
+    }
+  }
+
+  /** Record the time spent waiting for a pooled connection.
+   *
+   * @param millis time waiting
+   */
+  public void leased(final long millis) {
+    leases.incrementAndGet();
+    leaseWaitMillis.addAndGet(millis);
+    setMax(maxLeaseWaitMillis, millis);
+  }
+
+  /**
+   * @return number of requests
+   */
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * @return number of requests which got no response
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * @return average millisecs to receive a response
+   */
+  public long getAverageMillis() {
+    final long ct = requests.get();
+    if (ct == 0) {
+      return 0;
+    }
+
+    return totalMillis.get() / ct;
+  }
+
+  /**
+   * @return maximum millisecs to receive a response
+   */
+  public long getMaxMillis() {
+    return maxMillis.get();
+  }
+
+  /**
+   * @return number of connections leased
+   */
+  public long getLeases() {
+    return leases.get();
+  }
+
+  /**
+   * @return total millisecs spent waiting for connections
+   */
+  public long getLeaseWaitMillis() {
+    return leaseWaitMillis.get();
+  }
+
+  /**
+   * @return bytes sent
+   */
+  public long getBytesOut() {
+    return bytesOut.get();
+  }
+
+  /**
+   * @return bytes received
+   */
+  public long getBytesIn() {
+    return bytesIn.get();
+  }
+
+  /**
+   * @param status a status code
+   * @return number of responses with that status
+   */
+  public long getStatusCount(final int status) {
+    if ((status < 100) || (status >= 600)) {
+      return 0;
+    }
+
+    return statusCodes.get(status - 100);
+  }
+
+  /**
+   * @return one line summary
+   */
+  public String getSummary() {
+    final StringBuilder sb = new StringBuilder(route);
+
+    sb.append(" requests=");
+    sb.append(getRequests());
+    sb.append(" failures=");
+    sb.append(getFailures());
+    sb.append(" avgMillis=");
+    sb.append(getAverageMillis());
+    sb.append(" maxMillis=");
+    sb.append(getMaxMillis());
+    sb.append(" leaseWaitMillis=");
+    sb.append(getLeaseWaitMillis());
+    sb.append(" bytesOut=");
+    sb.append(getBytesOut());
+    sb.append(" bytesIn=");
+    sb.append(getBytesIn());
+
+    for (int i = 1; i <= 5; i++) {
+      long ct = 0;
+
+      for (int j = (i - 1) * 100; j < i * 100; j++) {
+        ct += statusCodes.get(j);
+      }
+
+      if (ct != 0) {
+        sb.append(" ");
+        sb.append(i);
+        sb.append("xx=");
+        sb.append(ct);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * @return full statistics, one per line
+   */
+  public String getStats() {
+    final StringBuilder sb = new StringBuilder();
+
+    Util.statline(sb, "route", route);
+    Util.statline(sb, "requests", getRequests());
+    Util.statline(sb, "failures", getFailures());
+    Util.statline(sb, "avgMillis", getAverageMillis());
+    Util.statline(sb, "maxMillis", getMaxMillis());
+    Util.statline(sb, "leases", leases.get());
+    Util.statline(sb, "leaseWaitMillis", getLeaseWaitMillis());
+    Util.statline(sb, "maxLeaseWaitMillis", maxLeaseWaitMillis.get());
+    Util.statline(sb, "bytesOut", getBytesOut());
+    Util.statline(sb, "bytesIn", getBytesIn());
+
+    for (int i = 0; i < latencyBounds.length; i++) {
+      Util.statline(sb, "latency<=" + latencyBounds[i], latency.get(i));
+    }
+    Util.statline(sb, "latency>" + latencyBounds[latencyBounds.length - 1],
+                  latency.get(latencyBounds.length));
+
+    for (int i = 0; i < statusCodes.length(); i++) {
+      final long ct = statusCodes.get(i);
+      if (ct != 0) {
+        Util.statline(sb, "status-" + (i + 100), ct);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private static int bucket(final long millis) {
+    for (int i = 0; i < latencyBounds.length; i++) {
+      if (millis <= latencyBounds[i]) {
+        return i;
+      }
+    }
+
+    return latencyBounds.length;
+  }
+
+  private static void setMax(final AtomicLong max, final long val) {
+    for (;;) {
+      final long cur = max.get();
+
+      if ((val <= cur) || max.compareAndSet(cur, val)) {
+        return;
+      }
+    }
+  }
+}
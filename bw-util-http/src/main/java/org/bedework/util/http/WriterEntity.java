@@ -0,0 +1,265 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** A request entity whose content is written by a callback directly onto
+ * the connection, e.g. by an XmlEmit, rather than being built as a string
+ * and then copied into a byte array.
+ *
+ * <p>By default the callback is run once into a byte buffer, which is
+ * then sent with a Content-Length and reused if the request is retried.
+ * That still saves the intermediate string. For large content ask for
+ * chunking - nothing is buffered and the callback writes straight onto
+ * the connection, but it may then be invoked again when a request is
+ * retried after an authentication challenge, so it must produce the same
+ * content each time.
+ *
+ * <p>Content which is already a string should just be encoded once into a
+ * ByteArrayEntity labelled with {@link #withCharset(String, Charset)}.
+ * For binary content use the httpcore EntityTemplate with a
+ * ContentProducer.
+ *
+ * @author Mike Douglass
+ */
+public class WriterEntity extends AbstractHttpEntity {
+  /** Write the content.
+   */
+  public interface Producer {
+    /**
+     * @param wtr for the content - need not be flushed or closed
+     * @throws Throwable on error
+     */
+    void write(Writer wtr) throws Throwable;
+  }
+
+  /** Default charset */
+  public static final Charset utf8 = Charset.forName("UTF-8");
+
+  private static final Pattern charsetParam =
+          Pattern.compile("charset\\s*=\\s*(\"[^\"]*\"|[^;\\s]*)",
+                          Pattern.CASE_INSENSITIVE);
+
+  private final Producer producer;
+
+  private final Charset charset;
+
+  /* Rendered on first use when not chunked */
+  private byte[] content;
+
+  /**
+   * @param producer writes the content
+   * @param mimeType e.g. text/xml - the charset is taken from this if
+   *                 present otherwise UTF-8 is used and added. Null for
+   *                 text/plain
+   */
+  public WriterEntity(final Producer producer,
+                      final String mimeType) {
+    this(producer, mimeType, null, false);
+  }
+
+  /**
+   * @param producer writes the content
+   * @param mimeType e.g. text/xml
+   * @param charset for the content - replaces any in the type
+   */
+  public WriterEntity(final Producer producer,
+                      final String mimeType,
+                      final Charset charset) {
+    this(producer, mimeType, charset, false);
+  }
+
+  /**
+   * @param producer writes the content
+   * @param mimeType e.g. text/xml
+   * @param charset for the content - null for the one in the type or
+   *                UTF-8. Replaces any in the type
+   * @param chunked true to stream chunked rather than buffer and send
+   *                with a length
+   */
+  public WriterEntity(final Producer producer,
+                      final String mimeType,
+                      final Charset charset,
+                      final boolean chunked) {
+    this.producer = producer;
+
+    if (charset != null) {
+      this.charset = charset;
+    } else {
+      this.charset = charsetFor(mimeType);
+    }
+
+    setContentType(withCharset(mimeType, this.charset));
+
+    setChunked(chunked);
+  }
+
+  /**
+   * @param mimeType possibly with parameters - may be null
+   * @return the charset named in the type or UTF-8
+   */
+  public static Charset charsetFor(final String mimeType) {
+    final Charset cs = charsetOf(mimeType);
+
+    if (cs == null) {
+      return utf8;
+    }
+
+    return cs;
+  }
+
+  /**
+   * @param mimeType possibly with parameters - null for text/plain
+   * @param charset of the content
+   * @return the type labelled with charset, replacing any other charset
+   */
+  public static String withCharset(final String mimeType,
+                                   final Charset charset) {
+    if (mimeType == null) {
+      return "text/plain; charset=" + charset.name();
+    }
+
+    final Charset typeCharset = charsetOf(mimeType);
+
+    if (typeCharset == null) {
+      return mimeType + "; charset=" + charset.name();
+    }
+
+    if (typeCharset.equals(charset)) {
+      return mimeType;
+    }
+
+    return charsetParam.matcher(mimeType).replaceFirst(
+            "charset=" + Matcher.quoteReplacement(charset.name()));
+  }
+
+  /**
+   * @param mimeType possibly with parameters
+   * @return the charset named in the type or null for none or an
+   *         unparseable type
+   */
+  public static Charset charsetOf(final String mimeType) {
+    if (mimeType == null) {
+      return null;
+    }
+
+    try {
+      return ContentType.parse(mimeType).getCharset();
+    } catch (final Throwable t) {
+      return null;
+    }
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    if (isChunked()) {
+      return -1;
+    }
+
+    try {
+      return render().length;
+    } catch (final IOException ie) {
+      // Send chunked rather than fail here - writeTo will report it
+      return -1;
+    }
+  }
+
+  /** Only for the benefit of code which insists on reading the
+   * content - it is rendered into memory.
+   */
+  @Override
+  public InputStream getContent() throws IOException {
+    if (!isChunked()) {
+      return new ByteArrayInputStream(render());
+    }
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    produce(out);
+
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  @Override
+  public void writeTo(final OutputStream out) throws IOException {
+    if (out == null) {
+      throw new IllegalArgumentException("Output stream may not be null");
+    }
+
+    if (!isChunked()) {
+      out.write(render());
+      return;
+    }
+
+    produce(out);
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private byte[] render() throws IOException {
+    if (content == null) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      produce(out);
+
+      content = out.toByteArray();
+    }
+
+    return content;
+  }
+
+  private void produce(final OutputStream out) throws IOException {
+    final Writer wtr = new OutputStreamWriter(out, charset);
+
+    try {
+      producer.write(wtr);
+    } catch (final IOException ie) {
+      throw ie;
+    } catch (final Throwable t) {
+      throw new IOException(t.getLocalizedMessage(), t);
+    }
+
+    wtr.flush();
+  }
+}
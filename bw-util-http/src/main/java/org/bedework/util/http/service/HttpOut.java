@@ -20,9 +20,16 @@ package org.bedework.util.http.service;
 
 import org.bedework.util.jmx.ConfBase;
 import org.bedework.util.http.BasicHttpClient;
+import org.bedework.util.http.HttpOutStats;
+import org.bedework.util.http.ResponseCache;
+import org.bedework.util.http.RouteStats;
 
 import org.apache.http.pool.PoolStats;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author douglm
  *
@@ -106,6 +113,126 @@ public class HttpOut extends ConfBase<HttpConfigImpl>
     return BasicHttpClient.getConnStats();
   }
 
+  @Override
+  public void setAdaptivePool(final boolean val) {
+    BasicHttpClient.getPoolController().setAdaptive(val);
+  }
+
+  @Override
+  public boolean getAdaptivePool() {
+    return BasicHttpClient.getPoolController().getAdaptive();
+  }
+
+  @Override
+  public void setMinPerRoute(final int val) {
+    BasicHttpClient.getPoolController().setMinPerRoute(val);
+  }
+
+  @Override
+  public int getMinPerRoute() {
+    return BasicHttpClient.getPoolController().getMinPerRoute();
+  }
+
+  @Override
+  public void setMaxPerRoute(final int val) {
+    BasicHttpClient.getPoolController().setMaxPerRoute(val);
+  }
+
+  @Override
+  public int getMaxPerRoute() {
+    return BasicHttpClient.getPoolController().getMaxPerRoute();
+  }
+
+  @Override
+  public int getIdleSeconds() {
+    return BasicHttpClient.getPoolController().getIdleSeconds();
+  }
+
+  @Override
+  public List<String> getCurrentLimits() {
+    return BasicHttpClient.getPoolController().getCurrentLimits();
+  }
+
+  @Override
+  public List<String> getPoolDecisions() {
+    return BasicHttpClient.getPoolController().getDecisions();
+  }
+
+  @Override
+  public List<String> getResponseCaches() {
+    final List<String> res = new ArrayList<>();
+
+    for (final ResponseCache rc: ResponseCache.getCaches()) {
+      res.add(rc.getName() +
+                      " hitRatio=" + rc.getHitRatio() + "%" +
+                      " bytesSaved=" + rc.getBytesSaved());
+    }
+
+    Collections.sort(res);
+
+    return res;
+  }
+
+  @Override
+  public String responseCacheStats(final String name) {
+    for (final ResponseCache rc: ResponseCache.getCaches()) {
+      if (rc.getName().equals(name)) {
+        return rc.getStats();
+      }
+    }
+
+    return "No cache " + name;
+  }
+
+  @Override
+  public void setIdleBounds(final int min, final int max) {
+    BasicHttpClient.getPoolController().setIdleBounds(min, max);
+  }
+
+  @Override
+  public void setMaxRoutes(final int val) {
+    HttpOutStats.setMaxRoutes(val);
+  }
+
+  @Override
+  public int getMaxRoutes() {
+    return HttpOutStats.getMaxRoutes();
+  }
+
+  @Override
+  public List<String> getRouteStats() {
+    final List<String> res = new ArrayList<>();
+
+    for (final RouteStats rs: HttpOutStats.getAllRouteStats()) {
+      res.add(rs.getSummary());
+    }
+
+    Collections.sort(res);
+
+    return res;
+  }
+
+  @Override
+  public long getDroppedSampleBatches() {
+    return HttpOutStats.getDroppedBatches();
+  }
+
+  @Override
+  public String routeStats(final String route) {
+    for (final RouteStats rs: HttpOutStats.getAllRouteStats()) {
+      if (rs.getRoute().equals(route)) {
+        return rs.getStats();
+      }
+    }
+
+    return "No statistics for " + route;
+  }
+
+  @Override
+  public void resetRouteStats() {
+    HttpOutStats.reset();
+  }
+
   /*
   @Override
   public void setHostLimit(final String host, final int max) {
@@ -0,0 +1,112 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.http.service;
+
+import org.bedework.util.http.HttpOutStats;
+import org.bedework.util.jms.NotificationsHandlerFactory;
+import org.bedework.util.jms.events.HttpOutEvent;
+
+import org.apache.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/** Publish request samples as HttpOutEvents. Each batch is summarized
+ * so that one event is posted for each route, method and status.
+ * Install with e.g.
+ * <pre>
+ *   HttpOutStats.setListener(new HttpOutEventPublisher(queue, pr),
+ *                            100, 10000);
+ * </pre>
+ *
+ * <p>Requires bw-util-jms on the classpath.
+ *
+ * @author Mike Douglass
+ */
+public class HttpOutEventPublisher implements HttpOutStats.Listener {
+  private transient Logger log;
+
+  private final String queueName;
+
+  private final Properties pr;
+
+  private static class Summary {
+    final HttpOutStats.Sample first;
+    int count;
+    long millis;
+
+    Summary(final HttpOutStats.Sample first) {
+      this.first = first;
+    }
+  }
+
+  /**
+   * @param queueName our queue
+   * @param pr jms properties
+   */
+  public HttpOutEventPublisher(final String queueName,
+                               final Properties pr) {
+    this.queueName = queueName;
+    this.pr = pr;
+  }
+
+  @Override
+  public void samples(final List<HttpOutStats.Sample> batch) {
+    final Map<String, Summary> sums = new LinkedHashMap<>();
+
+    for (final HttpOutStats.Sample s: batch) {
+      final String key = s.route + " " + s.method + " " + s.status;
+
+      Summary sum = sums.get(key);
+      if (sum == null) {
+        sum = new Summary(s);
+        sums.put(key, sum);
+      }
+
+      sum.count++;
+      sum.millis += s.millis;
+    }
+
+    try {
+      for (final Summary sum: sums.values()) {
+        NotificationsHandlerFactory.post(
+                new HttpOutEvent(HttpOutEvent.syscodeHttpOut,
+                                 sum.first.route,
+                                 sum.first.method,
+                                 sum.first.status,
+                                 sum.count,
+                                 sum.millis),
+                queueName, pr);
+      }
+    } catch (final Throwable t) {
+      getLogger().warn("Unable to publish http statistics: " +
+                               t.getLocalizedMessage());
+    }
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+}
@@ -23,6 +23,8 @@ import org.bedework.util.jmx.MBeanInfo;
 
 import org.apache.http.pool.PoolStats;
 
+import java.util.List;
+
 /** Display usage and set limits for outbound http
  *
  * @author douglm
@@ -37,6 +39,80 @@ public interface HttpOutMBean extends ConfBaseMBean, HttpConfig {
    */
   PoolStats getConnStats();
 
+  /**
+   * @param val true to let the pool adapt to traffic
+   */
+  void setAdaptivePool(boolean val);
+
+  /**
+   * @return true if the pool adapts to traffic
+   */
+  @MBeanInfo("True if route limits and idle timeout adapt to traffic")
+  boolean getAdaptivePool();
+
+  /**
+   * @param val lowest limit the pool will set for a route
+   */
+  void setMinPerRoute(int val);
+
+  /**
+   * @return lowest limit the pool will set for a route
+   */
+  @MBeanInfo("Lowest limit the pool will set for a route")
+  int getMinPerRoute();
+
+  /**
+   * @param val highest limit the pool will set for a route
+   */
+  void setMaxPerRoute(int val);
+
+  /**
+   * @return highest limit the pool will set for a route
+   */
+  @MBeanInfo("Highest limit the pool will set for a route")
+  int getMaxPerRoute();
+
+  /**
+   * @return seconds before idle connections are closed
+   */
+  @MBeanInfo("Seconds before idle connections are closed")
+  int getIdleSeconds();
+
+  /**
+   * @return limit and usage per route
+   */
+  @MBeanInfo("Current limit and usage per route")
+  List<String> getCurrentLimits();
+
+  /**
+   * @return recent pool adjustments
+   */
+  @MBeanInfo("Recent adjustments to the pool")
+  List<String> getPoolDecisions();
+
+  /**
+   * @param val maximum number of routes with separate statistics
+   */
+  void setMaxRoutes(int val);
+
+  /**
+   * @return maximum number of routes with separate statistics
+   */
+  @MBeanInfo("Maximum number of routes with separate statistics")
+  int getMaxRoutes();
+
+  /**
+   * @return one line summary per route
+   */
+  @MBeanInfo("Request statistics per route")
+  List<String> getRouteStats();
+
+  /**
+   * @return sample batches dropped because publishing fell behind
+   */
+  @MBeanInfo("Sample batches dropped because publishing fell behind")
+  long getDroppedSampleBatches();
+
   /* *
    * @param val maximum allowable overall
    * /
@@ -93,6 +169,45 @@ public interface HttpOutMBean extends ConfBaseMBean, HttpConfig {
   public void deleteHost(String host);
   */
 
+  /**
+   * @param route e.g. https://example.org:443
+   * @return full statistics for the route
+   */
+  @MBeanInfo("Full request statistics for a route")
+  String routeStats(@MBeanInfo("route: e.g. https://example.org:443")
+                    String route);
+
+  /**
+   * @return hit ratio and bytes saved for each response cache
+   */
+  @MBeanInfo("Hit ratio and bytes saved for each response cache")
+  List<String> getResponseCaches();
+
+  /**
+   * @param name of the cache
+   * @return full statistics for the cache
+   */
+  @MBeanInfo("Full statistics for a response cache")
+  String responseCacheStats(@MBeanInfo("name: of the cache")
+                            String name);
+
+  /** Set the range for the idle timeout
+   *
+   * @param min shortest idle timeout in seconds
+   * @param max longest idle timeout in seconds
+   */
+  @MBeanInfo("Set the range for the idle connection timeout")
+  void setIdleBounds(@MBeanInfo("min: shortest timeout in seconds")
+                     int min,
+                     @MBeanInfo("max: longest timeout in seconds")
+                     int max);
+
+  /** Discard the per route statistics
+   *
+   */
+  @MBeanInfo("Discard the per route statistics")
+  void resetRouteStats();
+
   /** (Re)load the configuration
    *
    * @return status
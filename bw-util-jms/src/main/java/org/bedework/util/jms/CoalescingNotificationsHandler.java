@@ -0,0 +1,106 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+ */
+package org.bedework.util.jms;
+
+import org.bedework.util.jms.events.SysEvent;
+import org.bedework.util.jms.listeners.SysEventListener;
+import org.bedework.util.misc.Util;
+
+import java.util.Properties;
+
+/** Wraps a handler and coalesces bursts of events before posting them -
+ * see SysEventCoalescer. Enabled by setting
+ * org.bedework.jms.publish.coalesce.millis.
+ *
+ * @author Mike Douglass
+ */
+public class CoalescingNotificationsHandler extends NotificationsHandler
+        implements SysEventCoalescer.Sink {
+  /** Property: coalescing window - default 0, no coalescing */
+  public static final String pnameCoalesceMillis =
+          "org.bedework.jms.publish.coalesce.millis";
+
+  /** Property: maximum keys held in a window - default 10000 */
+  public static final String pnameCoalesceMaxKeys =
+          "org.bedework.jms.publish.coalesce.max.keys";
+
+  private final NotificationsHandler target;
+
+  private final SysEventCoalescer coalescer;
+
+  /**
+   * @param pr jms properties
+   * @return true if the properties enable coalescing
+   */
+  public static boolean enabled(final Properties pr) {
+    return Util.intProperty(pr, pnameCoalesceMillis, 0) > 0;
+  }
+
+  /**
+   * @param target handler which sends the coalesced events
+   * @param pr jms properties
+   */
+  public CoalescingNotificationsHandler(final NotificationsHandler target,
+                                        final Properties pr) {
+    this.target = target;
+
+    coalescer = new SysEventCoalescer(
+            this,
+            Util.intProperty(pr, pnameCoalesceMillis, 0),
+            Util.intProperty(pr, pnameCoalesceMaxKeys, 10000));
+  }
+
+  @Override
+  public void post(final SysEvent ev) throws NotificationException {
+    coalescer.add(ev);
+  }
+
+  @Override
+  public void deliver(final SysEvent ev) throws NotificationException {
+    target.post(ev);
+  }
+
+  @Override
+  public void registerListener(final SysEventListener l,
+                               final boolean persistent)
+          throws NotificationException {
+    target.registerListener(l, persistent);
+  }
+
+  @Override
+  public void removeListener(final SysEventListener l)
+          throws NotificationException {
+    target.removeListener(l);
+  }
+
+  @Override
+  public void close() throws NotificationException {
+    coalescer.close();
+    target.close();
+  }
+
+  @Override
+  public String getStats() {
+    return target.getStats() + coalescer.getStats();
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+}
@@ -0,0 +1,284 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+ */
+package org.bedework.util.jms;
+
+import org.bedework.util.jms.SysEventRingBuffer.WaitStrategy;
+import org.bedework.util.jms.events.SysEvent;
+import org.bedework.util.jms.listeners.SysEventListener;
+import org.bedework.util.misc.Util;
+
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A notifications handler which delivers events to listeners in the
+ * same JVM without a broker. Useful for single node deployments and
+ * tests.
+ *
+ * <p>Posted events go into a lock-free ring buffer (see
+ * SysEventRingBuffer). A single daemon thread takes them in order and
+ * calls action on every registered listener. Events are not serialized
+ * so listeners see the posted objects and should not modify them.
+ *
+ * <p>A post waits for space if the ring is full. A listener posting from
+ * the delivery thread can't wait, as only that thread frees space, so
+ * its post fails if the ring is full. Nothing is persisted -
+ * the persistent flag on registration is ignored and undelivered events
+ * are lost if the JVM stops.
+ *
+ * <p>Selected in NotificationsHandlerFactory by setting
+ * org.bedework.jms.handler to inmemory.
+ *
+ * @author Mike Douglass
+ */
+public class InMemoryNotificationsHandler extends NotificationsHandler {
+  private transient Logger log;
+
+  /** Property: ring size, rounded up to a power of 2 - default 8192 */
+  public static final String pnameRingSize =
+          "org.bedework.jms.inmemory.size";
+
+  /** Property: a WaitStrategy name for the delivery thread - default
+   * sleeping */
+  public static final String pnameWaitStrategy =
+          "org.bedework.jms.inmemory.wait";
+
+  private static final long closeWaitMillis = 10000;
+
+  private final boolean debug;
+
+  private final SysEventRingBuffer ring;
+
+  private final List<SysEventListener> listeners =
+          new CopyOnWriteArrayList<>();
+
+  private final Dispatcher dispatcher;
+
+  private volatile boolean closed;
+
+  /* stats */
+  private final AtomicLong posted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private volatile long delivered;
+  private volatile long failed;
+  private volatile long totalDeliveryNanos;
+  private volatile long maxDeliveryNanos;
+
+  private class Dispatcher extends Thread {
+    Dispatcher() {
+      super("bw-events-dispatch");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      long seq = 0;
+
+      while (true) {
+        try {
+          final SysEvent ev = ring.take(seq, 100);
+
+          if (ev == null) {
+            if (closed && (seq >= ring.getClaimed())) {
+              return;
+            }
+
+            continue;
+          }
+
+          seq++;
+          deliver(ev);
+        } catch (final InterruptedException ie) {
+          return;
+        } catch (final Throwable t) {
+          error(t);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param pr jms properties
+   */
+  public InMemoryNotificationsHandler(final Properties pr) {
+    debug = getLogger().isDebugEnabled();
+
+    ring = new SysEventRingBuffer(
+            Util.intProperty(pr, pnameRingSize, 8192),
+            WaitStrategy.valueOf(pr.getProperty(pnameWaitStrategy,
+                                                WaitStrategy.sleeping.name())));
+
+    dispatcher = new Dispatcher();
+    dispatcher.start();
+  }
+
+  @Override
+  public void post(final SysEvent ev) throws NotificationException {
+    if (debug) {
+      trace(ev.toString());
+    }
+
+    if (closed) {
+      throw new NotificationException("Notifications handler is closed");
+    }
+
+    if (Thread.currentThread() == dispatcher) {
+      // Waiting here would deadlock
+      if (!ring.tryPublish(ev)) {
+        rejected.incrementAndGet();
+        throw new NotificationException(
+                "Notifications ring is full - can't wait from a listener");
+      }
+    } else if (!ring.publish(ev)) {
+      throw new NotificationException("Notifications handler is closed");
+    }
+
+    posted.incrementAndGet();
+  }
+
+  /** The listener is called on the delivery thread for every event
+   * posted after this.
+   *
+   * @param l the listener
+   * @param persistent ignored
+   * @throws NotificationException
+   */
+  @Override
+  public void registerListener(final SysEventListener l,
+                               final boolean persistent)
+          throws NotificationException {
+    listeners.add(l);
+  }
+
+  @Override
+  public void removeListener(final SysEventListener l)
+          throws NotificationException {
+    listeners.remove(l);
+  }
+
+  /** Waits for events already posted to be delivered.
+   *
+   * @throws NotificationException
+   */
+  @Override
+  public void close() throws NotificationException {
+    closed = true;
+
+    try {
+      dispatcher.join(closeWaitMillis);
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (dispatcher.isAlive()) {
+      warn("Events still undelivered after " + closeWaitMillis +
+                   " millis: " + ring.getBacklog());
+      dispatcher.interrupt();
+    }
+
+    ring.stop();
+  }
+
+  @Override
+  public String getStats() {
+    final StringBuilder sb = new StringBuilder();
+
+    final long d = delivered;
+
+    Util.statline(sb, "ringSize", ring.getSize());
+    Util.statline(sb, "waitStrategy", ring.getWaitStrategy());
+    Util.statline(sb, "listeners", listeners.size());
+    Util.statline(sb, "posted", posted.get());
+    Util.statline(sb, "delivered", d);
+    Util.statline(sb, "failed", failed);
+    Util.statline(sb, "rejected", rejected.get());
+    Util.statline(sb, "backlog", ring.getBacklog());
+    Util.statline(sb, "producerWaits", ring.getProducerWaits());
+
+    if (d > 0) {
+      Util.statline(sb, "avgDeliveryMicros",
+                    TimeUnit.NANOSECONDS.toMicros(totalDeliveryNanos / d));
+    }
+    Util.statline(sb, "maxDeliveryMicros",
+                  TimeUnit.NANOSECONDS.toMicros(maxDeliveryNanos));
+
+    return sb.toString();
+  }
+
+  /* ====================================================================
+   *                   Protected methods
+   * ==================================================================== */
+
+  protected void info(final String msg) {
+    getLogger().info(msg);
+  }
+
+  protected void trace(final String msg) {
+    getLogger().debug(msg);
+  }
+
+  protected void warn(final String msg) {
+    getLogger().warn(msg);
+  }
+
+  protected void error(final Throwable t) {
+    getLogger().error(this, t);
+  }
+
+  /* Get a logger for messages
+   */
+  protected Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  /* Only called on the dispatcher thread so the stats need no locking */
+  private void deliver(final SysEvent ev) {
+    final long start = System.nanoTime();
+
+    for (final SysEventListener l: listeners) {
+      try {
+        l.action(ev);
+      } catch (final Throwable t) {
+        failed++;
+        error(t);
+      }
+    }
+
+    final long nanos = System.nanoTime() - start;
+
+    delivered++;
+    totalDeliveryNanos += nanos;
+
+    if (nanos > maxDeliveryNanos) {
+      maxDeliveryNanos = nanos;
+    }
+  }
+}
@@ -73,6 +73,45 @@ public class JmsConnectionHandler {
    * @throws NotificationException
    */
   public void open(final String queueName) throws NotificationException {
+    open(queueName, useTransactions);
+  }
+
+  /** Open a connection to the named queue ready to create a producer or
+   * consumer.
+   *
+   * @param queueName the queue
+   * @param transacted true for a transacted session - the caller must
+   *                   commit or rollback
+   * @throws NotificationException
+   */
+  public void open(final String queueName,
+                   final boolean transacted) throws NotificationException {
+    open(queueName, transacted, ackMode);
+  }
+
+  /** Open a connection to the named queue ready to create a producer or
+   * consumer.
+   *
+   * @param queueName the queue
+   * @param transacted true for a transacted session
+   * @param ackMode e.g. Session.CLIENT_ACKNOWLEDGE
+   * @throws NotificationException
+   */
+  public void open(final String queueName,
+                   final boolean transacted,
+                   final int ackMode) throws NotificationException {
+    connect(queueName);
+
+    session = createSession(transacted, ackMode);
+  }
+
+  /** Create the connection and look up the queue but don't create a
+   * session. Use this to manage sessions with createSession.
+   *
+   * @param queueName the queue
+   * @throws NotificationException
+   */
+  public void connect(final String queueName) throws NotificationException {
     try {
       final ConnectionFactory connFactory;
 
@@ -106,14 +145,6 @@ public class JmsConnectionHandler {
       }
 
       try {
-        /* Session is not transacted,
-        * uses AUTO_ACKNOWLEDGE for message
-        * acknowledgement
-        */
-        session = connection.createSession(useTransactions, ackMode);
-        if (session == null) {
-          throw new NotificationException("No session created");
-        }
         final String qn = pr.getProperty("org.bedework.jms.queue.prefix") +
                 queueName;
 
@@ -139,6 +170,71 @@ public class JmsConnectionHandler {
     }
   }
 
+  /** Create a new session on the connection. Sessions may only be used by
+   * one thread at a time.
+   *
+   * @param transacted true for a transacted session
+   * @return the session
+   * @throws NotificationException
+   */
+  public Session createSession(final boolean transacted)
+          throws NotificationException {
+    return createSession(transacted, ackMode);
+  }
+
+  /** Create a new session on the connection. Sessions may only be used by
+   * one thread at a time.
+   *
+   * @param transacted true for a transacted session
+   * @param ackMode e.g. Session.CLIENT_ACKNOWLEDGE
+   * @return the session
+   * @throws NotificationException
+   */
+  public Session createSession(final boolean transacted,
+                               final int ackMode)
+          throws NotificationException {
+    try {
+      /* Session is usually not transacted,
+       * uses AUTO_ACKNOWLEDGE for message
+       * acknowledgement
+       */
+      final Session sess = connection.createSession(transacted, ackMode);
+      if (sess == null) {
+        throw new NotificationException("No session created");
+      }
+
+      return sess;
+    } catch (final NotificationException ne) {
+      throw ne;
+    } catch (final Throwable t) {
+      if (debug) {
+        error(t);
+      }
+      throw new NotificationException(t);
+    }
+  }
+
+  /**
+   * @param sess a session created by this handler
+   * @return a producer for our queue
+   * @throws NotificationException
+   */
+  public MessageProducer createProducer(final Session sess)
+          throws NotificationException {
+    try {
+      return sess.createProducer(ourQueue);
+    } catch (final JMSException je) {
+      throw new NotificationException(je);
+    }
+  }
+
+  /**
+   * @return the connection - null if not connected
+   */
+  public Connection getConnection() {
+    return connection;
+  }
+
   /**
    *
    */
@@ -152,6 +248,20 @@ public class JmsConnectionHandler {
     }
   }
 
+  /** Close the session and the connection.
+   */
+  public void closeConnection() {
+    close();
+
+    try {
+      if (connection != null) {
+        connection.close();
+      }
+    } catch (final Throwable t) {
+      warn(t.getMessage());
+    }
+  }
+
   /**
    * @return jms session
    */
@@ -203,6 +313,19 @@ public class JmsConnectionHandler {
     }
   }
 
+  /**
+   * @param timeoutMillis maximum time to wait
+   * @return next message or null if none arrived in time
+   * @throws NotificationException
+   */
+  public Message receive(final long timeoutMillis) throws NotificationException {
+    try {
+      return consumer.receive(timeoutMillis);
+    } catch (final JMSException je) {
+      throw new NotificationException(je);
+    }
+  }
+
   /* ====================================================================
    *                   Protected methods
    * ==================================================================== */
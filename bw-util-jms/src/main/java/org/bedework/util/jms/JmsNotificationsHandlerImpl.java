@@ -18,35 +18,88 @@
  */
 package org.bedework.util.jms;
 
-import org.bedework.util.jms.JmsConnectionHandler;
-import org.bedework.util.jms.NotificationException;
-import org.bedework.util.jms.NotificationsHandler;
 import org.bedework.util.jms.events.SysEvent;
+import org.bedework.util.jms.events.SysEventCodec;
+import org.bedework.util.jms.events.SysEventCodecs;
 import org.bedework.util.jms.listeners.SysEventListener;
+import org.bedework.util.misc.Util;
 
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jms.JMSException;
-import javax.jms.MessageProducer;
-import javax.jms.ObjectMessage;
+import javax.jms.Message;
+import javax.jms.Session;
 
 /**
  * This is the implementation of a notifications handler which sends jms
  * messages.
  *
+ * <p>By default each event is sent on the caller's thread. Setting the
+ * property org.bedework.jms.publish.async to true queues events in a
+ * bounded in-memory queue instead. A background thread sends them in
+ * batches, each batch in one transacted session commit. The other
+ * org.bedework.jms.publish properties control the batch size, how long
+ * the first event of a batch may wait for company and what happens when
+ * the queue is full.
+ *
+ * <p>Events are encoded as described in SysEventCodecs.
+ *
  * @author Mike Douglass douglm - rpi.edu
  */
 public class JmsNotificationsHandlerImpl extends
         NotificationsHandler {
   private transient Logger log;
 
-  /* Default sysevents queue - everything goes here */
+  /** Property: true to queue events and send them in the background */
+  public static final String pnameAsync =
+          "org.bedework.jms.publish.async";
+
+  /** Property: maximum number of queued events - default 10000 */
+  public static final String pnameQueueSize =
+          "org.bedework.jms.publish.queue.size";
+
+  /** Property: maximum events per transaction - default 100 */
+  public static final String pnameBatchSize =
+          "org.bedework.jms.publish.batch.size";
+
+  /** Property: maximum millis an event waits for a batch to fill -
+   * default 50 */
+  public static final String pnameFlushMillis =
+          "org.bedework.jms.publish.flush.millis";
+
+  /** Property: a FullPolicy name - default block */
+  public static final String pnameFullPolicy =
+          "org.bedework.jms.publish.full.policy";
+
+  /** Property: for the block policy, millis to wait for space before
+   * failing the post. 0 (the default) waits indefinitely. */
+  public static final String pnameBlockMillis =
+          "org.bedework.jms.publish.block.millis";
+
+  /** What post does when the queue is full */
+  public enum FullPolicy {
+    /** Wait for space - the poster is slowed to the rate of the broker */
+    block,
 
-  private final JmsConnectionHandler conn;
+    /** Discard the event being posted */
+    dropNewest,
 
-  private final MessageProducer sender;
+    /** Discard the oldest queued event to make room */
+    dropOldest
+  }
+
+  /* Default sysevents queue - everything goes here */
+
+  private final ProducerPool pool;
 
   /*
    * We could use the activemq camel support (I think) to filter out certain
@@ -55,6 +108,127 @@ public class JmsNotificationsHandlerImpl extends
 
   private final boolean debug;
 
+  private final SysEventCodec codec;
+
+  /* ---------------- Asynchronous publishing ---------------- */
+
+  private final boolean async;
+
+  private BlockingQueue<Pending> queue;
+
+  private int batchSize;
+
+  private long flushNanos;
+
+  private FullPolicy fullPolicy;
+
+  private long blockMillis;
+
+  private Sender senderThread;
+
+  private volatile boolean running;
+
+  /* Events accepted by post and not yet sent, dropped or failed.
+   * Counted before they are queued so flush never misses one the sender
+   * has just taken. */
+  private final AtomicInteger unsent = new AtomicInteger();
+
+  /* ---------------- Statistics ---------------- */
+
+  private final AtomicLong posted = new AtomicLong();
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  /* Time spent in send and commit */
+  private final AtomicLong sendNanos = new AtomicLong();
+
+  /* Time from post to commit */
+  private final AtomicLong latencyNanos = new AtomicLong();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  private static class Pending {
+    final SysEvent ev;
+    final long queued = System.nanoTime();
+
+    /* Set if the event could not be encoded - it is skipped */
+    boolean unencodable;
+
+    Pending(final SysEvent ev) {
+      this.ev = ev;
+    }
+  }
+
+  private class Sender extends Thread {
+    Sender() {
+      super("bw-jms-publisher");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      final List<Pending> batch = new ArrayList<>(batchSize);
+
+      while (running || !queue.isEmpty()) {
+        try {
+          fill(batch);
+
+          if (!batch.isEmpty()) {
+            sendBatch(batch);
+          }
+        } catch (final Throwable t) {
+          error(t);
+        } finally {
+          unsent.addAndGet(-batch.size());
+          batch.clear();
+        }
+      }
+    }
+
+    /* Wait for an event then take up to batchSize, waiting no more than
+     * flushNanos after the first was posted.
+     */
+    private void fill(final List<Pending> batch) {
+      try {
+        final Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+
+        if (first == null) {
+          return;
+        }
+
+        batch.add(first);
+
+        final long deadline = first.queued + flushNanos;
+
+        while (batch.size() < batchSize) {
+          queue.drainTo(batch, batchSize - batch.size());
+
+          if (!running || (batch.size() >= batchSize)) {
+            return;
+          }
+
+          final long wait = deadline - System.nanoTime();
+
+          if (wait <= 0) {
+            return;
+          }
+
+          final Pending p = queue.poll(wait, TimeUnit.NANOSECONDS);
+
+          if (p == null) {
+            return;
+          }
+
+          batch.add(p);
+        }
+      } catch (final InterruptedException ignored) {
+        // Send what we have
+      }
+    }
+  }
+
   /**
    *
    * @param queueName our queue
@@ -65,17 +239,29 @@ public class JmsNotificationsHandlerImpl extends
                                      final Properties pr) throws NotificationException {
     debug = getLogger().isDebugEnabled();
 
-    conn = new JmsConnectionHandler(pr);
+    codec = SysEventCodecs.getCodec(pr);
+    async = Boolean.valueOf(pr.getProperty(pnameAsync, "false"));
 
-    conn.open(queueName);
+    /* For async only the sender thread uses the pool */
+    pool = new ProducerPool(queueName, pr, async);
 
-    sender = conn.getProducer();
-  }
+    if (!async) {
+      return;
+    }
 
-  @SuppressWarnings("unused")
-  private static long sends = 0;
-  @SuppressWarnings("unused")
-  private static long sendTime = 0;
+    queue = new ArrayBlockingQueue<>(
+            Util.intProperty(pr, pnameQueueSize, 10000));
+    batchSize = Util.intProperty(pr, pnameBatchSize, 100);
+    flushNanos = TimeUnit.MILLISECONDS.toNanos(
+            Util.intProperty(pr, pnameFlushMillis, 50));
+    fullPolicy = FullPolicy.valueOf(pr.getProperty(pnameFullPolicy,
+                                                   FullPolicy.block.name()));
+    blockMillis = Util.intProperty(pr, pnameBlockMillis, 0);
+
+    running = true;
+    senderThread = new Sender();
+    senderThread.start();
+  }
 
   @Override
   public void post(final SysEvent ev) throws NotificationException {
@@ -83,25 +269,40 @@ public class JmsNotificationsHandlerImpl extends
       trace(ev.toString());
     }
 
-    try {
-      final ObjectMessage msg = conn.getSession().createObjectMessage();
+    posted.incrementAndGet();
 
-      msg.setObject(ev);
+    if (async) {
+      enqueue(new Pending(ev));
+      return;
+    }
 
-      for (final SysEvent.Attribute attr: ev.getMessageAttributes()) {
-        msg.setStringProperty(attr.name, attr.value);
-      }
+    /* A failure may mean a broken connection. The pool replaces it and
+     * we try once more.
+     */
+    for (int attempt = 0; ; attempt++) {
+      final ProducerPool.Producer p = pool.checkOut();
+      boolean broken = false;
+
+      try {
+        final long start = System.nanoTime();
 
-      final long start = System.currentTimeMillis();
-      sender.send(msg);
-      sends++;
-      sendTime += System.currentTimeMillis() - start;
+        p.send(makeMessage(p.getSession(), ev));
 
-//      if ((sends % 100) == 0) {
-//        System.out.println("Sends: " + sends + " avg: " + sendTime / sends);
-//      }
-    } catch (final JMSException je) {
-      throw new NotificationException(je);
+        final long nanos = System.nanoTime() - start;
+        sent(1, nanos);
+        latency(nanos);
+
+        return;
+      } catch (final JMSException je) {
+        broken = true;
+
+        if (attempt > 0) {
+          failed.incrementAndGet();
+          throw new NotificationException(je);
+        }
+      } finally {
+        pool.checkIn(p, broken);
+      }
     }
   }
 
@@ -118,12 +319,112 @@ public class JmsNotificationsHandlerImpl extends
 
   }
 
+  /** Wait until everything posted so far has been sent or the timeout
+   * expires. Does nothing for synchronous publishing.
+   *
+   * @param timeoutMillis maximum time to wait
+   * @return true if the queue was emptied
+   */
+  public boolean flush(final long timeoutMillis) {
+    if (!async) {
+      return true;
+    }
+
+    final long end = System.currentTimeMillis() + timeoutMillis;
+
+    while (unsent.get() > 0) {
+      if (System.currentTimeMillis() >= end) {
+        return false;
+      }
+
+      try {
+        Thread.sleep(10);
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public void close() {
+    if (async && running) {
+      running = false;
+
+      try {
+        senderThread.join(30 * 1000);
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+
+      final List<Pending> left = new ArrayList<>();
+      queue.drainTo(left);
+
+      if (!left.isEmpty()) {
+        warn("Discarding " + left.size() + " unsent events");
+        dropped.addAndGet(left.size());
+        unsent.addAndGet(-left.size());
+      }
+    }
+
+    pool.close();
+  }
+
+  @Override
+  public String getStats() {
+    final StringBuilder sb = new StringBuilder();
+
+    final long sentCt = sent.get();
+    final long batchCt = batches.get();
+
+    Util.statline(sb, "async", String.valueOf(async));
+    Util.statline(sb, "posted", posted.get());
+    Util.statline(sb, "sent", sentCt);
+    Util.statline(sb, "batches", batchCt);
+    Util.statline(sb, "queued", (queue == null) ? 0 : queue.size());
+    Util.statline(sb, "dropped", dropped.get());
+    Util.statline(sb, "rejected", rejected.get());
+    Util.statline(sb, "failed", failed.get());
+
+    if (batchCt > 0) {
+      Util.statline(sb, "avgBatchSize", sentCt / batchCt);
+      Util.statline(sb, "avgSendMicros",
+                    TimeUnit.NANOSECONDS.toMicros(sendNanos.get() / batchCt));
+    }
+
+    if (sentCt > 0) {
+      Util.statline(sb, "avgLatencyMicros",
+                    TimeUnit.NANOSECONDS.toMicros(latencyNanos.get() / sentCt));
+    }
+    Util.statline(sb, "maxLatencyMicros",
+                  TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get()));
+
+    sb.append(pool.getStats());
+
+    return sb.toString();
+  }
+
   /*
    * ====================================================================
    * Protected methods
    * ====================================================================
    */
 
+  /** Create the message for an event with the configured codec.
+   *
+   * @param sess the session to create it with
+   * @param ev the event
+   * @return message ready to send
+   * @throws JMSException
+   */
+  protected Message makeMessage(final Session sess,
+                                final SysEvent ev)
+          throws JMSException, NotificationException {
+    return SysEventCodecs.encode(codec, sess, ev);
+  }
+
   protected void info(final String msg) {
     getLogger().info(msg);
   }
@@ -132,6 +433,14 @@ public class JmsNotificationsHandlerImpl extends
     getLogger().debug(msg);
   }
 
+  protected void warn(final String msg) {
+    getLogger().warn(msg);
+  }
+
+  protected void error(final Throwable t) {
+    getLogger().error(this, t);
+  }
+
   /*
    * Get a logger for messages
    */
@@ -142,4 +451,177 @@ public class JmsNotificationsHandlerImpl extends
 
     return log;
   }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private void enqueue(final Pending p) throws NotificationException {
+    if (!running) {
+      rejected.incrementAndGet();
+      throw new NotificationException("Notifications handler is closed");
+    }
+
+    unsent.incrementAndGet();
+
+    if (queue.offer(p)) {
+      return;
+    }
+
+    switch (fullPolicy) {
+      case dropNewest:
+        dropped.incrementAndGet();
+        unsent.decrementAndGet();
+        return;
+
+      case dropOldest:
+        while (!queue.offer(p)) {
+          if (queue.poll() != null) {
+            dropped.incrementAndGet();
+            unsent.decrementAndGet();
+          }
+        }
+        return;
+
+      default:
+        try {
+          if (blockMillis <= 0) {
+            queue.put(p);
+            return;
+          }
+
+          if (queue.offer(p, blockMillis, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        } catch (final InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          rejected.incrementAndGet();
+          unsent.decrementAndGet();
+          throw new NotificationException(ie);
+        }
+
+        rejected.incrementAndGet();
+        unsent.decrementAndGet();
+        throw new NotificationException("Notifications queue is full");
+    }
+  }
+
+  /* Called only from the sender thread. A failed batch is rolled back and
+   * retried once - the pool reconnects if the connection was broken. An
+   * event which can't be encoded is counted as failed and skipped without
+   * affecting the rest of the batch.
+   */
+  private void sendBatch(final List<Pending> batch) {
+    final long start = System.nanoTime();
+
+    for (int attempt = 0; ; attempt++) {
+      try {
+        trySend(batch);
+        break;
+      } catch (final Throwable t) {
+        if (attempt == 0) {
+          continue;
+        }
+
+        final int lost = encodable(batch);
+
+        failed.addAndGet(lost);
+        warn("Unable to send " + lost + " events: " +
+                     t.getLocalizedMessage());
+        if (debug) {
+          error(t);
+        }
+
+        return;
+      }
+    }
+
+    final long end = System.nanoTime();
+
+    final int count = encodable(batch);
+
+    if (count == 0) {
+      return;
+    }
+
+    sent(count, end - start);
+
+    for (final Pending p: batch) {
+      if (!p.unencodable) {
+        latency(end - p.queued);
+      }
+    }
+  }
+
+  private int encodable(final List<Pending> batch) {
+    int count = 0;
+
+    for (final Pending p: batch) {
+      if (!p.unencodable) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  private void trySend(final List<Pending> batch) throws Throwable {
+    final ProducerPool.Producer prod = pool.checkOut();
+    final Session sess = prod.getSession();
+    boolean broken = false;
+
+    try {
+      for (final Pending p: batch) {
+        if (p.unencodable) {
+          continue;
+        }
+
+        final Message msg;
+
+        try {
+          msg = makeMessage(sess, p.ev);
+        } catch (final JMSException je) {
+          // Probably the session - fail the batch
+          throw je;
+        } catch (final Throwable t) {
+          p.unencodable = true;
+          failed.incrementAndGet();
+          warn("Unable to encode event " + p.ev + ": " +
+                       t.getLocalizedMessage());
+          continue;
+        }
+
+        prod.send(msg);
+      }
+
+      sess.commit();
+    } catch (final Throwable t) {
+      try {
+        sess.rollback();
+      } catch (final Throwable ignored) {}
+
+      broken = t instanceof JMSException;
+
+      throw t;
+    } finally {
+      pool.checkIn(prod, broken);
+    }
+  }
+
+  private void sent(final int count,
+                    final long nanos) {
+    sent.addAndGet(count);
+    batches.incrementAndGet();
+    sendNanos.addAndGet(nanos);
+  }
+
+  private void latency(final long nanos) {
+    latencyNanos.addAndGet(nanos);
+
+    long max = maxLatencyNanos.get();
+    while ((nanos > max) &&
+            !maxLatencyNanos.compareAndSet(max, nanos)) {
+      max = maxLatencyNanos.get();
+    }
+  }
 }
@@ -59,4 +59,18 @@ public abstract class NotificationsHandler {
    */
   public abstract void removeListener(SysEventListener l)
                                                          throws NotificationException;
+
+  /** Release resources. Anything queued is sent first if possible.
+   *
+   * @throws NotificationException
+   */
+  public void close() throws NotificationException {
+  }
+
+  /**
+   * @return statistics for display - one per line. Empty by default.
+   */
+  public String getStats() {
+    return "";
+  }
 }
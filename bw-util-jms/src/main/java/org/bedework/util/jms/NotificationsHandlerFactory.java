@@ -18,15 +18,30 @@ package org.bedework.util.jms;/* ***********************************************
  */
 
 import org.bedework.util.jms.events.SysEvent;
+import org.bedework.util.jms.listeners.SysEventListener;
 
 import java.util.Properties;
 
 /**
- * Return a single instance of a notifications handler.
+ * Return a single instance of a notifications handler. The handler is
+ * safe for concurrent use - it sends through a pool of sessions and
+ * producers (see ProducerPool) so posting threads don't share a session.
+ * If org.bedework.jms.publish.coalesce.millis is set events are coalesced
+ * before they are sent - see CoalescingNotificationsHandler.
+ *
+ * <p>The property org.bedework.jms.handler selects the handler:<ul>
+ *   <li>jms - the default. Events are sent to the JMS queue</li>
+ *   <li>inmemory - events are delivered to listeners in this JVM - see
+ *   InMemoryNotificationsHandler</li>
+ *   <li>none - events are only logged when debugging</li>
+ * </ul>
  *
  * @author Mike Douglass
  */
 public class NotificationsHandlerFactory {
+  /** Property: which handler to use - jms, inmemory or none */
+  public static final String pnameHandler = "org.bedework.jms.handler";
+
   private static volatile NotificationsHandler handler;
 
   private static final Object synchit = new Object();
@@ -41,15 +56,37 @@ public class NotificationsHandlerFactory {
    */
   private static NotificationsHandler getHandler(final String queueName,
                                                  final Properties pr) throws NotificationException {
-    if (handler != null) {
-      return handler;
+    NotificationsHandler h = handler;
+
+    if (h != null) {
+      return h;
     }
 
     synchronized (synchit) {
-      handler = new JmsNotificationsHandlerImpl(queueName, pr);
-    }
+      if (handler == null) {
+        final String type = pr.getProperty(pnameHandler, "jms");
+        NotificationsHandler nh;
 
-    return handler;
+        if (type.equals("inmemory")) {
+          nh = new InMemoryNotificationsHandler(pr);
+        } else if (type.equals("none")) {
+          nh = new NotificationsHandlerImpl();
+        } else if (type.equals("jms")) {
+          nh = new JmsNotificationsHandlerImpl(queueName, pr);
+        } else {
+          throw new NotificationException("Unknown notifications handler",
+                                          type);
+        }
+
+        if (CoalescingNotificationsHandler.enabled(pr)) {
+          nh = new CoalescingNotificationsHandler(nh, pr);
+        }
+
+        handler = nh;
+      }
+
+      return handler;
+    }
   }
 
   /**
@@ -67,4 +104,66 @@ public class NotificationsHandlerFactory {
                           final Properties pr) throws NotificationException {
     getHandler(queueName, pr).post(ev);
   }
+
+  /** Register a listener with the handler. Only the inmemory handler
+   * calls listeners - JMS consumers use a JmsSysEventListener.
+   *
+   * @param l the listener
+   * @param persistent true if this listener is to be reregistered
+   * @param queueName our queue
+   * @param pr jms properties
+   * @throws NotificationException
+   */
+  public static void registerListener(final SysEventListener l,
+                                      final boolean persistent,
+                                      final String queueName,
+                                      final Properties pr)
+          throws NotificationException {
+    getHandler(queueName, pr).registerListener(l, persistent);
+  }
+
+  /** Remove a listener from the handler if one was created.
+   *
+   * @param l the listener
+   * @throws NotificationException
+   */
+  public static void removeListener(final SysEventListener l)
+          throws NotificationException {
+    final NotificationsHandler h = handler;
+
+    if (h != null) {
+      h.removeListener(l);
+    }
+  }
+
+  /**
+   * @return statistics for the handler or null if none created
+   */
+  public static String getStats() {
+    final NotificationsHandler h = handler;
+
+    if (h == null) {
+      return null;
+    }
+
+    return h.getStats();
+  }
+
+  /** Close the handler if one was created. The next post will create a
+   * new one.
+   *
+   * @throws NotificationException
+   */
+  public static void close() throws NotificationException {
+    synchronized (synchit) {
+      if (handler == null) {
+        return;
+      }
+
+      final NotificationsHandler h = handler;
+      handler = null;
+
+      h.close();
+    }
+  }
 }
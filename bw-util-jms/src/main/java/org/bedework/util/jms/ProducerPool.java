@@ -0,0 +1,449 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+ */
+package org.bedework.util.jms;
+
+import org.bedework.util.misc.Util;
+
+import org.apache.log4j.Logger;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+/** A pool of sessions, each with a producer, on one connection to a queue.
+ * JMS sessions may only be used by one thread at a time so each poster
+ * checks out a producer, sends and checks it back in:
+ * <pre>
+ *   final ProducerPool.Producer p = pool.checkOut();
+ *   boolean ok = false;
+ *   try {
+ *     p.send(msg);
+ *     ok = true;
+ *   } finally {
+ *     pool.checkIn(p, !ok);
+ *   }
+ * </pre>
+ *
+ * <p>At most org.bedework.jms.producer.pool.size producers exist at once.
+ * A poster waits up to org.bedework.jms.producer.pool.wait.millis for one
+ * to become free.
+ *
+ * <p>If the connection fails - reported by the provider or by a producer
+ * being checked in as broken - all producers on it are discarded and the
+ * next checkOut reconnects. Reconnection attempts are at least
+ * org.bedework.jms.reconnect.millis apart.
+ *
+ * @author Mike Douglass
+ */
+public class ProducerPool {
+  private transient Logger log;
+
+  /** Property: maximum number of producers - default 8 */
+  public static final String pnamePoolSize =
+          "org.bedework.jms.producer.pool.size";
+
+  /** Property: millis to wait for a free producer - default 10000 */
+  public static final String pnamePoolWaitMillis =
+          "org.bedework.jms.producer.pool.wait.millis";
+
+  /** Property: minimum millis between reconnect attempts - default 5000 */
+  public static final String pnameReconnectMillis =
+          "org.bedework.jms.reconnect.millis";
+
+  private final String queueName;
+
+  private final Properties pr;
+
+  private final boolean transacted;
+
+  private final int size;
+
+  private final long waitMillis;
+
+  private final long reconnectMillis;
+
+  private final Semaphore permits;
+
+  private final ConcurrentLinkedDeque<Producer> idle =
+          new ConcurrentLinkedDeque<>();
+
+  private final Object connLock = new Object();
+
+  /* The current connection - null if not connected */
+  private volatile JmsConnectionHandler conn;
+
+  /* Incremented on each (re)connect - producers from an older generation
+   * are discarded
+   */
+  private final AtomicInteger generation = new AtomicInteger();
+
+  private long lastConnectAttempt;
+
+  private volatile boolean closed;
+
+  private final AtomicLong checkouts = new AtomicLong();
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong discarded = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong reconnects = new AtomicLong();
+  private final AtomicLong connectFailures = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+
+  /** A session and producer. Only to be used by the thread which checked
+   * it out.
+   */
+  public static class Producer {
+    private final Session session;
+    private final MessageProducer producer;
+    private final int generation;
+
+    Producer(final Session session,
+             final MessageProducer producer,
+             final int generation) {
+      this.session = session;
+      this.producer = producer;
+      this.generation = generation;
+    }
+
+    /**
+     * @return session for creating messages and committing
+     */
+    public Session getSession() {
+      return session;
+    }
+
+    /**
+     * @param msg to send to the queue
+     * @throws JMSException on failure - check the producer in as broken
+     */
+    public void send(final Message msg) throws JMSException {
+      producer.send(msg);
+    }
+
+    void close() {
+      try {
+        producer.close();
+      } catch (final Throwable ignored) {}
+
+      try {
+        session.close();
+      } catch (final Throwable ignored) {}
+    }
+  }
+
+  /**
+   * @param queueName our queue
+   * @param pr jms properties
+   * @param transacted true if sessions are transacted
+   * @throws NotificationException if the first connection fails
+   */
+  public ProducerPool(final String queueName,
+                      final Properties pr,
+                      final boolean transacted) throws NotificationException {
+    this.queueName = queueName;
+    this.pr = pr;
+    this.transacted = transacted;
+
+    size = Util.intProperty(pr, pnamePoolSize, 8);
+    waitMillis = Util.intProperty(pr, pnamePoolWaitMillis, 10000);
+    reconnectMillis = Util.intProperty(pr, pnameReconnectMillis, 5000);
+
+    permits = new Semaphore(size, true);
+
+    // Fail early on misconfiguration
+    connect(true);
+  }
+
+  /** Get a producer, waiting if all are in use.
+   *
+   * @return a producer - never null
+   * @throws NotificationException on timeout or if we can't connect
+   */
+  public Producer checkOut() throws NotificationException {
+    if (closed) {
+      throw new NotificationException("Producer pool is closed");
+    }
+
+    checkouts.incrementAndGet();
+
+    final long start = System.nanoTime();
+
+    try {
+      if (!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+        timeouts.incrementAndGet();
+        throw new NotificationException(
+                "Timed out waiting for a jms producer");
+      }
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new NotificationException(ie);
+    } finally {
+      waitNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    try {
+      final int gen = generation.get();
+
+      while (true) {
+        final Producer p = idle.pollFirst();
+
+        if (p == null) {
+          break;
+        }
+
+        if (p.generation == gen) {
+          return p;
+        }
+
+        discard(p);
+      }
+
+      return create();
+    } catch (final NotificationException ne) {
+      permits.release();
+      throw ne;
+    } catch (final Throwable t) {
+      permits.release();
+      throw new NotificationException(t);
+    }
+  }
+
+  /** Return a producer to the pool.
+   *
+   * @param p from checkOut
+   * @param broken true if it failed - the connection is assumed to be
+   *               broken and will be replaced
+   */
+  public void checkIn(final Producer p,
+                      final boolean broken) {
+    try {
+      if (broken) {
+        discard(p);
+        connectionFailed(p.generation);
+        return;
+      }
+
+      if (closed || (p.generation != generation.get())) {
+        discard(p);
+        return;
+      }
+
+      idle.addFirst(p);
+    } finally {
+      permits.release();
+    }
+  }
+
+  /** Close all idle producers and the connection. Producers checked out
+   * are closed when checked in.
+   */
+  public void close() {
+    closed = true;
+
+    synchronized (connLock) {
+      generation.incrementAndGet();
+      discardIdle();
+
+      if (conn != null) {
+        conn.closeConnection();
+        conn = null;
+      }
+    }
+  }
+
+  /**
+   * @return statistics for display - one per line
+   */
+  public String getStats() {
+    final StringBuilder sb = new StringBuilder();
+
+    final long co = checkouts.get();
+
+    Util.statline(sb, "poolSize", size);
+    Util.statline(sb, "inUse", size - permits.availablePermits());
+    Util.statline(sb, "idle", idle.size());
+    Util.statline(sb, "checkouts", co);
+    Util.statline(sb, "created", created.get());
+    Util.statline(sb, "discarded", discarded.get());
+    Util.statline(sb, "timeouts", timeouts.get());
+    Util.statline(sb, "reconnects", reconnects.get());
+    Util.statline(sb, "connectFailures", connectFailures.get());
+
+    if (co > 0) {
+      Util.statline(sb, "avgWaitMicros",
+                    TimeUnit.NANOSECONDS.toMicros(waitNanos.get() / co));
+    }
+
+    return sb.toString();
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private Producer create() throws NotificationException {
+    final JmsConnectionHandler c = connect(false);
+    final int gen = generation.get();
+
+    final Session sess = c.createSession(transacted);
+
+    try {
+      final Producer p = new Producer(sess, c.createProducer(sess), gen);
+
+      created.incrementAndGet();
+
+      return p;
+    } catch (final NotificationException ne) {
+      try {
+        sess.close();
+      } catch (final Throwable ignored) {}
+
+      throw ne;
+    }
+  }
+
+  /* Return the current connection, connecting if necessary. Unless forced
+   * we don't try more often than reconnectMillis.
+   */
+  private JmsConnectionHandler connect(final boolean force)
+          throws NotificationException {
+    final JmsConnectionHandler c = conn;
+
+    if (c != null) {
+      return c;
+    }
+
+    synchronized (connLock) {
+      if (conn != null) {
+        return conn;
+      }
+
+      if (closed) {
+        throw new NotificationException("Producer pool is closed");
+      }
+
+      final long now = System.currentTimeMillis();
+
+      if (!force && (now - lastConnectAttempt < reconnectMillis)) {
+        throw new NotificationException("JMS connection unavailable");
+      }
+
+      lastConnectAttempt = now;
+
+      final JmsConnectionHandler nc = new JmsConnectionHandler(pr);
+
+      /* The generation this connection will have. A late failure report
+         for it must not drop a later connection. */
+      final int gen = generation.get() + 1;
+
+      try {
+        nc.connect(queueName);
+        nc.getConnection().setExceptionListener(new ExceptionListener() {
+          @Override
+          public void onException(final JMSException je) {
+            warn("JMS connection failed: " + je.getLocalizedMessage());
+            connectionFailed(gen);
+          }
+        });
+      } catch (final Throwable t) {
+        connectFailures.incrementAndGet();
+        nc.closeConnection();
+
+        if (t instanceof NotificationException) {
+          throw (NotificationException)t;
+        }
+
+        throw new NotificationException(t);
+      }
+
+      if (generation.get() > 0) {
+        reconnects.incrementAndGet();
+        info("Reconnected to JMS queue " + queueName);
+      }
+
+      generation.incrementAndGet();
+      conn = nc;
+
+      return nc;
+    }
+  }
+
+  /* Drop the connection if it's still the one the failure happened on.
+   * The next checkOut will reconnect.
+   */
+  private void connectionFailed(final int gen) {
+    synchronized (connLock) {
+      if ((gen != generation.get()) || (conn == null)) {
+        // Already dealt with
+        return;
+      }
+
+      generation.incrementAndGet();
+      discardIdle();
+
+      conn.closeConnection();
+      conn = null;
+
+      // Allow an immediate retry the first time
+      lastConnectAttempt = 0;
+    }
+  }
+
+  private void discardIdle() {
+    while (true) {
+      final Producer p = idle.pollFirst();
+
+      if (p == null) {
+        return;
+      }
+
+      discard(p);
+    }
+  }
+
+  private void discard(final Producer p) {
+    discarded.incrementAndGet();
+    p.close();
+  }
+
+  private void info(final String msg) {
+    getLogger().info(msg);
+  }
+
+  private void warn(final String msg) {
+    getLogger().warn(msg);
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+}
@@ -0,0 +1,292 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+ */
+package org.bedework.util.jms;
+
+import org.bedework.util.jms.events.SysEvent;
+import org.bedework.util.misc.Util;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Merges bursts of events before they are delivered.
+ *
+ * <p>Events with a non-null coalesce key (see SysEvent.getCoalesceKey)
+ * are held for up to the window. Another event with the same system code
+ * and key arriving in that time is merged into the held one with
+ * SysEvent.coalesce - stats are aggregated, other events are
+ * deduplicated by default. Held events are delivered in the order they
+ * first arrived at the end of each window, when maxKeys different keys
+ * are held, or on flush.
+ *
+ * <p>Events without a key are delivered immediately so they may overtake
+ * held events.
+ *
+ * <p>The ratio of events received to events delivered is reported in the
+ * stats.
+ *
+ * @author Mike Douglass
+ */
+public class SysEventCoalescer {
+  private transient Logger log;
+
+  /** Receives the events after coalescing.
+   */
+  public interface Sink {
+    /**
+     * @param ev the possibly merged event
+     * @throws NotificationException on error
+     */
+    void deliver(SysEvent ev) throws NotificationException;
+  }
+
+  private static final AtomicInteger coalescerNum = new AtomicInteger();
+
+  private final Sink sink;
+
+  private final int maxKeys;
+
+  private final ScheduledExecutorService timer;
+
+  private Map<String, SysEvent> held = new LinkedHashMap<>();
+
+  /* Held events which could not be merged with a later one. They are
+   * always delivered before anything still held. */
+  private List<SysEvent> ready = new ArrayList<>();
+
+  /* Only one thread delivers held events at a time so merged events for
+   * a key stay in order. */
+  private final Object deliverLock = new Object();
+
+  private volatile boolean closed;
+
+  /* stats */
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong passed = new AtomicLong();
+  private final AtomicLong merged = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  /**
+   * @param sink for coalesced events
+   * @param windowMillis how long events are held
+   * @param maxKeys deliver early when this many keys are held
+   */
+  public SysEventCoalescer(final Sink sink,
+                           final long windowMillis,
+                           final int maxKeys) {
+    this.sink = sink;
+    this.maxKeys = maxKeys;
+
+    final String prefix = "bw-jms-coalesce-" +
+            coalescerNum.incrementAndGet();
+
+    timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread t = new Thread(r, prefix);
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    timer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flush();
+        } catch (final Throwable t) {
+          error(t);
+        }
+      }
+    }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Merge or hold the event or deliver it now if it has no key.
+   *
+   * @param ev the event
+   * @throws NotificationException from the sink for immediate delivery
+   */
+  public void add(final SysEvent ev) throws NotificationException {
+    received.incrementAndGet();
+
+    final String key = ev.getCoalesceKey();
+
+    if ((key == null) || closed) {
+      passed.incrementAndGet();
+      deliver(ev);
+      return;
+    }
+
+    final String fullKey = ev.getSysCode() + "\t" + key;
+    boolean unmerged = false;
+    boolean full = false;
+
+    synchronized (this) {
+      final SysEvent prev = held.get(fullKey);
+
+      if (prev == null) {
+        held.put(fullKey, ev);
+        full = held.size() >= maxKeys;
+      } else {
+        final SysEvent m = prev.coalesce(ev);
+
+        if (m == null) {
+          /* Can't merge - send what we have and hold the new one.
+             Queued under the same lock so a flush can't send the new
+             one first. */
+          ready.add(prev);
+          unmerged = true;
+          held.remove(fullKey);
+          held.put(fullKey, ev);
+        } else {
+          merged.incrementAndGet();
+          held.put(fullKey, m);
+        }
+      }
+    }
+
+    if (full) {
+      flush();
+    } else if (unmerged) {
+      deliverHeld(false);
+    }
+  }
+
+  /** Deliver everything held.
+   *
+   */
+  public void flush() {
+    deliverHeld(true);
+  }
+
+  /** Stop the timer and deliver anything held. Events added after this
+   * are delivered immediately.
+   */
+  public void close() {
+    closed = true;
+    timer.shutdownNow();
+    flush();
+  }
+
+  /**
+   * @return number of events held
+   */
+  public synchronized int getHeld() {
+    return held.size();
+  }
+
+  /**
+   * @return events received divided by events delivered
+   */
+  public double getRatio() {
+    final long d = delivered.get();
+
+    if (d == 0) {
+      return 1;
+    }
+
+    return (double)received.get() / d;
+  }
+
+  /**
+   * @return statistics for display - one per line
+   */
+  public String getStats() {
+    final StringBuilder sb = new StringBuilder();
+
+    Util.statline(sb, "coalesceReceived", received.get());
+    Util.statline(sb, "coalescePassed", passed.get());
+    Util.statline(sb, "coalesceMerged", merged.get());
+    Util.statline(sb, "coalesceDelivered", delivered.get());
+    Util.statline(sb, "coalesceFailed", failed.get());
+    Util.statline(sb, "coalesceHeld", getHeld());
+    Util.statline(sb, "coalesceRatio", String.format("%.2f", getRatio()));
+
+    return sb.toString();
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  /* Deliver the ready events and, if all is true, the held ones */
+  private void deliverHeld(final boolean all) {
+    synchronized (deliverLock) {
+      final List<SysEvent> toSend;
+
+      synchronized (this) {
+        if (ready.isEmpty() && (!all || held.isEmpty())) {
+          return;
+        }
+
+        toSend = ready;
+        ready = new ArrayList<>();
+
+        if (all) {
+          toSend.addAll(held.values());
+          held = new LinkedHashMap<>();
+        }
+      }
+
+      for (final SysEvent ev: toSend) {
+        try {
+          deliver(ev);
+        } catch (final Throwable t) {
+          // Counted in deliver
+          error(t);
+        }
+      }
+    }
+  }
+
+  private void deliver(final SysEvent ev) throws NotificationException {
+    try {
+      sink.deliver(ev);
+      delivered.incrementAndGet();
+    } catch (final NotificationException ne) {
+      failed.incrementAndGet();
+      throw ne;
+    } catch (final RuntimeException re) {
+      failed.incrementAndGet();
+      throw re;
+    }
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+
+  private void error(final Throwable t) {
+    getLogger().error(this, t);
+  }
+}
@@ -0,0 +1,323 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+ */
+package org.bedework.util.jms;
+
+import org.bedework.util.jms.events.SysEvent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** A bounded ring of events with many producers and a single consumer.
+ *
+ * <p>Producers claim a sequence number with a single atomic increment,
+ * wait until the consumer has freed that slot, store the event and then
+ * mark the slot published with the sequence number. The consumer reads
+ * slots in sequence order and waits for the next one according to the
+ * wait strategy. No locks are taken except by the blocking strategy.
+ *
+ * @author Mike Douglass
+ */
+class SysEventRingBuffer {
+  /** How the consumer waits for the next event */
+  public enum WaitStrategy {
+    /** Wait on a condition. Lowest cpu use but producers signal the
+     * consumer when it is waiting */
+    blocking,
+
+    /** Spin, then yield, then park for short periods. The default */
+    sleeping,
+
+    /** Spin then yield. Low latency but uses a cpu when idle */
+    yielding,
+
+    /** Spin only. Lowest latency - dedicates a cpu to the consumer */
+    busySpin
+  }
+
+  private static final int spinTries = 100;
+
+  private static final int yieldTries = 100;
+
+  private final SysEvent[] slots;
+
+  /* Sequence number last published in each slot */
+  private final AtomicLongArray published;
+
+  private final int mask;
+
+  private final WaitStrategy waitStrategy;
+
+  /* Next sequence to be claimed by a producer */
+  private final AtomicLong claimed = new AtomicLong();
+
+  /* Next sequence to be read by the consumer. Slots before this are
+   * free. */
+  private final AtomicLong consumed = new AtomicLong();
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition notEmpty = lock.newCondition();
+
+  private volatile boolean consumerWaiting;
+
+  private volatile boolean stopped;
+
+  private final AtomicLong producerWaits = new AtomicLong();
+
+  /**
+   * @param size rounded up to a power of 2
+   * @param waitStrategy for the consumer
+   */
+  SysEventRingBuffer(final int size,
+                     final WaitStrategy waitStrategy) {
+    int sz = 1;
+
+    while (sz < size) {
+      sz <<= 1;
+    }
+
+    slots = new SysEvent[sz];
+    published = new AtomicLongArray(sz);
+    mask = sz - 1;
+    this.waitStrategy = waitStrategy;
+
+    for (int i = 0; i < sz; i++) {
+      published.set(i, -1);
+    }
+  }
+
+  /** Add an event, waiting for space if the ring is full.
+   *
+   * @param ev the event
+   * @return false if the ring was stopped while waiting for space
+   */
+  boolean publish(final SysEvent ev) {
+    final long seq = claimed.getAndIncrement();
+
+    if (seq - consumed.get() >= slots.length) {
+      producerWaits.incrementAndGet();
+
+      int tries = 0;
+      while (seq - consumed.get() >= slots.length) {
+        if (stopped) {
+          return false;
+        }
+
+        backoff(tries++);
+      }
+    }
+
+    store(seq, ev);
+
+    return true;
+  }
+
+  /** Add an event only if there is space now. For the consumer thread,
+   * which would otherwise wait for space only it can free.
+   *
+   * @param ev the event
+   * @return false if the ring is full
+   */
+  boolean tryPublish(final SysEvent ev) {
+    for (;;) {
+      final long seq = claimed.get();
+
+      if (seq - consumed.get() >= slots.length) {
+        producerWaits.incrementAndGet();
+        return false;
+      }
+
+      if (claimed.compareAndSet(seq, seq + 1)) {
+        store(seq, ev);
+        return true;
+      }
+    }
+  }
+
+  /** Take the event with the given sequence, waiting for it to be
+   * published. The sequences must be consumed in order.
+   *
+   * @param seq sequence number of the event wanted
+   * @param timeoutMillis wait at most this long
+   * @return the event or null on timeout
+   * @throws InterruptedException if interrupted while waiting
+   */
+  SysEvent take(final long seq,
+                final long timeoutMillis) throws InterruptedException {
+    final int idx = (int)seq & mask;
+
+    if (published.get(idx) != seq) {
+      if (!waitFor(idx, seq, timeoutMillis)) {
+        return null;
+      }
+    }
+
+    final SysEvent ev = slots[idx];
+    slots[idx] = null;
+
+    consumed.lazySet(seq + 1);
+
+    return ev;
+  }
+
+  /** Producers waiting for space give up after this.
+   */
+  void stop() {
+    stopped = true;
+  }
+
+  /**
+   * @return the next sequence number to be claimed
+   */
+  long getClaimed() {
+    return claimed.get();
+  }
+
+  /**
+   * @return number of events waiting for the consumer
+   */
+  long getBacklog() {
+    return Math.max(0, claimed.get() - consumed.get());
+  }
+
+  /**
+   * @return the size of the ring
+   */
+  int getSize() {
+    return slots.length;
+  }
+
+  /**
+   * @return the consumer wait strategy
+   */
+  WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  /**
+   * @return number of times a producer found the ring full
+   */
+  long getProducerWaits() {
+    return producerWaits.get();
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private boolean waitFor(final int idx,
+                          final long seq,
+                          final long timeoutMillis)
+          throws InterruptedException {
+    final long deadline = System.nanoTime() +
+            TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+    if (waitStrategy == WaitStrategy.blocking) {
+      lock.lock();
+      try {
+        consumerWaiting = true;
+
+        while (published.get(idx) != seq) {
+          final long nanos = deadline - System.nanoTime();
+
+          if (nanos <= 0) {
+            return false;
+          }
+
+          notEmpty.awaitNanos(nanos);
+        }
+
+        return true;
+      } finally {
+        consumerWaiting = false;
+        lock.unlock();
+      }
+    }
+
+    int tries = 0;
+
+    while (published.get(idx) != seq) {
+      if ((tries & 0xff) == 0) {
+        if (System.nanoTime() - deadline >= 0) {
+          return false;
+        }
+
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+
+      switch (waitStrategy) {
+        case busySpin:
+          break;
+
+        case yielding:
+          if (tries >= spinTries) {
+            Thread.yield();
+          }
+          break;
+
+        default:
+          backoff(tries);
+      }
+
+      tries++;
+    }
+
+    return true;
+  }
+
+  private void store(final long seq,
+                     final SysEvent ev) {
+    final int idx = (int)seq & mask;
+
+    slots[idx] = ev;
+
+    /* Volatile write so the consumerWaiting read below can't be reordered
+     * before it */
+    published.set(idx, seq);
+
+    if (consumerWaiting) {
+      lock.lock();
+      try {
+        notEmpty.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /* Spin, then yield, then park briefly */
+  private static void backoff(final int tries) {
+    if (tries < spinTries) {
+      return;
+    }
+
+    if (tries < spinTries + yieldTries) {
+      Thread.yield();
+      return;
+    }
+
+    LockSupport.parkNanos(100);
+  }
+}
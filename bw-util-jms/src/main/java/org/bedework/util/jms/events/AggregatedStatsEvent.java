@@ -0,0 +1,174 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.jms.events;
+
+import org.bedework.util.jms.NotificationException;
+import org.bedework.util.misc.ToString;
+
+/** A number of stats events with the same name merged into one. The long
+ * value is the sum of the values of the merged events.
+ *
+ * <p>Valueless events only add to the count, so min, max and sum are
+ * null if none of the merged events had a value.
+ *
+ * @author Mike Douglass
+ */
+public class AggregatedStatsEvent extends StatsEvent {
+  private static final long serialVersionUID = 1L;
+
+  private long count;
+  private Long sum;
+  private Long min;
+  private Long max;
+
+  /** An empty aggregate
+   *
+   * @param name of the stats
+   */
+  public AggregatedStatsEvent(final String name) {
+    super(name, (Long)null);
+  }
+
+  /**
+   * @param name of the stats
+   * @param count number of events
+   * @param sum of the values or null
+   * @param min value or null
+   * @param max value or null
+   */
+  public AggregatedStatsEvent(final String name,
+                              final long count,
+                              final Long sum,
+                              final Long min,
+                              final Long max) {
+    super(name, (Long)null);
+
+    this.count = count;
+    this.sum = sum;
+    this.min = min;
+    this.max = max;
+  }
+
+  /** Add an event with the same name
+   *
+   * @param ev to add
+   * @return false if ev has a string value and cannot be added
+   */
+  public boolean add(final StatsEvent ev) {
+    if (ev.getStrValue() != null) {
+      return false;
+    }
+
+    if (ev instanceof AggregatedStatsEvent) {
+      final AggregatedStatsEvent agg = (AggregatedStatsEvent)ev;
+
+      count += agg.count;
+      addValue(agg.sum, agg.min, agg.max);
+      return true;
+    }
+
+    count++;
+
+    final Long val = ev.getLongValue();
+    addValue(val, val, val);
+    return true;
+  }
+
+  @Override
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return sum of values or null
+   */
+  @Override
+  public Long getLongValue() {
+    return sum;
+  }
+
+  /**
+   * @return smallest value or null
+   */
+  public Long getMin() {
+    return min;
+  }
+
+  /**
+   * @return largest value or null
+   */
+  public Long getMax() {
+    return max;
+  }
+
+  /** Merges in place - the coalescer owns the aggregate.
+   *
+   * @param later the event which came after this one
+   * @return this or null
+   */
+  @Override
+  public SysEvent coalesce(final SysEvent later) {
+    if (!(later instanceof StatsEvent) || !add((StatsEvent)later)) {
+      return null;
+    }
+
+    return this;
+  }
+
+  @Override
+  public void encode(final EventOutput out) throws NotificationException {
+    super.encode(out);
+
+    out.writeLong("count", getCount());
+    out.writeLongObject("min", getMin());
+    out.writeLongObject("max", getMax());
+  }
+
+  @Override
+  public void toStringSegment(final ToString ts) {
+    super.toStringSegment(ts);
+
+    ts.append("count", getCount());
+    ts.append("min", getMin());
+    ts.append("max", getMax());
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private void addValue(final Long vsum,
+                        final Long vmin,
+                        final Long vmax) {
+    if (vsum == null) {
+      return;
+    }
+
+    if (sum == null) {
+      sum = vsum;
+      min = vmin;
+      max = vmax;
+      return;
+    }
+
+    sum = sum + vsum;
+    min = Math.min(min, vmin);
+    max = Math.max(max, vmax);
+  }
+}
@@ -0,0 +1,322 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.jms.events;
+
+import org.bedework.util.jms.NotificationException;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+/** A compact binary form in a BytesMessage. The body is
+ * <pre>
+ *   format-version(byte) event
+ *
+ *   event: type-name(string) schema-version(varint)
+ *          syscode(string) dtstamp(string) sequence(varint)
+ *          has-related(byte) [related(event)]
+ *          fields written by SysEvent.encode
+ * </pre>
+ * Integers are zig-zag varints so small values take a byte. Strings are
+ * a varint of the UTF-8 length plus one, 0 meaning null, followed by the
+ * bytes.
+ *
+ * @author Mike Douglass
+ */
+public class BinarySysEventCodec implements SysEventCodec {
+  /** Version of the layout above - not of the event types */
+  public static final int formatVersion = 1;
+
+  private static final Charset utf8 = Charset.forName("UTF-8");
+
+  private static class Output implements EventOutput {
+    private byte[] buf = new byte[128];
+    private int count;
+
+    @Override
+    public void writeString(final String name,
+                            final String val) {
+      string(val);
+    }
+
+    @Override
+    public void writeInt(final String name,
+                         final int val) {
+      varlong(val);
+    }
+
+    @Override
+    public void writeLong(final String name,
+                          final long val) {
+      varlong(val);
+    }
+
+    @Override
+    public void writeLongObject(final String name,
+                                final Long val) {
+      if (val == null) {
+        write(0);
+        return;
+      }
+
+      write(1);
+      varlong(val);
+    }
+
+    void write(final int b) {
+      ensure(1);
+      buf[count++] = (byte)b;
+    }
+
+    void string(final String val) {
+      if (val == null) {
+        unsigned(0);
+        return;
+      }
+
+      final byte[] b = val.getBytes(utf8);
+
+      unsigned(b.length + 1);
+      ensure(b.length);
+      System.arraycopy(b, 0, buf, count, b.length);
+      count += b.length;
+    }
+
+    void varlong(final long val) {
+      // zig-zag so small negative values are small too
+      unsigned((val << 1) ^ (val >> 63));
+    }
+
+    void unsigned(final long val) {
+      long v = val;
+
+      ensure(10);
+      while ((v & ~0x7FL) != 0) {
+        buf[count++] = (byte)((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+
+      buf[count++] = (byte)v;
+    }
+
+    private void ensure(final int n) {
+      if (count + n > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+      }
+    }
+  }
+
+  private static class Input implements EventInput {
+    private final byte[] buf;
+    private int pos;
+    private int version;
+
+    Input(final byte[] buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int getVersion() {
+      return version;
+    }
+
+    @Override
+    public String readString(final String name)
+            throws NotificationException {
+      return string();
+    }
+
+    @Override
+    public int readInt(final String name) throws NotificationException {
+      return (int)varlong();
+    }
+
+    @Override
+    public long readLong(final String name) throws NotificationException {
+      return varlong();
+    }
+
+    @Override
+    public Long readLongObject(final String name)
+            throws NotificationException {
+      if (read() == 0) {
+        return null;
+      }
+
+      return varlong();
+    }
+
+    int read() throws NotificationException {
+      if (pos >= buf.length) {
+        throw new NotificationException("Truncated event message");
+      }
+
+      return buf[pos++] & 0xFF;
+    }
+
+    String string() throws NotificationException {
+      final int len = (int)unsigned();
+
+      if (len == 0) {
+        return null;
+      }
+
+      if (pos + len - 1 > buf.length) {
+        throw new NotificationException("Truncated event message");
+      }
+
+      final String s = new String(buf, pos, len - 1, utf8);
+      pos += len - 1;
+
+      return s;
+    }
+
+    long varlong() throws NotificationException {
+      final long v = unsigned();
+
+      return (v >>> 1) ^ -(v & 1);
+    }
+
+    long unsigned() throws NotificationException {
+      long v = 0;
+
+      for (int shift = 0; shift < 64; shift += 7) {
+        final int b = read();
+
+        v |= (long)(b & 0x7F) << shift;
+
+        if ((b & 0x80) == 0) {
+          return v;
+        }
+      }
+
+      throw new NotificationException("Bad varint in event message");
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "binary";
+  }
+
+  @Override
+  public boolean canEncode(final SysEvent ev) {
+    return SysEventCodecs.isRegistered(ev);
+  }
+
+  @Override
+  public Message encode(final Session sess,
+                        final SysEvent ev)
+          throws JMSException, NotificationException {
+    final Output out = new Output();
+
+    out.write(formatVersion);
+    writeEvent(out, ev);
+
+    final BytesMessage msg = sess.createBytesMessage();
+
+    msg.writeBytes(out.buf, 0, out.count);
+
+    return msg;
+  }
+
+  @Override
+  public SysEvent decode(final Message msg)
+          throws JMSException, NotificationException {
+    final BytesMessage bmsg = (BytesMessage)msg;
+
+    final byte[] b = new byte[(int)bmsg.getBodyLength()];
+    bmsg.readBytes(b);
+
+    final Input in = new Input(b);
+
+    final int format = in.read();
+    if (format != formatVersion) {
+      throw new NotificationException("Unsupported event format: " +
+                                              format);
+    }
+
+    return readEvent(in);
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private void writeEvent(final Output out,
+                          final SysEvent ev) throws NotificationException {
+    final SysEventCodecs.EventType et =
+            SysEventCodecs.getType(ev.getClass());
+
+    if (et == null) {
+      throw new NotificationException("Unregistered event class: " +
+                                              ev.getClass().getName());
+    }
+
+    out.string(et.getName());
+    out.unsigned(et.getVersion());
+    out.string(ev.getSysCode());
+    out.string(ev.getDtstamp());
+    out.varlong(ev.getSequence());
+
+    if (ev.getRelated() == null) {
+      out.write(0);
+    } else {
+      out.write(1);
+      writeEvent(out, ev.getRelated());
+    }
+
+    ev.encode(out);
+  }
+
+  private SysEvent readEvent(final Input in) throws NotificationException {
+    final String typeName = in.string();
+    final int version = (int)in.unsigned();
+
+    final SysEventCodecs.EventType et = SysEventCodecs.getType(typeName);
+
+    if (et == null) {
+      throw new NotificationException("Unknown event type: " + typeName);
+    }
+
+    final String sysCode = in.string();
+    final String dtstamp = in.string();
+    final int sequence = (int)in.varlong();
+
+    SysEvent related = null;
+
+    if (in.read() != 0) {
+      related = readEvent(in);
+    }
+
+    in.version = version;
+
+    final SysEvent ev = et.getDecoder().decode(sysCode, in);
+
+    ev.setDtstamp(dtstamp);
+    ev.setSequence(sequence);
+    ev.setRelated(related);
+
+    return ev;
+  }
+}
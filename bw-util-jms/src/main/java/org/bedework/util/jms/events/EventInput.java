@@ -0,0 +1,61 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.jms.events;
+
+import org.bedework.util.jms.NotificationException;
+
+/** Read by the decoders registered with SysEventCodecs. Fields must be
+ * read in the order they were written.
+ *
+ * @author Mike Douglass
+ */
+public interface EventInput {
+  /**
+   * @return schema version of the type as written by the sender
+   */
+  int getVersion();
+
+  /**
+   * @param name of field
+   * @return value - may be null
+   * @throws NotificationException on error
+   */
+  String readString(String name) throws NotificationException;
+
+  /**
+   * @param name of field
+   * @return value - 0 if absent
+   * @throws NotificationException on error
+   */
+  int readInt(String name) throws NotificationException;
+
+  /**
+   * @param name of field
+   * @return value - 0 if absent
+   * @throws NotificationException on error
+   */
+  long readLong(String name) throws NotificationException;
+
+  /**
+   * @param name of field
+   * @return value - may be null
+   * @throws NotificationException on error
+   */
+  Long readLongObject(String name) throws NotificationException;
+}
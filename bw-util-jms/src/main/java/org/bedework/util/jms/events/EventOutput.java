@@ -0,0 +1,61 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.jms.events;
+
+import org.bedework.util.jms.NotificationException;
+
+/** Written to by SysEvent.encode. Binary codecs rely on the order of the
+ * calls, text codecs on the names, so a class must always write the same
+ * fields in the same order for a given schema version.
+ *
+ * @author Mike Douglass
+ */
+public interface EventOutput {
+  /**
+   * @param name of field
+   * @param val may be null
+   * @throws NotificationException on error
+   */
+  void writeString(String name,
+                   String val) throws NotificationException;
+
+  /**
+   * @param name of field
+   * @param val the value
+   * @throws NotificationException on error
+   */
+  void writeInt(String name,
+                int val) throws NotificationException;
+
+  /**
+   * @param name of field
+   * @param val the value
+   * @throws NotificationException on error
+   */
+  void writeLong(String name,
+                 long val) throws NotificationException;
+
+  /**
+   * @param name of field
+   * @param val may be null
+   * @throws NotificationException on error
+   */
+  void writeLongObject(String name,
+                       Long val) throws NotificationException;
+}
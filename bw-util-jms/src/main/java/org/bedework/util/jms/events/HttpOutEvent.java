@@ -18,6 +18,7 @@
 */
 package org.bedework.util.jms.events;
 
+import org.bedework.util.jms.NotificationException;
 import org.bedework.util.misc.ToString;
 
 /** Outbound http event.
@@ -27,8 +28,19 @@ import org.bedework.util.misc.ToString;
 public class HttpOutEvent extends HttpEvent implements MillisecsEvent {
   private static final long serialVersionUID = 1L;
 
+  /** Code for per route request statistics */
+  public final static String syscodeHttpOut = "HTTP_OUT";
+
   long millis;
 
+  private String route;
+
+  private String method;
+
+  private int status;
+
+  private int count = 1;
+
   /**
    * @param code
    * @param millis - time request took
@@ -40,11 +52,73 @@ public class HttpOutEvent extends HttpEvent implements MillisecsEvent {
     this.millis = millis;
   }
 
+  /** A summary of one or more requests to a route.
+   *
+   * @param code
+   * @param route e.g. https://example.org:443
+   * @param method GET etc
+   * @param status response status or -1 for no response
+   * @param count number of requests
+   * @param millis - total time the requests took
+   */
+  public HttpOutEvent(final String code,
+                      final String route,
+                      final String method,
+                      final int status,
+                      final int count,
+                      final long millis) {
+    this(code, millis);
+
+    this.route = route;
+    this.method = method;
+    this.status = status;
+    this.count = count;
+  }
+
   @Override
   public long getMillis() {
     return millis;
   }
 
+  /**
+   * @return route or null
+   */
+  public String getRoute() {
+    return route;
+  }
+
+  /**
+   * @return method or null
+   */
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * @return status or 0 if not set
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  /**
+   * @return number of requests summarized
+   */
+  public int getCount() {
+    return count;
+  }
+
+  @Override
+  public void encode(final EventOutput out) throws NotificationException {
+    super.encode(out);
+
+    out.writeLong("millis", getMillis());
+    out.writeString("route", getRoute());
+    out.writeString("method", getMethod());
+    out.writeInt("status", getStatus());
+    out.writeInt("count", getCount());
+  }
+
   /** Add our stuff to the ToString object
    *
    * @param ts for result
@@ -54,5 +128,12 @@ public class HttpOutEvent extends HttpEvent implements MillisecsEvent {
     super.toStringSegment(ts);
 
     ts.append("millis", getMillis());
+
+    if (getRoute() != null) {
+      ts.append("route", getRoute());
+      ts.append("method", getMethod());
+      ts.append("status", getStatus());
+      ts.append("count", getCount());
+    }
   }
 }
@@ -0,0 +1,311 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.jms.events;
+
+import org.bedework.util.jms.NotificationException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+/** The same content as the binary form but as json in a TextMessage, e.g.
+ * <pre>
+ *   {"format":1,
+ *    "type":"StatsEvent", "version":1,
+ *    "sysCode":"STATS", "dtstamp":"20150101T000000Z", "sequence":1,
+ *    "fields":{"name":"CRETIME","strValue":null,"longValue":12}}
+ * </pre>
+ * with an optional "related" object holding another event. This is
+ * intended for debugging - it's larger and slower than binary.
+ *
+ * @author Mike Douglass
+ */
+public class JsonSysEventCodec implements SysEventCodec {
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private static class Output implements EventOutput {
+    private final JsonGenerator gen;
+
+    Output(final JsonGenerator gen) {
+      this.gen = gen;
+    }
+
+    @Override
+    public void writeString(final String name,
+                            final String val)
+            throws NotificationException {
+      try {
+        gen.writeStringField(name, val);
+      } catch (final IOException ie) {
+        throw new NotificationException(ie);
+      }
+    }
+
+    @Override
+    public void writeInt(final String name,
+                         final int val) throws NotificationException {
+      try {
+        gen.writeNumberField(name, val);
+      } catch (final IOException ie) {
+        throw new NotificationException(ie);
+      }
+    }
+
+    @Override
+    public void writeLong(final String name,
+                          final long val) throws NotificationException {
+      try {
+        gen.writeNumberField(name, val);
+      } catch (final IOException ie) {
+        throw new NotificationException(ie);
+      }
+    }
+
+    @Override
+    public void writeLongObject(final String name,
+                                final Long val)
+            throws NotificationException {
+      try {
+        if (val == null) {
+          gen.writeNullField(name);
+        } else {
+          gen.writeNumberField(name, val);
+        }
+      } catch (final IOException ie) {
+        throw new NotificationException(ie);
+      }
+    }
+  }
+
+  private static class Input implements EventInput {
+    private final int version;
+    private final Map<String, Object> fields;
+
+    Input(final int version,
+          final Map<String, Object> fields) {
+      this.version = version;
+      this.fields = fields;
+    }
+
+    @Override
+    public int getVersion() {
+      return version;
+    }
+
+    @Override
+    public String readString(final String name) {
+      final Object o = fields.get(name);
+
+      if (o == null) {
+        return null;
+      }
+
+      return String.valueOf(o);
+    }
+
+    @Override
+    public int readInt(final String name) throws NotificationException {
+      return (int)readLong(name);
+    }
+
+    @Override
+    public long readLong(final String name) throws NotificationException {
+      final Long l = readLongObject(name);
+
+      if (l == null) {
+        return 0;
+      }
+
+      return l;
+    }
+
+    @Override
+    public Long readLongObject(final String name)
+            throws NotificationException {
+      final Object o = fields.get(name);
+
+      if ((o == null) || (o instanceof Long)) {
+        return (Long)o;
+      }
+
+      try {
+        return Long.valueOf(String.valueOf(o));
+      } catch (final NumberFormatException nfe) {
+        throw new NotificationException(nfe);
+      }
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "json";
+  }
+
+  @Override
+  public boolean canEncode(final SysEvent ev) {
+    return SysEventCodecs.isRegistered(ev);
+  }
+
+  @Override
+  public Message encode(final Session sess,
+                        final SysEvent ev)
+          throws JMSException, NotificationException {
+    final StringWriter sw = new StringWriter();
+
+    try {
+      final JsonGenerator gen = jsonFactory.createGenerator(sw);
+
+      gen.writeStartObject();
+      gen.writeNumberField("format", BinarySysEventCodec.formatVersion);
+      writeEvent(gen, ev);
+      gen.writeEndObject();
+      gen.close();
+    } catch (final IOException ie) {
+      throw new NotificationException(ie);
+    }
+
+    final TextMessage msg = sess.createTextMessage();
+
+    msg.setText(sw.toString());
+
+    return msg;
+  }
+
+  @Override
+  public SysEvent decode(final Message msg)
+          throws JMSException, NotificationException {
+    try {
+      final JsonParser parser =
+              jsonFactory.createParser(((TextMessage)msg).getText());
+
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new NotificationException("Expected json object");
+      }
+
+      return readEvent(readObject(parser));
+    } catch (final IOException ie) {
+      throw new NotificationException(ie);
+    }
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  /* Write the fields of the event into the current object */
+  private void writeEvent(final JsonGenerator gen,
+                          final SysEvent ev)
+          throws IOException, NotificationException {
+    final SysEventCodecs.EventType et =
+            SysEventCodecs.getType(ev.getClass());
+
+    if (et == null) {
+      throw new NotificationException("Unregistered event class: " +
+                                              ev.getClass().getName());
+    }
+
+    gen.writeStringField("type", et.getName());
+    gen.writeNumberField("version", et.getVersion());
+    gen.writeStringField("sysCode", ev.getSysCode());
+    gen.writeStringField("dtstamp", ev.getDtstamp());
+    gen.writeNumberField("sequence", ev.getSequence());
+
+    if (ev.getRelated() != null) {
+      gen.writeObjectFieldStart("related");
+      writeEvent(gen, ev.getRelated());
+      gen.writeEndObject();
+    }
+
+    gen.writeObjectFieldStart("fields");
+    ev.encode(new Output(gen));
+    gen.writeEndObject();
+  }
+
+  @SuppressWarnings("unchecked")
+  private SysEvent readEvent(final Map<String, Object> obj)
+          throws NotificationException {
+    final String typeName = (String)obj.get("type");
+
+    final SysEventCodecs.EventType et = SysEventCodecs.getType(typeName);
+
+    if (et == null) {
+      throw new NotificationException("Unknown event type: " + typeName);
+    }
+
+    final Input base = new Input(0, obj);
+
+    Map<String, Object> fields = (Map<String, Object>)obj.get("fields");
+    if (fields == null) {
+      fields = new HashMap<>();
+    }
+
+    final SysEvent ev = et.getDecoder().decode(
+            base.readString("sysCode"),
+            new Input(base.readInt("version"), fields));
+
+    ev.setDtstamp(base.readString("dtstamp"));
+    ev.setSequence(base.readInt("sequence"));
+
+    final Object related = obj.get("related");
+    if (related != null) {
+      ev.setRelated(readEvent((Map<String, Object>)related));
+    }
+
+    return ev;
+  }
+
+  /* Parser is positioned at the start of an object. Values are Strings,
+   * Longs, nulls or nested maps.
+   */
+  private Map<String, Object> readObject(final JsonParser parser)
+          throws IOException, NotificationException {
+    final Map<String, Object> res = new HashMap<>();
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String name = parser.getCurrentName();
+      final JsonToken t = parser.nextToken();
+
+      if (t == JsonToken.START_OBJECT) {
+        res.put(name, readObject(parser));
+      } else if (t == JsonToken.VALUE_NUMBER_INT) {
+        res.put(name, parser.getLongValue());
+      } else if (t == JsonToken.VALUE_NULL) {
+        res.put(name, null);
+      } else if (t.isScalarValue()) {
+        res.put(name, parser.getText());
+      } else {
+        throw new NotificationException("Unexpected json token " + t +
+                                                " for " + name);
+      }
+    }
+
+    return res;
+  }
+}
@@ -18,6 +18,7 @@
 */
 package org.bedework.util.jms.events;
 
+import org.bedework.util.jms.NotificationException;
 import org.bedework.util.misc.ToString;
 
 /** System event with a name
@@ -48,6 +49,13 @@ public class NamedEvent extends SysEvent {
     return name;
   }
 
+  @Override
+  public void encode(final EventOutput out) throws NotificationException {
+    super.encode(out);
+
+    out.writeString("name", getName());
+  }
+
   /** Add our stuff to the ToString object
    *
    * @param ts for result
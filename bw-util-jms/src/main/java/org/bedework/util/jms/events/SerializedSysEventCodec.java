@@ -0,0 +1,55 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.jms.events;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+/** Java serialization in an ObjectMessage - the original form.
+ *
+ * @author Mike Douglass
+ */
+public class SerializedSysEventCodec implements SysEventCodec {
+  @Override
+  public String getName() {
+    return "serialized";
+  }
+
+  @Override
+  public boolean canEncode(final SysEvent ev) {
+    return true;
+  }
+
+  @Override
+  public Message encode(final Session sess,
+                        final SysEvent ev) throws JMSException {
+    final ObjectMessage msg = sess.createObjectMessage();
+
+    msg.setObject(ev);
+
+    return msg;
+  }
+
+  @Override
+  public SysEvent decode(final Message msg) throws JMSException {
+    return (SysEvent)((ObjectMessage)msg).getObject();
+  }
+}
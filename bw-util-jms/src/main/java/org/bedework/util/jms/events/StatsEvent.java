@@ -18,6 +18,7 @@
 */
 package org.bedework.util.jms.events;
 
+import org.bedework.util.jms.NotificationException;
 import org.bedework.util.misc.ToString;
 
 import java.util.HashMap;
@@ -109,6 +110,14 @@ public class StatsEvent extends NamedEvent {
     return strValue;
   }
 
+  /**
+   * @return number of occurrences this event represents - 1 unless
+   *         events were aggregated (see AggregatedStatsEvent)
+   */
+  public long getCount() {
+    return 1;
+  }
+
   /**
    * @param name
    * @return type or null
@@ -117,6 +126,43 @@ public class StatsEvent extends NamedEvent {
     return statTypes.get(name);
   }
 
+  /** Stats with a string value are not merged. The others are
+   * aggregated by name.
+   *
+   * @return the name or null for string values
+   */
+  @Override
+  public String getCoalesceKey() {
+    if (getStrValue() != null) {
+      return null;
+    }
+
+    return getName();
+  }
+
+  @Override
+  public SysEvent coalesce(final SysEvent later) {
+    if (!(later instanceof StatsEvent)) {
+      return null;
+    }
+
+    final AggregatedStatsEvent agg = new AggregatedStatsEvent(getName());
+
+    if (agg.add(this) && agg.add((StatsEvent)later)) {
+      return agg;
+    }
+
+    return null;
+  }
+
+  @Override
+  public void encode(final EventOutput out) throws NotificationException {
+    super.encode(out);
+
+    out.writeString("strValue", getStrValue());
+    out.writeLongObject("longValue", getLongValue());
+  }
+
   @Override
   public void toStringSegment(final ToString ts) {
     super.toStringSegment(ts);
@@ -48,7 +48,8 @@ import java.util.List;
  *
  * @author Mike Douglass
  */
-public class SysEvent implements Serializable, Comparable<SysEvent> {
+public class SysEvent
+        implements Serializable, Comparable<SysEvent>, ToString.Segment {
   /* Predefined system codes */
 
   public final static String syscodeStats = "STATS";
@@ -241,10 +242,42 @@ public class SysEvent implements Serializable, Comparable<SysEvent> {
     return sysCode.hashCode();
   }
 
+  /** Events with the same system code and a non-null key may be merged
+   * when bursts of events are coalesced - see SysEventCoalescer.
+   *
+   * @return key for coalescing - null (the default) to never merge
+   */
+  public String getCoalesceKey() {
+    return null;
+  }
+
+  /** Merge a later event with the same system code and coalesce key
+   * into this one. The default keeps the later event, i.e. duplicates
+   * are dropped.
+   *
+   * @param later the event which came after this one
+   * @return merged event or null if these can't be merged
+   */
+  public SysEvent coalesce(final SysEvent later) {
+    return later;
+  }
+
+  /** Write the fields of this class for the codecs - see SysEventCodecs.
+   * The system code, dtstamp, sequence and related event are written by
+   * the codec. Subclasses with fields call super.encode then write their
+   * own fields.
+   *
+   * @param out to write fields to
+   * @throws NotificationException on error
+   */
+  public void encode(final EventOutput out) throws NotificationException {
+  }
+
   /** Add our stuff to the ToString object
   *
   * @param ts    ToString for result
   */
+ @Override
  public void toStringSegment(final ToString ts) {
    ts.append("sysCode", String.valueOf(getSysCode()));
    ts.append("dtstamp", getDtstamp());
@@ -0,0 +1,63 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.jms.events;
+
+import org.bedework.util.jms.NotificationException;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+/** Converts system events to and from JMS messages. Implementations must
+ * be thread-safe. The message attributes and codec name are added by
+ * SysEventCodecs.encode.
+ *
+ * @author Mike Douglass
+ */
+public interface SysEventCodec {
+  /**
+   * @return name used in configuration and in the message
+   */
+  String getName();
+
+  /**
+   * @param ev the event
+   * @return true if this codec can represent the event and any related
+   *         events
+   */
+  boolean canEncode(SysEvent ev);
+
+  /**
+   * @param sess to create the message with
+   * @param ev the event
+   * @return message with the event as its body
+   * @throws JMSException on jms errors
+   * @throws NotificationException on other errors
+   */
+  Message encode(Session sess,
+                 SysEvent ev) throws JMSException, NotificationException;
+
+  /**
+   * @param msg as created by encode
+   * @return the event
+   * @throws JMSException on jms errors
+   * @throws NotificationException on other errors
+   */
+  SysEvent decode(Message msg) throws JMSException, NotificationException;
+}
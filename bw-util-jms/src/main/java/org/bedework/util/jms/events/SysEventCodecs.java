@@ -0,0 +1,378 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.jms.events;
+
+import org.bedework.util.jms.NotificationException;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+/** The registry of event types and codecs.
+ *
+ * <p>Events are written by the codec named in the property
+ * org.bedework.jms.codec:<ul>
+ *   <li>serialized - the default. Java serialization in an ObjectMessage
+ *   as before.</li>
+ *   <li>binary - a compact versioned encoding in a BytesMessage</li>
+ *   <li>json - the same fields as readable json in a TextMessage. Useful
+ *   for debugging</li>
+ * </ul>
+ *
+ * <p>binary and json can only encode registered event classes. Anything
+ * else is sent serialized so applications with their own SysEvent
+ * subclasses continue to work until they register them. Every form is
+ * accepted by decode whatever the configuration. Consumers which predate
+ * the codecs can only read serialized events, so only switch producers to
+ * binary once every consumer of the queue has been upgraded.
+ *
+ * <p>A type is registered with a name, the exact class, a schema version
+ * and a decoder. The class writes its fields in SysEvent.encode. The
+ * decoder reads them back in the same order and constructs the event. If
+ * a class gains fields, bump the version and have the decoder check
+ * EventInput.getVersion() before reading them.
+ *
+ * @author Mike Douglass
+ */
+public class SysEventCodecs {
+  /** Property: codec used to send events */
+  public static final String pnameCodec = "org.bedework.jms.codec";
+
+  /** Message property naming the codec */
+  public static final String codecProperty = "bwcodec";
+
+  /** Builds an event from its fields.
+   */
+  public interface Decoder {
+    /**
+     * @param sysCode of the event
+     * @param in to read the fields written by SysEvent.encode
+     * @return the event
+     * @throws NotificationException on error
+     */
+    SysEvent decode(String sysCode,
+                    EventInput in) throws NotificationException;
+  }
+
+  /** A registered event type
+   */
+  public static class EventType {
+    private final String name;
+    private final Class<? extends SysEvent> cl;
+    private final int version;
+    private final Decoder decoder;
+
+    EventType(final String name,
+              final Class<? extends SysEvent> cl,
+              final int version,
+              final Decoder decoder) {
+      this.name = name;
+      this.cl = cl;
+      this.version = version;
+      this.decoder = decoder;
+    }
+
+    /**
+     * @return name written in the message
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the event class
+     */
+    public Class<? extends SysEvent> getEventClass() {
+      return cl;
+    }
+
+    /**
+     * @return current schema version
+     */
+    public int getVersion() {
+      return version;
+    }
+
+    /**
+     * @return the decoder
+     */
+    public Decoder getDecoder() {
+      return decoder;
+    }
+  }
+
+  private static final Map<String, EventType> byName =
+          new ConcurrentHashMap<>();
+
+  private static final Map<Class<?>, EventType> byClass =
+          new ConcurrentHashMap<>();
+
+  private static final SysEventCodec binary = new BinarySysEventCodec();
+
+  private static final SysEventCodec json = new JsonSysEventCodec();
+
+  private static final SysEventCodec serialized =
+          new SerializedSysEventCodec();
+
+  static {
+    register("SysEvent", SysEvent.class, 1, new Decoder() {
+      @Override
+      public SysEvent decode(final String sysCode,
+                             final EventInput in) {
+        return new SysEvent(sysCode);
+      }
+    });
+
+    register("NamedEvent", NamedEvent.class, 1, new Decoder() {
+      @Override
+      public SysEvent decode(final String sysCode,
+                             final EventInput in)
+              throws NotificationException {
+        return new NamedEvent(sysCode, in.readString("name"));
+      }
+    });
+
+    register("StatsEvent", StatsEvent.class, 1, new Decoder() {
+      @Override
+      public SysEvent decode(final String sysCode,
+                             final EventInput in)
+              throws NotificationException {
+        final String name = in.readString("name");
+        final String strValue = in.readString("strValue");
+        final Long longValue = in.readLongObject("longValue");
+
+        if (strValue != null) {
+          return new StatsEvent(name, strValue);
+        }
+
+        return new StatsEvent(name, longValue);
+      }
+    });
+
+    register("AggregatedStatsEvent", AggregatedStatsEvent.class, 1,
+             new Decoder() {
+      @Override
+      public SysEvent decode(final String sysCode,
+                             final EventInput in)
+              throws NotificationException {
+        final String name = in.readString("name");
+        in.readString("strValue");
+        final Long sum = in.readLongObject("longValue");
+        final long count = in.readLong("count");
+
+        return new AggregatedStatsEvent(name, count, sum,
+                                        in.readLongObject("min"),
+                                        in.readLongObject("max"));
+      }
+    });
+
+    register("TimedEvent", TimedEvent.class, 1, new Decoder() {
+      @Override
+      public SysEvent decode(final String sysCode,
+                             final EventInput in)
+              throws NotificationException {
+        final String label = in.readString("label");
+
+        return new TimedEvent(sysCode, label, in.readLong("millis"));
+      }
+    });
+
+    register("HttpEvent", HttpEvent.class, 1, new Decoder() {
+      @Override
+      public SysEvent decode(final String sysCode,
+                             final EventInput in) {
+        return new HttpEvent(sysCode);
+      }
+    });
+
+    register("HttpOutEvent", HttpOutEvent.class, 1, new Decoder() {
+      @Override
+      public SysEvent decode(final String sysCode,
+                             final EventInput in)
+              throws NotificationException {
+        final long millis = in.readLong("millis");
+        final String route = in.readString("route");
+        final String method = in.readString("method");
+        final int status = in.readInt("status");
+        final int count = in.readInt("count");
+
+        if (route == null) {
+          return new HttpOutEvent(sysCode, millis);
+        }
+
+        return new HttpOutEvent(sysCode, route, method, status, count,
+                                millis);
+      }
+    });
+  }
+
+  /** Register an event type so that it can be sent in binary or json.
+   *
+   * @param name written in messages - must not change
+   * @param cl the exact event class
+   * @param version current schema version
+   * @param decoder builds the event
+   */
+  public static void register(final String name,
+                              final Class<? extends SysEvent> cl,
+                              final int version,
+                              final Decoder decoder) {
+    final EventType et = new EventType(name, cl, version, decoder);
+
+    byName.put(name, et);
+    byClass.put(cl, et);
+  }
+
+  /**
+   * @param name of type
+   * @return type or null
+   */
+  public static EventType getType(final String name) {
+    return byName.get(name);
+  }
+
+  /**
+   * @param cl of event
+   * @return type or null if that exact class is not registered
+   */
+  public static EventType getType(final Class<?> cl) {
+    return byClass.get(cl);
+  }
+
+  /**
+   * @param ev an event
+   * @return true if the event and any related events are of registered
+   *         types
+   */
+  public static boolean isRegistered(final SysEvent ev) {
+    SysEvent e = ev;
+
+    while (e != null) {
+      if (getType(e.getClass()) == null) {
+        return false;
+      }
+
+      e = e.getRelated();
+    }
+
+    return true;
+  }
+
+  /**
+   * @param name binary, json or serialized
+   * @return the codec
+   * @throws NotificationException for an unknown name
+   */
+  public static SysEventCodec getCodec(final String name)
+          throws NotificationException {
+    if (binary.getName().equals(name)) {
+      return binary;
+    }
+
+    if (json.getName().equals(name)) {
+      return json;
+    }
+
+    if (serialized.getName().equals(name)) {
+      return serialized;
+    }
+
+    throw new NotificationException("Unknown codec: " + name);
+  }
+
+  /**
+   * @param pr jms properties
+   * @return codec named by pnameCodec - default serialized
+   * @throws NotificationException for an unknown name
+   */
+  public static SysEventCodec getCodec(final Properties pr)
+          throws NotificationException {
+    return getCodec(pr.getProperty(pnameCodec, serialized.getName()));
+  }
+
+  /** Create a message for the event including the message attributes.
+   * Falls back to serialization if the codec can't handle the event.
+   *
+   * @param codec preferred codec
+   * @param sess to create the message with
+   * @param ev the event
+   * @return message ready to send
+   * @throws JMSException on jms errors
+   * @throws NotificationException on other errors
+   */
+  public static Message encode(final SysEventCodec codec,
+                               final Session sess,
+                               final SysEvent ev)
+          throws JMSException, NotificationException {
+    SysEventCodec c = codec;
+
+    if (!c.canEncode(ev)) {
+      c = serialized;
+    }
+
+    final Message msg = c.encode(sess, ev);
+
+    msg.setStringProperty(codecProperty, c.getName());
+
+    for (final SysEvent.Attribute attr: ev.getMessageAttributes()) {
+      msg.setStringProperty(attr.name, attr.value);
+    }
+
+    return msg;
+  }
+
+  /** Decode a message in any of the forms we send.
+   *
+   * @param msg the message
+   * @return event or null if the message isn't one of ours
+   * @throws JMSException on jms errors - for a serialized message the
+   *         cause may be InvalidClassException
+   * @throws NotificationException on other errors
+   */
+  public static SysEvent decode(final Message msg)
+          throws JMSException, NotificationException {
+    if (msg instanceof ObjectMessage) {
+      // Serialized - possibly from an older sender with no codec property
+      return serialized.decode(msg);
+    }
+
+    final String name = msg.getStringProperty(codecProperty);
+
+    if (name != null) {
+      return getCodec(name).decode(msg);
+    }
+
+    if (msg instanceof BytesMessage) {
+      return binary.decode(msg);
+    }
+
+    if (msg instanceof TextMessage) {
+      return json.decode(msg);
+    }
+
+    return null;
+  }
+}
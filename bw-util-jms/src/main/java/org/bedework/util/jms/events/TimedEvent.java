@@ -18,6 +18,7 @@
 */
 package org.bedework.util.jms.events;
 
+import org.bedework.util.jms.NotificationException;
 import org.bedework.util.misc.ToString;
 
 /** An event for some timed activity. The label identifies the event
@@ -59,6 +60,14 @@ public class TimedEvent extends SysEvent implements MillisecsEvent {
     return millis;
   }
 
+  @Override
+  public void encode(final EventOutput out) throws NotificationException {
+    super.encode(out);
+
+    out.writeString("label", getLabel());
+    out.writeLong("millis", getMillis());
+  }
+
   @Override
   public void toStringSegment(final ToString ts) {
     super.toStringSegment(ts);
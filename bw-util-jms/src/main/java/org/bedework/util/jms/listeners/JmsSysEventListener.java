@@ -20,21 +20,42 @@ package org.bedework.util.jms.listeners;
 
 import org.bedework.util.jms.JmsConnectionHandler;
 import org.bedework.util.jms.NotificationException;
+import org.bedework.util.jms.events.NamedEvent;
 import org.bedework.util.jms.events.SysEvent;
+import org.bedework.util.jms.events.SysEventCodecs;
+import org.bedework.util.misc.Util;
 
 import org.apache.log4j.Logger;
 
 import java.io.InvalidClassException;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
-import javax.jms.ObjectMessage;
+import javax.jms.Session;
 
 /** Listener class which receives messages from JMS.
+ *
+ * <p>By default each event is processed by the receiving thread before
+ * the next is received. Setting org.bedework.jms.consumer.workers to a
+ * positive value processes events on that many worker threads instead.
+ * Events with the same key - see getKey - always go to the same worker
+ * so their order is preserved. At most
+ * org.bedework.jms.consumer.max.inflight events are received but not yet
+ * processed.
+ *
+ * <p>In that mode the session uses client acknowledgement. An ack covers
+ * everything the session has received, so one is only sent once every
+ * received event has been processed. It becomes due after
+ * org.bedework.jms.consumer.ack.batch messages or
+ * org.bedework.jms.consumer.ack.millis and is sent as soon as the workers
+ * catch up - receiving carries on meanwhile. Only if ten batches are
+ * waiting does the receiver stop and wait for the workers. A crash may
+ * therefore redeliver up to that many events.
  *
  * @author Mike Douglass
  */
@@ -42,11 +63,56 @@ public abstract class JmsSysEventListener
     implements MessageListener, ExceptionListener {
   private transient Logger log;
 
+  /** Property: number of worker threads - default 0, process on the
+   * receiving thread */
+  public static final String pnameWorkers =
+          "org.bedework.jms.consumer.workers";
+
+  /** Property: maximum events received but not processed - default 10
+   * per worker */
+  public static final String pnameMaxInFlight =
+          "org.bedework.jms.consumer.max.inflight";
+
+  /** Property: acknowledge after this many messages - default 100 */
+  public static final String pnameAckBatch =
+          "org.bedework.jms.consumer.ack.batch";
+
+  /** Property: acknowledge at least this often - default 1000 */
+  public static final String pnameAckMillis =
+          "org.bedework.jms.consumer.ack.millis";
+
+  /** Property: message attribute used as the ordering key. If not set
+   * NamedEvent names are used, otherwise the system code. */
+  public static final String pnameKeyAttribute =
+          "org.bedework.jms.consumer.key.attribute";
+
   private JmsConnectionHandler conn;
 
   private MessageConsumer consumer;
 
-  private boolean running = true;
+  private volatile boolean running = true;
+
+  /* Parallel processing */
+
+  private ParallelDispatcher dispatcher;
+
+  private int ackBatch;
+
+  private long ackMillis;
+
+  private String keyAttribute;
+
+  /* Stop receiving once this many batches are unacknowledged */
+  private static final int maxUnackedBatches = 10;
+
+  /* How often to check for the workers catching up with a due ack */
+  private static final long ackPollMillis = 10;
+
+  private final AtomicLong acks = new AtomicLong();
+
+  private final AtomicLong ackWaits = new AtomicLong();
+
+  private final AtomicLong received = new AtomicLong();
 
   /**
    * @param queueName queue to listen on
@@ -57,7 +123,21 @@ public abstract class JmsSysEventListener
                    final Properties pr) throws NotificationException {
     conn = new JmsConnectionHandler(pr);
 
-    conn.open(queueName);
+    final int workers = Util.intProperty(pr, pnameWorkers, 0);
+
+    if (workers <= 0) {
+      conn.open(queueName);
+    } else {
+      conn.open(queueName, false, Session.CLIENT_ACKNOWLEDGE);
+
+      ackBatch = Util.intProperty(pr, pnameAckBatch, 100);
+      ackMillis = Util.intProperty(pr, pnameAckMillis, 1000);
+      keyAttribute = pr.getProperty(pnameKeyAttribute);
+
+      dispatcher = new ParallelDispatcher(
+              this, workers,
+              Util.intProperty(pr, pnameMaxInFlight, workers * 10));
+    }
 
     consumer = conn.getConsumer();
   }
@@ -66,6 +146,8 @@ public abstract class JmsSysEventListener
    *
    */
   public void close() {
+    running = false;
+
     if (consumer != null) {
       try {
         consumer.close();
@@ -74,16 +156,46 @@ public abstract class JmsSysEventListener
       }
     }
 
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+
     conn.close();
   }
 
   /** For asynch we do the onMessage listener style. Otherwise we wait
    * synchronously for incoming messages.
    *
+   * <p>With worker threads configured messages are always received by a
+   * loop. For asynch the loop runs in a new thread and this returns
+   * immediately.
+   *
    * @param asynch true if we just want to set the listener
    * @throws NotificationException
    */
   public void process(final boolean asynch) throws NotificationException {
+    if (dispatcher != null) {
+      if (!asynch) {
+        processParallel();
+        return;
+      }
+
+      final Thread t = new Thread("bw-jms-receiver") {
+        @Override
+        public void run() {
+          try {
+            processParallel();
+          } catch (final Throwable t) {
+            error(t);
+          }
+        }
+      };
+
+      t.setDaemon(true);
+      t.start();
+      return;
+    }
+
     if (asynch) {
       try {
         consumer.setMessageListener(this);
@@ -107,9 +219,9 @@ public abstract class JmsSysEventListener
   @Override
   public void onMessage(final Message message) {
     try {
-      if (message instanceof ObjectMessage) {
-        SysEvent ev = (SysEvent)((ObjectMessage)message).getObject();
+      final SysEvent ev = SysEventCodecs.decode(message);
 
+      if (ev != null) {
         action(ev);
       }
     } catch (NotificationException ne) {
@@ -129,12 +241,53 @@ public abstract class JmsSysEventListener
   }
 
   /** Called whenever a matching event occurs.
+   *
+   * <p>With worker threads configured this is called concurrently for
+   * events with different keys.
    *
    * @param ev
    * @throws NotificationException
    */
   public abstract void action(SysEvent ev) throws NotificationException;
 
+  /** Events with the same key are processed in order. Override to change
+   * the ordering.
+   *
+   * @param ev the event
+   * @param msg the message it came in
+   * @return key - null for all events in one sequence
+   * @throws JMSException
+   */
+  public String getKey(final SysEvent ev,
+                       final Message msg) throws JMSException {
+    if (keyAttribute != null) {
+      return msg.getStringProperty(keyAttribute);
+    }
+
+    if (ev instanceof NamedEvent) {
+      return ((NamedEvent)ev).getName();
+    }
+
+    return ev.getSysCode();
+  }
+
+  /**
+   * @return statistics for display - one per line
+   */
+  public String getStats() {
+    final StringBuilder sb = new StringBuilder();
+
+    Util.statline(sb, "received", received.get());
+
+    if (dispatcher != null) {
+      Util.statline(sb, "acks", acks.get());
+      Util.statline(sb, "ackWaits", ackWaits.get());
+      dispatcher.getStats(sb);
+    }
+
+    return sb.toString();
+  }
+
   /* ====================================================================
    *                   Protected methods
    * ==================================================================== */
@@ -168,4 +321,112 @@ public abstract class JmsSysEventListener
 
     return log;
   }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  /* Receive and hand events to the dispatcher. Acknowledging a message
+   * acknowledges everything received by the session so an ack is only
+   * sent once the workers have completed everything up to the last event
+   * dispatched. Until then we keep receiving and check again.
+   */
+  private void processParallel() throws NotificationException {
+    Message last = null;
+    long lastSeq = 0;
+    int unacked = 0;
+    long lastAck = System.currentTimeMillis();
+
+    try {
+      while (running) {
+        final boolean due = (unacked > 0) &&
+                ((unacked >= ackBatch) ||
+                         (System.currentTimeMillis() - lastAck >= ackMillis));
+
+        if (due) {
+          if ((dispatcher.getCompleted() < lastSeq) &&
+                  (unacked >= ackBatch * maxUnackedBatches)) {
+            // Too far behind - stop receiving until the workers catch up
+            ackWaits.incrementAndGet();
+
+            while (running &&
+                    !dispatcher.awaitCompleted(lastSeq, ackMillis)) {
+              // Keep waiting unless we are closed
+            }
+          }
+
+          if (dispatcher.getCompleted() >= lastSeq) {
+            acknowledge(last);
+            unacked = 0;
+            lastAck = System.currentTimeMillis();
+            continue;
+          }
+        }
+
+        final Message m;
+
+        if (due) {
+          m = conn.receive(ackPollMillis);
+        } else {
+          m = conn.receive(ackMillis);
+        }
+
+        if (m != null) {
+          received.incrementAndGet();
+          last = m;
+          unacked++;
+
+          final long seq = dispatch(m);
+
+          if (seq > 0) {
+            lastSeq = seq;
+          }
+        }
+      }
+
+      if ((unacked > 0) && dispatcher.awaitCompleted(lastSeq, ackMillis)) {
+        acknowledge(last);
+      }
+      // Otherwise leave it unacknowledged - it will be redelivered
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new NotificationException(ie);
+    } catch (final NotificationException ne) {
+      if (running) {
+        throw ne;
+      }
+
+      // Closed while receiving
+    }
+  }
+
+  /* Returns the number given to the event or 0 if it was not dispatched */
+  private long dispatch(final Message m) throws InterruptedException {
+    try {
+      final SysEvent ev = SysEventCodecs.decode(m);
+
+      if (ev != null) {
+        return dispatcher.dispatch(getKey(ev, m), ev, m.getJMSTimestamp());
+      }
+    } catch (final NotificationException ne) {
+      error(ne);
+    } catch (final JMSException je) {
+      if (je.getCause() instanceof InvalidClassException) {
+        /* Probably an old message - just ignore it. */
+        warn("Ignoring message of unknown class");
+      }
+      error(je);
+    }
+
+    return 0;
+  }
+
+  private void acknowledge(final Message m) throws NotificationException {
+    try {
+      m.acknowledge();
+      acks.incrementAndGet();
+    } catch (final JMSException je) {
+      throw new NotificationException(je);
+    }
+  }
 }
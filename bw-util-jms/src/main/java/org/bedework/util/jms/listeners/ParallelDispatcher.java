@@ -0,0 +1,330 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.jms.listeners;
+
+import org.bedework.util.jms.events.SysEvent;
+import org.bedework.util.misc.Util;
+
+import org.apache.log4j.Logger;
+
+import java.util.BitSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Runs the listener actions on a set of worker threads. Each key always
+ * goes to the same worker so events with the same key are processed in
+ * the order they were received. The number of events dispatched but not
+ * yet processed is bounded - dispatch blocks when the limit is reached.
+ *
+ * <p>Events are numbered as they are dispatched and the highest number
+ * below which everything has been processed is tracked, so the receiver
+ * can tell when it is safe to acknowledge without waiting for the
+ * workers to drain.
+ *
+ * @author Mike Douglass
+ */
+class ParallelDispatcher {
+  private transient Logger log;
+
+  private final JmsSysEventListener listener;
+
+  private final Lane[] lanes;
+
+  private final Semaphore permits;
+
+  private final int maxInFlight;
+
+  private final Object completedLock = new Object();
+
+  /* Last number handed out - only touched by the dispatching thread */
+  private long lastSeq;
+
+  /* Everything up to and including this has been processed */
+  private long completedSeq;
+
+  /* Events processed out of order - bit i is number base + i */
+  private BitSet outOfOrder = new BitSet();
+
+  private long base = 1;
+
+  /* Shift the bits down once the watermark is this far past base */
+  private static final int compactAt = 1024;
+
+  private final AtomicLong dispatched = new AtomicLong();
+  private final AtomicLong processed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  /* From message timestamp to receipt */
+  private final AtomicLong lagMillis = new AtomicLong();
+  private final AtomicLong maxLagMillis = new AtomicLong();
+  private final AtomicLong timestamped = new AtomicLong();
+
+  /* Waiting in a lane queue */
+  private final AtomicLong queuedNanos = new AtomicLong();
+
+  /* Running the action */
+  private final AtomicLong actionNanos = new AtomicLong();
+  private final AtomicLong maxActionNanos = new AtomicLong();
+
+  private static final AtomicInteger dispatcherNum = new AtomicInteger();
+
+  private static class Work {
+    final SysEvent ev;
+    final long seq;
+    final long queued = System.nanoTime();
+
+    Work(final SysEvent ev,
+         final long seq) {
+      this.ev = ev;
+      this.seq = seq;
+    }
+  }
+
+  /* Marks the end of a lane's work */
+  private static final Work stop = new Work(null, 0);
+
+  private class Lane extends Thread {
+    private final LinkedBlockingQueue<Work> queue =
+            new LinkedBlockingQueue<>();
+
+    Lane(final String name) {
+      super(name);
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        final Work w;
+
+        try {
+          w = queue.take();
+        } catch (final InterruptedException ie) {
+          continue;
+        }
+
+        if (w == stop) {
+          return;
+        }
+
+        final long start = System.nanoTime();
+        queuedNanos.addAndGet(start - w.queued);
+
+        try {
+          listener.action(w.ev);
+        } catch (final Throwable t) {
+          failed.incrementAndGet();
+          getLogger().error("Action failed for " + w.ev, t);
+        } finally {
+          final long nanos = System.nanoTime() - start;
+
+          actionNanos.addAndGet(nanos);
+          max(maxActionNanos, nanos);
+          processed.incrementAndGet();
+
+          done(w.seq);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param listener whose action is called
+   * @param workers number of threads
+   * @param maxInFlight maximum dispatched but unprocessed events
+   */
+  ParallelDispatcher(final JmsSysEventListener listener,
+                     final int workers,
+                     final int maxInFlight) {
+    this.listener = listener;
+    this.maxInFlight = maxInFlight;
+
+    permits = new Semaphore(maxInFlight);
+
+    final String prefix = "bw-jms-worker-" +
+            dispatcherNum.incrementAndGet() + "-";
+
+    lanes = new Lane[workers];
+
+    for (int i = 0; i < workers; i++) {
+      lanes[i] = new Lane(prefix + i);
+      lanes[i].start();
+    }
+  }
+
+  /** Queue the event for the worker which handles the key. Blocks if
+   * the in-flight limit has been reached.
+   *
+   * @param key for ordering - null goes to the first worker
+   * @param ev the event
+   * @param sentMillis message timestamp - 0 if unknown
+   * @return the number given to the event
+   * @throws InterruptedException if interrupted while waiting
+   */
+  long dispatch(final String key,
+                final SysEvent ev,
+                final long sentMillis) throws InterruptedException {
+    permits.acquire();
+
+    lastSeq++;
+
+    if (sentMillis > 0) {
+      final long lag = Math.max(0,
+                                System.currentTimeMillis() - sentMillis);
+
+      timestamped.incrementAndGet();
+      lagMillis.addAndGet(lag);
+      max(maxLagMillis, lag);
+    }
+
+    dispatched.incrementAndGet();
+
+    int i = 0;
+    if (key != null) {
+      i = (key.hashCode() & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    lanes[i].queue.add(new Work(ev, lastSeq));
+
+    return lastSeq;
+  }
+
+  /**
+   * @return the number below which, inclusive, every dispatched event
+   *         has been processed
+   */
+  long getCompleted() {
+    synchronized (completedLock) {
+      return completedSeq;
+    }
+  }
+
+  /** Wait until every event up to seq has been processed.
+   *
+   * @param seq event number
+   * @param timeoutMillis maximum wait
+   * @return true if they have
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean awaitCompleted(final long seq,
+                         final long timeoutMillis) throws InterruptedException {
+    final long end = System.currentTimeMillis() + timeoutMillis;
+
+    synchronized (completedLock) {
+      while (completedSeq < seq) {
+        final long wait = end - System.currentTimeMillis();
+
+        if (wait <= 0) {
+          return false;
+        }
+
+        completedLock.wait(wait);
+      }
+    }
+
+    return true;
+  }
+
+  /** Stop the workers once they have finished what is queued.
+   */
+  void shutdown() {
+    for (final Lane l: lanes) {
+      l.queue.add(stop);
+    }
+  }
+
+  /**
+   * @param sb for the statistics - one per line
+   */
+  void getStats(final StringBuilder sb) {
+    final long proc = processed.get();
+    final long ts = timestamped.get();
+
+    Util.statline(sb, "workers", lanes.length);
+    Util.statline(sb, "maxInFlight", maxInFlight);
+    Util.statline(sb, "inFlight", maxInFlight - permits.availablePermits());
+    Util.statline(sb, "dispatched", dispatched.get());
+    Util.statline(sb, "processed", proc);
+    Util.statline(sb, "failed", failed.get());
+
+    for (int i = 0; i < lanes.length; i++) {
+      Util.statline(sb, "queued[" + i + "]", lanes[i].queue.size());
+    }
+
+    if (ts > 0) {
+      Util.statline(sb, "avgLagMillis", lagMillis.get() / ts);
+      Util.statline(sb, "maxLagMillis", maxLagMillis.get());
+    }
+
+    if (proc > 0) {
+      Util.statline(sb, "avgQueuedMicros",
+                    TimeUnit.NANOSECONDS.toMicros(queuedNanos.get() / proc));
+      Util.statline(sb, "avgActionMicros",
+                    TimeUnit.NANOSECONDS.toMicros(actionNanos.get() / proc));
+      Util.statline(sb, "maxActionMicros",
+                    TimeUnit.NANOSECONDS.toMicros(maxActionNanos.get()));
+    }
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private void done(final long seq) {
+    synchronized (completedLock) {
+      outOfOrder.set((int)(seq - base));
+
+      if (seq == completedSeq + 1) {
+        final int next = outOfOrder.nextClearBit((int)(seq - base));
+
+        completedSeq = base + next - 1;
+
+        if (next >= compactAt) {
+          outOfOrder = outOfOrder.get(next, Math.max(next,
+                                                     outOfOrder.length()));
+          base = completedSeq + 1;
+        }
+
+        completedLock.notifyAll();
+      }
+    }
+
+    permits.release();
+  }
+
+  private static void max(final AtomicLong max,
+                          final long val) {
+    long cur = max.get();
+
+    while ((val > cur) && !max.compareAndSet(cur, val)) {
+      cur = max.get();
+    }
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+}
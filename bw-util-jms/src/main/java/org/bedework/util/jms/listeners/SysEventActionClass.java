@@ -47,6 +47,14 @@ public abstract class SysEventActionClass implements Serializable {
     getLogger().debug(msg);
   }
 
+  /** The object is only formatted if debug is enabled
+   *
+   * @param o to log
+   */
+  protected void trace(final Object o) {
+    getLogger().debug(o);
+  }
+
   /* Get a logger for messages
    */
   protected Logger getLogger() {
@@ -19,6 +19,7 @@
 package org.bedework.util.jms.listeners;
 
 import org.bedework.util.jms.NotificationException;
+import org.bedework.util.jms.SysEventCoalescer;
 import org.bedework.util.jms.events.SysEvent;
 
 import java.util.Properties;
@@ -30,12 +31,15 @@ import java.util.Properties;
 public class SysEventListenerImpl extends SysEventListener {
   private String actionClassName;
 
-  private SysEventActionClass actionObject;
+  /* Created on first use by the receiving or the coalescer thread */
+  private volatile SysEventActionClass actionObject;
 
   protected String sysCode;
 
   protected Properties props;
 
+  private volatile SysEventCoalescer coalescer;
+
   /**
    * @param code the system code
    */
@@ -69,9 +73,94 @@ public class SysEventListenerImpl extends SysEventListener {
     }
   }
 
+  /** Coalesce bursts of events before they reach the action object - see
+   * SysEventCoalescer. Merged events are then passed to the action
+   * object from the coalescer's thread.
+   *
+   * @param windowMillis how long events are held - 0 to stop coalescing
+   * @param maxKeys deliver early when this many keys are held
+   */
+  public void setCoalesce(final long windowMillis,
+                          final int maxKeys) {
+    if (coalescer != null) {
+      coalescer.close();
+      coalescer = null;
+    }
+
+    if (windowMillis <= 0) {
+      return;
+    }
+
+    coalescer = new SysEventCoalescer(new SysEventCoalescer.Sink() {
+      @Override
+      public void deliver(final SysEvent ev) throws NotificationException {
+        doAction(ev);
+      }
+    }, windowMillis, maxKeys);
+  }
+
+  /** Deliver anything held by the coalescer and stop coalescing.
+   *
+   */
+  public void close() {
+    setCoalesce(0, 0);
+  }
+
+  /**
+   * @return coalescing statistics - one per line. Empty if not coalescing
+   */
+  public String getStats() {
+    final SysEventCoalescer c = coalescer;
+
+    if (c == null) {
+      return "";
+    }
+
+    return c.getStats();
+  }
+
   @Override
   public void action(final SysEvent ev) throws NotificationException {
-    if (actionObject == null) {
+    final SysEventCoalescer c = coalescer;
+
+    if (c != null) {
+      c.add(ev);
+      return;
+    }
+
+    doAction(ev);
+  }
+
+  @Override
+  public String toXml() throws NotificationException {
+    // XXXX
+    return null;
+  }
+
+  /* ====================================================================
+   *             Implementations which look for particular objects
+   * ==================================================================== */
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private void doAction(final SysEvent ev) throws NotificationException {
+    getActionObject().action(ev);
+  }
+
+  private SysEventActionClass getActionObject() throws NotificationException {
+    final SysEventActionClass ao = actionObject;
+
+    if (ao != null) {
+      return ao;
+    }
+
+    synchronized (this) {
+      if (actionObject != null) {
+        return actionObject;
+      }
+
       if (actionClassName == null) {
         throw new NotificationException(NotificationException.noActionClassName);
       }
@@ -93,19 +182,8 @@ public class SysEventListenerImpl extends SysEventListener {
       }
 
       setActionObject((SysEventActionClass)o);
-    }
-
-    actionObject.action(ev);
-  }
 
-  @Override
-  public String toXml() throws NotificationException {
-    // XXXX
-    return null;
+      return actionObject;
+    }
   }
-
-  /* ====================================================================
-   *             Implementations which look for particular objects
-   * ==================================================================== */
-
 }
@@ -34,6 +34,6 @@ public class SysEventLoggerAction extends SysEventActionClass {
 
   @Override
   public void action(final SysEvent ev) throws NotificationException {
-    trace(ev.toString());
+    trace(ev);
   }
 }
@@ -19,6 +19,9 @@
 
 package org.bedework.util.json;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  *
  * @author   Mike Douglass
@@ -29,6 +32,38 @@ package org.bedework.util.json;
 public class JsonUtil {
   private JsonUtil() {} // Don't instantiate this
 
+  /* Escape sequence for each character which needs one, indexed by the
+   * character. Characters at or beyond the end of the table are never
+   * escaped. */
+  private static final String[] escapes = new String[0xa0];
+
+  static {
+    for (char ch = 0; ch < escapes.length; ch++) {
+      if (Character.isISOControl(ch)) {
+        final String hex = Integer.toHexString(ch);
+
+        escapes[ch] = "\\u" + "0000".substring(hex.length()) + hex;
+      }
+    }
+
+    /* \n    newline
+     * \t   tab
+     * \b   backspace
+     * \f   form feed
+     * \r   return
+     * \"   "   (double quote)
+     * \\   \    (back slash)
+     */
+    escapes['\n'] = "\\n";
+    escapes['\t'] = "\\t";
+    escapes['\b'] = "\\b";
+    escapes['\f'] = "\\f";
+    escapes['\r'] = "\\r";
+    escapes['"'] = "\\\"";
+    escapes['/'] = "\\/";
+    escapes['\\'] = "\\\\";
+  }
+
   /** Encode a json string according to the statement:
    * <p>In JSON only the backslash, double quote and ASCII control characters
    * need to be escaped. Forward slashes may be escaped
@@ -36,75 +71,76 @@ public class JsonUtil {
    * <p>I assume we also need to do the whitespace characters
    *
    * @param val
-   * @return encoded String
+   * @return encoded String in quotes
    */
   public static String jsonEncode(final String val) {
     if ((val == null) || (val.length() == 0)) {
       return "\"\"";
     }
 
-    StringBuilder sb = new StringBuilder();
+    final int first = firstEscape(val);
 
-    /* \n    newline
-     * \t   tab
-     * \b   backspace
-     * \f   form feed
-     * \r   return
-     * \"   "   (double quote)
-     * \\   \    (back slash)
-     */
+    if (first < 0) {
+      return "\"" + val + "\"";
+    }
 
-    sb.append('"');
-
-    for (int i = 0; i < val.length(); i++) {
-      char ch = val.charAt(i);
-
-      switch (ch) {
-      case '\n':
-        sb.append("\\n");
-        break;
-
-      case '\t':
-        sb.append("\\t");
-        break;
-
-      case '\b':
-        sb.append("\\b");
-        break;
-
-      case '\f':
-        sb.append("\\f");
-        break;
-
-      case '\r':
-        sb.append("\\r");
-        break;
-
-      case '"':
-      case '/':
-      case '\\':
-        sb.append('\\');
-        sb.append(ch);
-        break;
-
-      case ' ':
-        sb.append(" ");
-        break;
-
-      default:
-        if (Character.isISOControl(ch)) {
-          String str = Integer.toHexString(ch);
-          sb.append("\\u");
-          sb.append("0000".substring(str.length() - 4));
-          sb.append(str);
-        } else {
-          sb.append(ch);
-        }
-      }
+    return escaped(val, first, true);
+  }
+
+  /** Encode a json string in quotes onto out.
+   *
+   * @param out to append to
+   * @param val the string - null is treated as empty
+   * @throws IOException from out
+   */
+  public static void jsonEncode(final Appendable out,
+                                final String val) throws IOException {
+    out.append('"');
+
+    if (val != null) {
+      escape(out, val);
     }
 
-    sb.append('"');
-    return sb.toString();
+    out.append('"');
+  }
+
+  /** Escape a string for json without adding quotes.
+   *
+   * @param val the string
+   * @return val itself if nothing needs escaping
+   */
+  public static String escape(final String val) {
+    if (val == null) {
+      return null;
+    }
+
+    final int first = firstEscape(val);
+
+    if (first < 0) {
+      return val;
+    }
+
+    return escaped(val, first, false);
+  }
+
+  /** Escape a string for json without adding quotes. Runs of characters
+   * which need no escaping are appended in one call.
+   *
+   * @param out to append to
+   * @param val the string
+   * @throws IOException from out
+   */
+  public static void escape(final Appendable out,
+                            final String val) throws IOException {
+    final int first = firstEscape(val);
+
+    if (first < 0) {
+      appendRun(out, val, 0, val.length());
+      return;
+    }
+
+    appendRun(out, val, 0, first);
+    escapeFrom(out, val, first);
   }
 
   /** Encode a json name
@@ -113,11 +149,7 @@ public class JsonUtil {
    * @return encoded String
    */
   public static String jsonName(final String name) {
-    StringBuilder sb = new StringBuilder();
-
-    sb.append(name.toLowerCase());
-
-    return sb.toString();
+    return name.toLowerCase();
   }
 
   /** Encode a json name and value
@@ -128,17 +160,126 @@ public class JsonUtil {
    * @return encoded String
    */
   public static String jsonNameVal(final String indent, final String name, final String val) {
-    StringBuilder sb = new StringBuilder();
+    int len = indent.length() + name.length() + 4;
+
+    if (val != null) {
+      len += val.length() + 2;
+    }
+
+    final StringBuilder sb = new StringBuilder(len);
+
+    try {
+      jsonNameVal(sb, indent, name, val);
+    } catch (final IOException ignored) {
+      // Not from a StringBuilder
+    }
+
+    return sb.toString();
+  }
 
-    sb.append(indent);
-    sb.append("\"");
-    sb.append(name);
-    sb.append("\": ");
+  /** Encode a json name and value onto out
+   *
+   * @param out to append to
+   * @param indent
+   * @param name
+   * @param val - nothing is output for the value if null
+   * @throws IOException from out
+   */
+  public static void jsonNameVal(final Appendable out,
+                                 final String indent,
+                                 final String name,
+                                 final String val) throws IOException {
+    out.append(indent);
+    out.append('"');
+    out.append(name);
+    out.append("\": ");
 
     if (val != null) {
-      sb.append(jsonEncode(val));
+      jsonEncode(out, val);
+    }
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  /* Index of the first character needing an escape or -1 */
+  private static int firstEscape(final String val) {
+    final int len = val.length();
+
+    for (int i = 0; i < len; i++) {
+      final char ch = val.charAt(i);
+
+      if ((ch < escapes.length) && (escapes[ch] != null)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /* val has a character needing escape at first */
+  private static String escaped(final String val,
+                                final int first,
+                                final boolean quote) {
+    final StringBuilder sb = new StringBuilder(val.length() + 16);
+
+    if (quote) {
+      sb.append('"');
+    }
+
+    sb.append(val, 0, first);
+
+    try {
+      escapeFrom(sb, val, first);
+    } catch (final IOException ignored) {
+      // Not from a StringBuilder
+    }
+
+    if (quote) {
+      sb.append('"');
     }
 
     return sb.toString();
   }
+
+  /* Escape val from start, which needs escaping, to the end */
+  private static void escapeFrom(final Appendable out,
+                                 final String val,
+                                 final int start) throws IOException {
+    final int len = val.length();
+    int runStart = start;
+
+    for (int i = start; i < len; i++) {
+      final char ch = val.charAt(i);
+
+      if ((ch >= escapes.length) || (escapes[ch] == null)) {
+        continue;
+      }
+
+      appendRun(out, val, runStart, i);
+      out.append(escapes[ch]);
+      runStart = i + 1;
+    }
+
+    appendRun(out, val, runStart, len);
+  }
+
+  /* Appendable.append(CharSequence, int, int) on a Writer creates a
+   * substring - write avoids that. */
+  private static void appendRun(final Appendable out,
+                                final String val,
+                                final int start,
+                                final int end) throws IOException {
+    if (start >= end) {
+      return;
+    }
+
+    if (out instanceof Writer) {
+      ((Writer)out).write(val, start, end - start);
+      return;
+    }
+
+    out.append(val, start, end);
+  }
 }
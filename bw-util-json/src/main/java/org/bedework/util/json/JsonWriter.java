@@ -0,0 +1,272 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package org.bedework.util.json;
+
+import org.bedework.util.misc.ToString;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Write json directly to an Appendable, e.g. a Writer, instead of
+ * building strings. Commas between members and elements are added
+ * as needed. Strings are escaped with JsonUtil.
+ *
+ * <pre>
+ *   final JsonWriter jw = new JsonWriter(writer, true);
+ *
+ *   jw.startObject();
+ *   jw.nameVal("name", "value");
+ *   jw.name("list");
+ *   jw.startArray();
+ *   jw.value(1);
+ *   jw.value(true);
+ *   jw.endArray();
+ *   jw.endObject();
+ * </pre>
+ *
+ * @author   Mike Douglass
+ */
+public class JsonWriter {
+  private final Appendable out;
+
+  private final boolean pretty;
+
+  /* For each open object or array - true until something is written */
+  private boolean[] first = new boolean[8];
+
+  private int depth;
+
+  /* Set after a name so the value needs no comma or indent */
+  private boolean afterName;
+
+  /**
+   * @param out to write to
+   * @param pretty true for new lines and indentation
+   */
+  public JsonWriter(final Appendable out,
+                    final boolean pretty) {
+    this.out = out;
+    this.pretty = pretty;
+  }
+
+  /**
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter startObject() throws IOException {
+    return open('{');
+  }
+
+  /**
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter endObject() throws IOException {
+    return close('}');
+  }
+
+  /**
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter startArray() throws IOException {
+    return open('[');
+  }
+
+  /**
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter endArray() throws IOException {
+    return close(']');
+  }
+
+  /** Write a member name. Must be followed by a value, object or array.
+   *
+   * @param name of the member
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter name(final String name) throws IOException {
+    separate();
+    JsonUtil.jsonEncode(out, name);
+    out.append(pretty ? ": " : ":");
+    afterName = true;
+
+    return this;
+  }
+
+  /**
+   * @param val string value - null for json null
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter value(final String val) throws IOException {
+    separate();
+
+    if (val == null) {
+      out.append("null");
+    } else {
+      JsonUtil.jsonEncode(out, val);
+    }
+
+    return this;
+  }
+
+  /**
+   * @param val number
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter value(final long val) throws IOException {
+    separate();
+    out.append(String.valueOf(val));
+
+    return this;
+  }
+
+  /**
+   * @param val flag
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter value(final boolean val) throws IOException {
+    separate();
+    out.append(val ? "true" : "false");
+
+    return this;
+  }
+
+  /**
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter nullValue() throws IOException {
+    separate();
+    out.append("null");
+
+    return this;
+  }
+
+  /**
+   * @param name of the member
+   * @param val string value - null for json null
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter nameVal(final String name,
+                            final String val) throws IOException {
+    return name(name).value(val);
+  }
+
+  /**
+   * @param name of the member
+   * @param val number
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter nameVal(final String name,
+                            final long val) throws IOException {
+    return name(name).value(val);
+  }
+
+  /**
+   * @param name of the member
+   * @param val flag
+   * @return this
+   * @throws IOException from the output
+   */
+  public JsonWriter nameVal(final String name,
+                            final boolean val) throws IOException {
+    return name(name).value(val);
+  }
+
+  /**
+   * @return the number of open objects and arrays
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private JsonWriter open(final char ch) throws IOException {
+    separate();
+    out.append(ch);
+
+    if (depth == first.length) {
+      first = Arrays.copyOf(first, depth * 2);
+    }
+
+    first[depth] = true;
+    depth++;
+
+    return this;
+  }
+
+  private JsonWriter close(final char ch) throws IOException {
+    if (depth == 0) {
+      throw new IllegalStateException("Nothing to close");
+    }
+
+    depth--;
+
+    if (pretty && !first[depth]) {
+      newLine();
+    }
+
+    out.append(ch);
+
+    if (pretty && (depth == 0)) {
+      out.append('\n');
+    }
+
+    return this;
+  }
+
+  /* Write a comma if needed and start a new line */
+  private void separate() throws IOException {
+    if (afterName) {
+      afterName = false;
+      return;
+    }
+
+    if (depth == 0) {
+      return;
+    }
+
+    if (first[depth - 1]) {
+      first[depth - 1] = false;
+    } else {
+      out.append(',');
+    }
+
+    if (pretty) {
+      newLine();
+    }
+  }
+
+  private void newLine() throws IOException {
+    out.append('\n');
+    out.append(ToString.getIndent(depth));
+  }
+}
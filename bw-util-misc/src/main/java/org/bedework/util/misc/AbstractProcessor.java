@@ -0,0 +1,427 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.misc;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/** A processor which shares the threads of a ProcessorRuntime rather
+ * than having a thread of its own like AbstractProcessorThread.
+ *
+ * <p>runProcess should do one unit of work and return. It is called
+ * again after getDelayMillis on whatever pool thread is free, so a call
+ * which blocks for long holds a thread other processors could use.
+ *
+ * <p>Errors are handled as for AbstractProcessorThread: unless
+ * handleException deals with it an exception is logged and the
+ * processor is stopped if errors keep coming. An InterruptedException
+ * or setting running false stops the processor. close is called once,
+ * when the processor stops.
+ *
+ * @author douglm
+ */
+public abstract class AbstractProcessor implements ProcessorMBean {
+  private transient Logger log;
+
+  protected boolean debug;
+
+  protected volatile boolean running;
+
+  private final String name;
+
+  private final ProcessorErrors errors = new ProcessorErrors();
+
+  private ProcessorRuntime runtime;
+
+  private boolean inited;
+
+  private boolean closed;
+
+  private String status = "Stopped";
+
+  /* Set while a run is in progress */
+  private Thread runner;
+
+  private ScheduledFuture<?> scheduled;
+
+  private long dueNanos;
+
+  /* stats */
+  private volatile long runs;
+  private volatile long failures;
+  private volatile String lastError;
+  private volatile long lastRunMillis;
+  private volatile long totalRunNanos;
+  private volatile long maxRunNanos;
+  private volatile long totalQueueNanos;
+  private volatile long maxQueueNanos;
+
+  /**
+   *
+   * @param name for the processor
+   */
+  public AbstractProcessor(final String name) {
+    this.name = name;
+
+    debug = getLogger().isDebugEnabled();
+  }
+
+  /** Called to initialise before the first run. We've already output the
+   * start of the startup message. This can add more info.
+   */
+  public abstract void runInit();
+
+  /** Do the next piece of work.
+   * @throws Throwable
+   */
+  public abstract void runProcess() throws Throwable;
+
+  /** Close the processor.
+   */
+  public abstract void close();
+
+  /** Override to handle certain exception types.
+   * .
+   * @param val the exception
+   * @return false if we did nothing
+   */
+  public boolean handleException(
+          @SuppressWarnings("UnusedParameters") final Throwable val) {
+    return false;
+  }
+
+  /** Override for a processor which polls.
+   *
+   * @return millis from the end of one run to the start of the next. 0
+   *         (the default) runs again as soon as a thread is free.
+   */
+  public long getDelayMillis() {
+    return 0;
+  }
+
+  /** Set the running flag. Setting it false stops the processor at the
+   * end of the current run.
+   *
+   * @param val the flag
+   */
+  public void setRunning(final boolean val) {
+    running = val;
+  }
+
+  /* ====================================================================
+   *                   MBean methods
+   * ==================================================================== */
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public synchronized String getStatus() {
+    return status;
+  }
+
+  @Override
+  public boolean getRunning() {
+    return running;
+  }
+
+  @Override
+  public long getRuns() {
+    return runs;
+  }
+
+  @Override
+  public long getFailures() {
+    return failures;
+  }
+
+  @Override
+  public int getErrorCount() {
+    return errors.getCount();
+  }
+
+  @Override
+  public String getLastError() {
+    return lastError;
+  }
+
+  @Override
+  public long getLastRunMillis() {
+    return lastRunMillis;
+  }
+
+  @Override
+  public long getAvgRunMicros() {
+    final long r = runs;
+
+    if (r == 0) {
+      return 0;
+    }
+
+    return TimeUnit.NANOSECONDS.toMicros(totalRunNanos / r);
+  }
+
+  @Override
+  public long getMaxRunMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(maxRunNanos);
+  }
+
+  @Override
+  public long getAvgQueueMicros() {
+    final long r = runs;
+
+    if (r == 0) {
+      return 0;
+    }
+
+    return TimeUnit.NANOSECONDS.toMicros(totalQueueNanos / r);
+  }
+
+  @Override
+  public long getMaxQueueMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(maxQueueNanos);
+  }
+
+  @Override
+  public void stop() {
+    final ProcessorRuntime rt = runtime;
+
+    if (rt != null) {
+      rt.stop(this);
+    }
+  }
+
+  /* ====================================================================
+   *                   Package methods - called by the runtime
+   * ==================================================================== */
+
+  synchronized void started(final ProcessorRuntime val) {
+    runtime = val;
+    running = true;
+    inited = false;
+    closed = false;
+    status = "Running";
+  }
+
+  synchronized void scheduled(final ScheduledFuture<?> val,
+                              final long delayMillis) {
+    scheduled = val;
+    dueNanos = System.nanoTime() +
+            TimeUnit.MILLISECONDS.toNanos(delayMillis);
+  }
+
+  /** Called by the runtime on a pool thread.
+   *
+   * @return true if the processor should be scheduled again
+   */
+  boolean runOnce() {
+    final Thread t = Thread.currentThread();
+    final long due;
+
+    synchronized (this) {
+      if (!running) {
+        return false;
+      }
+
+      runner = t;
+      due = dueNanos;
+    }
+
+    final String threadName = t.getName();
+    t.setName(name);
+
+    final long start = System.nanoTime();
+
+    try {
+      if (!inited) {
+        info("************************************************************");
+        info(" * Starting " + name);
+
+        runInit();
+        inited = true;
+
+        info("************************************************************");
+      }
+
+      runProcess();
+    } catch (final InterruptedException ie) {
+      running = false;
+    } catch (final Throwable th) {
+      failures++;
+      lastError = th.getMessage();
+
+      if (!handleException(th)) {
+        if (!errors.error()) {
+          error("Too many errors: stopping");
+          running = false;
+
+          synchronized (this) {
+            status = "Failed";
+          }
+        } else {
+          error(th);
+        }
+      }
+    } finally {
+      final long end = System.nanoTime();
+      timed(start - due, end - start);
+
+      t.setName(threadName);
+
+      /* Don't leave an interrupt for the next processor on this thread */
+      Thread.interrupted();
+
+      synchronized (this) {
+        runner = null;
+        notifyAll();
+      }
+    }
+
+    return running;
+  }
+
+  /** Stop scheduling, interrupt a run in progress and wait for it to
+   * finish.
+   *
+   * @param timeoutMillis max wait for the current run
+   * @return false if the run did not finish in time
+   */
+  synchronized boolean halt(final long timeoutMillis) {
+    running = false;
+
+    if (scheduled != null) {
+      scheduled.cancel(false);
+      scheduled = null;
+    }
+
+    if (runner != null) {
+      runner.interrupt();
+    }
+
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+    while (runner != null) {
+      final long wait = deadline - System.currentTimeMillis();
+
+      if (wait <= 0) {
+        return false;
+      }
+
+      try {
+        wait(wait);
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /** Close once and set the final status.
+   */
+  void finish() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+
+      closed = true;
+
+      if (status.equals("Running")) {
+        status = "Done";
+      }
+    }
+
+    try {
+      close();
+    } catch (final Throwable t) {
+      error(t);
+    }
+
+    info("************************************************************");
+    info(" * " + name + " terminated");
+    info("************************************************************");
+  }
+
+  synchronized void setStatus(final String val) {
+    status = val;
+  }
+
+  /* ====================================================================
+   *                   Protected methods
+   * ==================================================================== */
+
+  protected void info(final String msg) {
+    getLogger().info(msg);
+  }
+
+  protected void warn(final String msg) {
+    getLogger().warn(msg);
+  }
+
+  protected void debug(final String msg) {
+    getLogger().debug(msg);
+  }
+
+  protected void error(final Throwable t) {
+    getLogger().error(this, t);
+  }
+
+  protected void error(final String msg) {
+    getLogger().error(msg);
+  }
+
+  /* Get a logger for messages
+   */
+  protected Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  /* Only one run at a time so no locking needed */
+  private void timed(final long queueNanos,
+                     final long runNanos) {
+    runs++;
+    lastRunMillis = System.currentTimeMillis();
+
+    totalRunNanos += runNanos;
+    if (runNanos > maxRunNanos) {
+      maxRunNanos = runNanos;
+    }
+
+    if (queueNanos > 0) {
+      totalQueueNanos += queueNanos;
+      if (queueNanos > maxQueueNanos) {
+        maxQueueNanos = queueNanos;
+      }
+    }
+  }
+}
@@ -21,6 +21,10 @@ package org.bedework.util.misc;
 import org.apache.log4j.Logger;
 
 /** Something to help the handling and graceful shutdown of processes.
+ *
+ * <p>Each processor has its own thread. Processors which are mostly
+ * idle can instead extend AbstractProcessor and share the threads of a
+ * ProcessorRuntime.
  *
  * @author douglm
  *
@@ -93,10 +97,7 @@ public abstract class AbstractProcessorThread extends Thread {
 
     info("************************************************************");
 
-    long lastErrorTime = 0;
-    final long errorResetTime = 1000 * 60 * 5;  // 5 minutes since last error
-    int errorCt = 0;
-    final int maxErrorCt = 5;
+    final ProcessorErrors errors = new ProcessorErrors();
 
     while (running) {
       try {
@@ -106,19 +107,12 @@ public abstract class AbstractProcessorThread extends Thread {
         break;
       } catch (final Throwable t) {
         if (!handleException(t)) {
-          if (System.currentTimeMillis() - lastErrorTime > errorResetTime) {
-            errorCt = 0;
-          }
-
-          if (errorCt > maxErrorCt) {
+          if (!errors.error()) {
             error("Too many errors: stopping");
             running = false;
             break;
           }
 
-          lastErrorTime = System.currentTimeMillis();
-          errorCt++;
-
           if (!showedTrace) {
             error(t);
   //            showedTrace = true;
@@ -0,0 +1,153 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.misc;
+
+import java.util.Map;
+
+/** An immutable table mapping names to values. Names are matched ignoring
+ * ASCII case, optionally treating "-" and "_" as the same character.
+ *
+ * <p>The table is built once with open addressing and lookups fold the case
+ * of each character as they go, so no strings are created to do a lookup.
+ * This is intended for the fixed sets of names held by the property indexes
+ * which are consulted for every property we parse or convert.
+ *
+ * @author Mike Douglass
+ *
+ * @param <T> type of value
+ */
+public class NameIndex<T> {
+  private final boolean dashIsUnderscore;
+
+  /* Folded keys and their values - null key for empty slot */
+  private final String[] keys;
+  private final Object[] vals;
+
+  private final int mask;
+
+  /**
+   * @param entries names and their values. Null names are ignored. Names
+   *                which match another are treated as duplicates - the
+   *                last one wins.
+   * @param dashIsUnderscore true if "-" matches "_"
+   */
+  public NameIndex(final Map<String, T> entries,
+                   final boolean dashIsUnderscore) {
+    this.dashIsUnderscore = dashIsUnderscore;
+
+    int sz = 2;
+    while (sz < entries.size() * 2) {
+      sz <<= 1;
+    }
+
+    keys = new String[sz];
+    vals = new Object[sz];
+    mask = sz - 1;
+
+    for (final Map.Entry<String, T> ent: entries.entrySet()) {
+      final String name = ent.getKey();
+
+      if (name == null) {
+        continue;
+      }
+
+      final char[] folded = new char[name.length()];
+      for (int i = 0; i < folded.length; i++) {
+        folded[i] = fold(name.charAt(i));
+      }
+
+      final String key = new String(folded);
+
+      int i = hash(key) & mask;
+
+      while ((keys[i] != null) && !keys[i].equals(key)) {
+        i = (i + 1) & mask;
+      }
+
+      keys[i] = key;
+      vals[i] = ent.getValue();
+    }
+  }
+
+  /**
+   * @param name - any case - may be null
+   * @return value or null for no match
+   */
+  @SuppressWarnings("unchecked")
+  public T get(final String name) {
+    if (name == null) {
+      return null;
+    }
+
+    int i = hash(name) & mask;
+
+    while (true) {
+      final String key = keys[i];
+
+      if (key == null) {
+        return null;
+      }
+
+      if (matches(key, name)) {
+        return (T)vals[i];
+      }
+
+      i = (i + 1) & mask;
+    }
+  }
+
+  private boolean matches(final String key,
+                          final String name) {
+    final int len = key.length();
+
+    if (len != name.length()) {
+      return false;
+    }
+
+    for (int i = 0; i < len; i++) {
+      if (key.charAt(i) != fold(name.charAt(i))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private int hash(final String val) {
+    int h = 0;
+
+    for (int i = 0; i < val.length(); i++) {
+      h = 31 * h + fold(val.charAt(i));
+    }
+
+    return h ^ (h >>> 16);
+  }
+
+  private char fold(final char c) {
+    if ((c >= 'A') && (c <= 'Z')) {
+      return (char)(c + ('a' - 'A'));
+    }
+
+    if (dashIsUnderscore && (c == '_')) {
+      return '-';
+    }
+
+    return c;
+  }
+}
@@ -0,0 +1,64 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.misc;
+
+/** Counts errors for a processor. If errors keep coming without a break
+ * of 5 minutes the processor should give up.
+ *
+ * @author douglm
+ */
+class ProcessorErrors {
+  /* 5 minutes since last error */
+  private static final long errorResetTime = 1000 * 60 * 5;
+
+  private static final int maxErrorCt = 5;
+
+  private long lastErrorTime;
+
+  private int errorCt;
+
+  /** Record an error.
+   *
+   * @return false if there have been too many errors and the processor
+   *         should stop
+   */
+  boolean error() {
+    final long now = System.currentTimeMillis();
+
+    if (now - lastErrorTime > errorResetTime) {
+      errorCt = 0;
+    }
+
+    if (errorCt > maxErrorCt) {
+      return false;
+    }
+
+    lastErrorTime = now;
+    errorCt++;
+
+    return true;
+  }
+
+  /**
+   * @return errors counted since the last reset
+   */
+  int getCount() {
+    return errorCt;
+  }
+}
@@ -0,0 +1,90 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.misc;
+
+/** JMX view of a processor run by a ProcessorRuntime.
+ *
+ * @author douglm
+ */
+public interface ProcessorMBean {
+  /**
+   * @return name of the processor
+   */
+  String getName();
+
+  /**
+   * @return "Done", "Failed", "Running", "Stopped"
+   */
+  String getStatus();
+
+  /**
+   * @return true if the processor is still scheduled
+   */
+  boolean getRunning();
+
+  /**
+   * @return number of calls to runProcess
+   */
+  long getRuns();
+
+  /**
+   * @return number of calls which threw an exception
+   */
+  long getFailures();
+
+  /**
+   * @return errors counted towards stopping the processor
+   */
+  int getErrorCount();
+
+  /**
+   * @return message from the last exception or null
+   */
+  String getLastError();
+
+  /**
+   * @return time of the end of the last run in millis or 0
+   */
+  long getLastRunMillis();
+
+  /**
+   * @return average time spent in runProcess
+   */
+  long getAvgRunMicros();
+
+  /**
+   * @return longest time spent in runProcess
+   */
+  long getMaxRunMicros();
+
+  /**
+   * @return average time from when a run was due until it started
+   */
+  long getAvgQueueMicros();
+
+  /**
+   * @return longest time from when a run was due until it started
+   */
+  long getMaxQueueMicros();
+
+  /** Stop the processor.
+   *
+   */
+  void stop();
+}
@@ -0,0 +1,342 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.misc;
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/** Runs AbstractProcessor objects on a fixed pool of threads. Each
+ * processor is rescheduled after each run so many mostly idle processors
+ * can share a few threads.
+ *
+ * <p>The runtime and each processor are registered with the platform
+ * MBean server as
+ * org.bedework.util:service=Processors,name=runtime-name and
+ * org.bedework.util:service=Processors,runtime=runtime-name,name=processor-name.
+ *
+ * <p>shutdown stops all processors together and waits no longer than
+ * the given time in total.
+ *
+ * @author douglm
+ */
+public class ProcessorRuntime implements ProcessorRuntimeMBean {
+  private transient Logger log;
+
+  private static final long stopWaitMillis = 20 * 1000;
+
+  private static ProcessorRuntime defaultRuntime;
+
+  private final String name;
+
+  private final ScheduledThreadPoolExecutor executor;
+
+  private final List<AbstractProcessor> processors =
+          new CopyOnWriteArrayList<>();
+
+  /**
+   * @return the shared runtime with a fixed pool of twice as many threads
+   *         as there are cpus, and at least 2
+   */
+  public static synchronized ProcessorRuntime getDefault() {
+    if ((defaultRuntime == null) || defaultRuntime.executor.isShutdown()) {
+      defaultRuntime = new ProcessorRuntime(
+              "default",
+              Math.max(2, 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    return defaultRuntime;
+  }
+
+  /**
+   * @param name of the runtime - used for threads and JMX
+   * @param threads size of the pool
+   */
+  public ProcessorRuntime(final String name,
+                          final int threads) {
+    this.name = name;
+
+    final AtomicInteger threadNum = new AtomicInteger();
+
+    executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread t = new Thread(r, "bw-proc-" + name + "-" +
+                threadNum.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    executor.setRemoveOnCancelPolicy(true);
+
+    register(runtimeObjectName(), this, ProcessorRuntimeMBean.class);
+  }
+
+  /** Start running the processor.
+   *
+   * @param p the processor
+   */
+  public void start(final AbstractProcessor p) {
+    if (executor.isShutdown()) {
+      throw new IllegalStateException("Processor runtime " + name +
+                                              " is shut down");
+    }
+
+    p.started(this);
+    processors.add(p);
+
+    register(processorObjectName(p), p, ProcessorMBean.class);
+
+    schedule(p, 0);
+  }
+
+  /** Stop the processor, waiting up to 20 seconds for a run in progress.
+   *
+   * @param p the processor
+   * @return false for timeout
+   */
+  public boolean stop(final AbstractProcessor p) {
+    return stop(p, stopWaitMillis);
+  }
+
+  /** Stop the processor.
+   *
+   * @param p the processor
+   * @param timeoutMillis max wait for a run in progress
+   * @return false for timeout
+   */
+  public boolean stop(final AbstractProcessor p,
+                      final long timeoutMillis) {
+    p.info("************************************************************");
+    p.info(" * Stopping " + p.getName());
+    p.info("************************************************************");
+
+    final boolean ok = p.halt(timeoutMillis);
+
+    if (!ok) {
+      p.error("Timed out waiting for processor termination");
+    }
+
+    p.setStatus("Stopped");
+    stopped(p);
+
+    return ok;
+  }
+
+  /** Stop all processors and the pool. Runs in progress are interrupted
+   * together and the wait for them is limited to timeoutMillis in total.
+   *
+   * @param timeoutMillis max wait
+   * @return false if some runs did not finish in time
+   */
+  public boolean shutdown(final long timeoutMillis) {
+    info("Shutting down processor runtime " + name);
+
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+    final List<AbstractProcessor> ps = new ArrayList<>(processors);
+
+    /* Stop scheduling and interrupt everything first, then wait */
+    for (final AbstractProcessor p: ps) {
+      p.halt(0);
+    }
+
+    executor.shutdown();
+
+    boolean ok = true;
+
+    for (final AbstractProcessor p: ps) {
+      final long wait = Math.max(1, deadline - System.currentTimeMillis());
+
+      if (!p.halt(wait)) {
+        p.error("Timed out waiting for processor termination");
+        ok = false;
+      }
+
+      p.setStatus("Stopped");
+      stopped(p);
+    }
+
+    try {
+      final long wait = Math.max(1, deadline - System.currentTimeMillis());
+
+      if (!executor.awaitTermination(wait, TimeUnit.MILLISECONDS)) {
+        executor.shutdownNow();
+        ok = false;
+      }
+    } catch (final InterruptedException ie) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      ok = false;
+    }
+
+    unregister(runtimeObjectName());
+
+    return ok;
+  }
+
+  /**
+   * @return processors started and not yet stopped
+   */
+  public Collection<AbstractProcessor> getProcessors() {
+    return new ArrayList<>(processors);
+  }
+
+  /* ====================================================================
+   *                   MBean methods
+   * ==================================================================== */
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public int getThreads() {
+    return executor.getCorePoolSize();
+  }
+
+  @Override
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  @Override
+  public int getQueueSize() {
+    return executor.getQueue().size();
+  }
+
+  @Override
+  public int getProcessorCount() {
+    return processors.size();
+  }
+
+  @Override
+  public long getCompletedRuns() {
+    return executor.getCompletedTaskCount();
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  private void schedule(final AbstractProcessor p,
+                        final long delayMillis) {
+    try {
+      /* Set the future under the processor lock so a concurrent stop
+       * sees and cancels it */
+      synchronized (p) {
+        if (!p.getRunning()) {
+          return;
+        }
+
+        p.scheduled(executor.schedule(new Runnable() {
+          @Override
+          public void run() {
+            if (p.runOnce()) {
+              schedule(p, p.getDelayMillis());
+            } else {
+              stopped(p);
+            }
+          }
+        }, delayMillis, TimeUnit.MILLISECONDS), delayMillis);
+      }
+    } catch (final RejectedExecutionException ree) {
+      // Shutting down
+      p.setRunning(false);
+    }
+  }
+
+  private void stopped(final AbstractProcessor p) {
+    processors.remove(p);
+    unregister(processorObjectName(p));
+    p.finish();
+  }
+
+  private String runtimeObjectName() {
+    return "org.bedework.util:service=Processors,name=" +
+            ObjectName.quote(name);
+  }
+
+  private String processorObjectName(final AbstractProcessor p) {
+    return "org.bedework.util:service=Processors,runtime=" +
+            ObjectName.quote(name) + ",name=" +
+            ObjectName.quote(p.getName());
+  }
+
+  private <T> void register(final String objectName,
+                            final T bean,
+                            final Class<T> intf) {
+    try {
+      final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName on = new ObjectName(objectName);
+
+      if (mbs.isRegistered(on)) {
+        mbs.unregisterMBean(on);
+      }
+
+      mbs.registerMBean(new StandardMBean(bean, intf), on);
+    } catch (final Throwable t) {
+      warn("Unable to register " + objectName + ": " + t.getMessage());
+    }
+  }
+
+  private void unregister(final String objectName) {
+    try {
+      final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName on = new ObjectName(objectName);
+
+      if (mbs.isRegistered(on)) {
+        mbs.unregisterMBean(on);
+      }
+    } catch (final Throwable t) {
+      warn("Unable to unregister " + objectName + ": " + t.getMessage());
+    }
+  }
+
+  private void info(final String msg) {
+    getLogger().info(msg);
+  }
+
+  private void warn(final String msg) {
+    getLogger().warn(msg);
+  }
+
+  private Logger getLogger() {
+    if (log == null) {
+      log = Logger.getLogger(this.getClass());
+    }
+
+    return log;
+  }
+}
@@ -0,0 +1,55 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.misc;
+
+/** JMX view of a ProcessorRuntime.
+ *
+ * @author douglm
+ */
+public interface ProcessorRuntimeMBean {
+  /**
+   * @return name of the runtime
+   */
+  String getName();
+
+  /**
+   * @return size of the thread pool
+   */
+  int getThreads();
+
+  /**
+   * @return threads currently running a processor
+   */
+  int getActiveCount();
+
+  /**
+   * @return runs waiting in the scheduler queue - due or not
+   */
+  int getQueueSize();
+
+  /**
+   * @return processors started and not yet stopped
+   */
+  int getProcessorCount();
+
+  /**
+   * @return runs completed by all processors
+   */
+  long getCompletedRuns();
+}
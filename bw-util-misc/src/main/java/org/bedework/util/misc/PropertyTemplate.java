@@ -0,0 +1,303 @@
+/* ********************************************************************
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+package org.bedework.util.misc;
+
+import org.bedework.util.misc.Util.PropertyFetcher;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A string with ${name} property references parsed once into literal
+ * and property segments so it can be rendered repeatedly without
+ * rescanning. Compiled templates are kept in a bounded concurrent cache
+ * so callers don't contend on a lock. Once it is full an arbitrary entry
+ * is dropped for each new one.
+ *
+ * <p>Parsing follows Util.propertyReplace: names are trimmed, an
+ * undefined property is replaced by nothing and an unclosed "${" is
+ * left in the output as it is.
+ *
+ * <p>Rendering with nested true also expands references in property
+ * values. A property which refers back to itself, directly or through
+ * others, is an error.
+ *
+ * @author douglm
+ */
+public final class PropertyTemplate {
+  private static final int maxCached = 1000;
+
+  private static final ConcurrentMap<String, PropertyTemplate> cache =
+          new ConcurrentHashMap<>();
+
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+
+  private final String template;
+
+  /* literals[i] precedes names[i]. There is one more literal than
+   * names. */
+  private final String[] literals;
+
+  private final String[] names;
+
+  private final int literalLength;
+
+  private PropertyTemplate(final String template,
+                           final String[] literals,
+                           final String[] names) {
+    this.template = template;
+    this.literals = literals;
+    this.names = names;
+
+    int len = 0;
+    for (final String l: literals) {
+      len += l.length();
+    }
+
+    literalLength = len;
+  }
+
+  /** Get the compiled form from the cache or compile it.
+   *
+   * @param template to compile
+   * @return compiled template
+   */
+  public static PropertyTemplate compile(final String template) {
+    final PropertyTemplate cached = cache.get(template);
+
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached;
+    }
+
+    misses.incrementAndGet();
+
+    final PropertyTemplate pt = parse(template);
+
+    if (cache.size() >= maxCached) {
+      final Iterator<String> it = cache.keySet().iterator();
+
+      if (it.hasNext()) {
+        cache.remove(it.next());
+      }
+    }
+
+    final PropertyTemplate prev = cache.putIfAbsent(template, pt);
+
+    if (prev != null) {
+      return prev;
+    }
+
+    return pt;
+  }
+
+  /** Look up and fully expand a property.
+   *
+   * @param name of the property
+   * @param props supply unexpanded values
+   * @return expanded value or null if not defined
+   * @throws IllegalArgumentException for a reference loop
+   */
+  public static String expandProperty(final String name,
+                                      final PropertyFetcher props) {
+    final String val = props.get(name);
+
+    if ((val == null) || (val.indexOf("${") < 0)) {
+      return val;
+    }
+
+    final List<String> expanding = new ArrayList<>();
+    expanding.add(name);
+
+    return compile(val).render(props, expanding);
+  }
+
+  /**
+   * @return the template string
+   */
+  public String getTemplate() {
+    return template;
+  }
+
+  /**
+   * @return names of the properties referred to in order
+   */
+  public String[] getNames() {
+    return names.clone();
+  }
+
+  /**
+   * @return true if there are no property references
+   */
+  public boolean isConstant() {
+    return names.length == 0;
+  }
+
+  /** Replace the references with property values.
+   *
+   * @param props supply the values
+   * @return rendered string
+   */
+  public String render(final PropertyFetcher props) {
+    return render(props, false);
+  }
+
+  /** Replace the references with property values.
+   *
+   * @param props supply the values
+   * @param nested true to expand references in the values
+   * @return rendered string
+   * @throws IllegalArgumentException for a reference loop
+   */
+  public String render(final PropertyFetcher props,
+                       final boolean nested) {
+    if (!nested) {
+      return render(props, null);
+    }
+
+    return render(props, new ArrayList<String>());
+  }
+
+  /**
+   * @return statistics for display - one per line
+   */
+  public static String getStats() {
+    final StringBuilder sb = new StringBuilder();
+
+    Util.statline(sb, "cached", cache.size());
+    Util.statline(sb, "hits", hits.get());
+    Util.statline(sb, "misses", misses.get());
+
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    final ToString ts = new ToString(this);
+
+    ts.append("template", template);
+    ts.append("names", names.length);
+
+    return ts.toString();
+  }
+
+  /* ====================================================================
+   *                   Private methods
+   * ==================================================================== */
+
+  /* expanding is null for no nesting or the names being expanded */
+  private String render(final PropertyFetcher props,
+                        final List<String> expanding) {
+    if (names.length == 0) {
+      return template;
+    }
+
+    /* Get the values first so the buffer can be sized exactly */
+    final String[] vals = new String[names.length];
+    int len = literalLength;
+
+    for (int i = 0; i < names.length; i++) {
+      String val = props.get(names[i]);
+
+      if ((val != null) && (expanding != null) &&
+              (val.indexOf("${") >= 0)) {
+        val = expand(names[i], val, props, expanding);
+      }
+
+      if (val != null) {
+        vals[i] = val;
+        len += val.length();
+      }
+    }
+
+    final StringBuilder sb = new StringBuilder(len);
+
+    for (int i = 0; i < names.length; i++) {
+      sb.append(literals[i]);
+
+      if (vals[i] != null) {
+        sb.append(vals[i]);
+      }
+    }
+
+    sb.append(literals[names.length]);
+
+    return sb.toString();
+  }
+
+  private static String expand(final String name,
+                               final String val,
+                               final PropertyFetcher props,
+                               final List<String> expanding) {
+    if (expanding.contains(name)) {
+      final StringBuilder sb = new StringBuilder(
+              "Property reference loop: ");
+
+      for (final String s: expanding.subList(expanding.indexOf(name),
+                                             expanding.size())) {
+        sb.append(s).append(" -> ");
+      }
+
+      sb.append(name);
+
+      throw new IllegalArgumentException(sb.toString());
+    }
+
+    expanding.add(name);
+
+    try {
+      return compile(val).render(props, expanding);
+    } finally {
+      expanding.remove(expanding.size() - 1);
+    }
+  }
+
+  private static PropertyTemplate parse(final String val) {
+    final List<String> literals = new ArrayList<>();
+    final List<String> names = new ArrayList<>();
+
+    int segStart = 0;
+    int pos = val.indexOf("${");
+
+    while (pos >= 0) {
+      final int end = val.indexOf("}", pos);
+
+      if (end < 0) {
+        //No matching close. The rest is literal.
+        break;
+      }
+
+      literals.add(val.substring(segStart, pos));
+      names.add(val.substring(pos + 2, end).trim());
+
+      segStart = end + 1;
+      pos = val.indexOf("${", segStart);
+    }
+
+    literals.add(val.substring(segStart));
+
+    return new PropertyTemplate(val,
+                                literals.toArray(new String[literals.size()]),
+                                names.toArray(new String[names.size()]));
+  }
+}
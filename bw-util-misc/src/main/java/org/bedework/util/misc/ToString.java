@@ -18,15 +18,34 @@
 */
 package org.bedework.util.misc;
 
+import java.io.IOException;
 import java.util.List;
 
 /** Help with ToString. And yes I know there's an Apache Commons one but I want
  * easier formatting and this is trivial.
  *
+ * <p>The StringBuilder comes from a small per-thread pool and goes back
+ * when the result is taken with toString or appendTo, so most calls
+ * allocate only the result. Nested use - a toStringSegment calling
+ * toString on a field - takes another builder from the pool.
+ *
+ * <p>For logging use lazy to defer all of the formatting until the
+ * logger actually prints the message.
+ *
  * @author douglm
  *
  */
 public class ToString {
+  /** Something which adds its fields to a ToString
+   */
+  public interface Segment {
+    /** Add our stuff to the ToString object
+     *
+     * @param ts    ToString for result
+     */
+    void toStringSegment(ToString ts);
+  }
+
   private StringBuilder sb;
   private String indent = "";
   private String delim = "";
@@ -35,15 +54,51 @@ public class ToString {
 
   private boolean valuesOnly;
 
+  /* Slot in the thread's pool or -1 if not pooled */
+  private int slot = -1;
+
+  /* Set once the result has been taken */
+  private String result;
+
   private final static int maxLen = 80;
   private final static String indentVal = "  ";
 
+  /* Builders per thread - enough for a few levels of nesting */
+  private final static int poolSize = 4;
+
+  /* Larger builders are dropped rather than kept for the thread */
+  private final static int maxPooledCapacity = 8192;
+
+  private final static String[] indents = new String[16];
+
+  static {
+    indents[0] = "";
+
+    for (int i = 1; i < indents.length; i++) {
+      indents[i] = indents[i - 1] + indentVal;
+    }
+  }
+
+  private static class Builders {
+    final StringBuilder[] sbs = new StringBuilder[poolSize];
+    final boolean[] inUse = new boolean[poolSize];
+  }
+
+  private static final ThreadLocal<Builders> builders =
+          new ThreadLocal<Builders>() {
+            @Override
+            protected Builders initialValue() {
+              return new Builders();
+            }
+          };
+
   /** Create an instance for the given object
    *
    * @param o the object
    */
   public ToString(final Object o) {
-    sb = new StringBuilder(o.getClass().getSimpleName()).append("{");
+    borrow();
+    sb.append(o.getClass().getSimpleName()).append("{");
   }
 
   private ToString() {
@@ -56,7 +111,7 @@ public class ToString {
     final ToString ts = new ToString();
 
     ts.valuesOnly = true;
-    ts.sb = new StringBuilder();
+    ts.borrow();
 
     return ts;
   }
@@ -67,13 +122,70 @@ public class ToString {
    * @param indent the indent
    */
   public ToString(final Object o, final String indent) {
-    sb = new StringBuilder(indent);
+    borrow();
+    sb.append(indent);
     sb.append(o.getClass().getSimpleName()).append("{");
     this.indent = indent;
   }
 
+  /** Create an instance for the given object indented by level steps
+   *
+   * @param o the object
+   * @param level of indentation
+   */
+  public ToString(final Object o, final int level) {
+    this(o, getIndent(level));
+  }
+
+  /**
+   * @param level of indentation
+   * @return the indentation string for the level - cached for small levels
+   */
+  public static String getIndent(final int level) {
+    if (level < indents.length) {
+      return indents[level];
+    }
+
+    final StringBuilder isb = new StringBuilder(indents[indents.length - 1]);
+
+    for (int i = indents.length - 1; i < level; i++) {
+      isb.append(indentVal);
+    }
+
+    return isb.toString();
+  }
+
+  /** An object which formats the segment only when its toString method
+   * is called, e.g.
+   * <pre>
+   *   getLogger().debug(ToString.lazy(ev));
+   * </pre>
+   * formats nothing unless debug is enabled.
+   *
+   * @param seg adds the fields
+   * @return the deferred result
+   */
+  public static Object lazy(final Segment seg) {
+    return new Object() {
+      @Override
+      public String toString() {
+        final ToString ts = new ToString(seg);
+
+        try {
+          seg.toStringSegment(ts);
+
+          return ts.toString();
+        } finally {
+          // Gives back the builder if the segment threw
+          ts.release();
+        }
+      }
+    };
+  }
+
   /**
-   * @return the StringBuilder we use
+   * @return the StringBuilder we use. Only valid until the result is
+   *          taken with toString or appendTo.
    */
   public StringBuilder getSb() {
     return sb;
@@ -130,7 +242,7 @@ public class ToString {
    */
   public ToString append(final Object value) {
     delimit();
-    sb.append(String.valueOf(value));
+    sb.append(value);
 
     return this;
   }
@@ -223,7 +335,10 @@ public class ToString {
    * @return this object
    */
   public ToString append(final String name, final boolean value) {
-    return append(name, String.valueOf(value));
+    nameEquals(name);
+    sb.append(value);
+
+    return this;
   }
 
   /**
@@ -232,7 +347,10 @@ public class ToString {
    * @return this object
    */
   public ToString append(final String name, final int value) {
-    return append(name, String.valueOf(value));
+    nameEquals(name);
+    sb.append(value);
+
+    return this;
   }
 
   /**
@@ -243,13 +361,88 @@ public class ToString {
     return append("Exception", t.getMessage());
   }
 
+  /** Append the result to out without creating a String. The builder
+   * is released so this object can't be used after this.
+   *
+   * @param out to append to
+   * @throws IOException from out
+   */
+  public void appendTo(final Appendable out) throws IOException {
+    if (result != null) {
+      out.append(result);
+      return;
+    }
+
+    try {
+      finish();
+      out.append(sb);
+    } finally {
+      release();
+    }
+  }
+
   @Override
   public String toString() {
+    if (result != null) {
+      return result;
+    }
+
+    if (sb == null) {
+      throw new IllegalStateException("Result already taken by appendTo");
+    }
+
+    finish();
+    result = sb.toString();
+    release();
+
+    return result;
+  }
+
+  private void finish() {
     if (!valuesOnly) {
       sb.append("}");
     }
+  }
+
+  private void borrow() {
+    final Builders b = builders.get();
+
+    for (int i = 0; i < poolSize; i++) {
+      if (!b.inUse[i]) {
+        if (b.sbs[i] == null) {
+          b.sbs[i] = new StringBuilder(128);
+        }
+
+        b.inUse[i] = true;
+        slot = i;
+        sb = b.sbs[i];
+        return;
+      }
+    }
+
+    sb = new StringBuilder(128);
+  }
+
+  /* After this sb belongs to the pool. getSb callers were warned. */
+  private void release() {
+    if (slot < 0) {
+      return;
+    }
+
+    final Builders b = builders.get();
+
+    if (b.sbs[slot] == sb) {
+      if (sb.capacity() > maxPooledCapacity) {
+        b.sbs[slot] = null;
+      } else {
+        sb.setLength(0);
+      }
+
+      b.inUse[slot] = false;
+    }
 
-    return sb.toString();
+    slot = -1;
+    sb = null;
   }
 
   private void outputNewLine() {
@@ -19,6 +19,7 @@
 package org.bedework.util.misc;
 
 import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Generate unique uids.
  *
@@ -42,57 +43,89 @@ public class Uid {
     IP = ipadd;
   }
 
-  private static short counter = (short) 0;
   private static final int JVM = (int) ( System.currentTimeMillis() >>> 8 );
 
   private static String sep = "-";
 
+  /* Low bits of the stamp are a sequence within the millisecond. 41 bits
+   * of millis leave 22 - over 4 million uids per millisecond. */
+  private static final int seqBits = 22;
+
+  private static final long seqMask = (1L << seqBits) - 1;
+
+  /* (millis << seqBits) | sequence - only ever increases */
+  private static final AtomicLong stamp = new AtomicLong();
+
+  private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+  /* The fixed IP and JVM parts and their separators */
+  private static final char[] prefix = new char[18];
+
+  static {
+    formatHex(IP, 8, prefix, 0);
+    prefix[8] = sep.charAt(0);
+    formatHex(JVM, 8, prefix, 9);
+    prefix[17] = sep.charAt(0);
+  }
+
   /*  ---------------- UID gen fields -------------------- */
 
   /** Code copied and modified from hibernate UUIDHexGenerator. Generates a
    * unique 36 character key of hex + separators.
    *
+   * <p>The time and sequence come from one atomic stamp so no lock is
+   * taken. If the sequence overflows within a millisecond the stamp
+   * carries into the next millisecond, so uids are unique within the JVM
+   * however fast they are requested.
+   *
    * @return String uid.
    */
   public static String getUid() {
-    /* Unique down to millisecond */
-    short hiTime = (short)(System.currentTimeMillis() >>> 32);
+    final long st = nextStamp();
+    final long time = st >>> seqBits;
 
-    int loTime = (int)System.currentTimeMillis();
+    final char[] buf = new char[40];
 
-    int ct;
+    System.arraycopy(prefix, 0, buf, 0, prefix.length);
 
-    synchronized(Uid.class) {
-      if (counter < 0) {
-        counter = 0;
-      }
-
-      ct = counter++;
-    }
+    formatHex((int)(time >>> 32), 4, buf, 18);   // hiTime
+    buf[22] = sep.charAt(0);
+    formatHex((int)time, 8, buf, 23);            // loTime
+    buf[31] = sep.charAt(0);
+    formatHex((int)(st & seqMask), 8, buf, 32);  // sequence
 
-    return new StringBuilder(36).
-            append(format(IP)).append(sep).
-            append(format(JVM)).append(sep).
-            append(format(hiTime)).append(sep).
-            append(format(loTime)).append(sep).
-            append(format(ct)).
-            toString();
+    return new String(buf);
   }
 
-  private static String format(int intval) {
-    String formatted = Integer.toHexString(intval);
-    StringBuilder buf = new StringBuilder("00000000");
-    buf.replace(8 - formatted.length(), 8, formatted);
+  /* The next stamp - at least the current millisecond */
+  private static long nextStamp() {
+    final long floor = System.currentTimeMillis() << seqBits;
 
-    return buf.toString();
+    long st = stamp.incrementAndGet();
+
+    while (st < floor) {
+      /* First uid this millisecond - move the stamp to the clock */
+      if (stamp.compareAndSet(st, floor)) {
+        return floor;
+      }
+
+      st = stamp.incrementAndGet();
+    }
+
+    return st;
   }
 
-  private static String format(short shortval) {
-    String formatted = Integer.toHexString(shortval);
-    StringBuilder buf = new StringBuilder("0000");
-    buf.replace(4 - formatted.length(), 4, formatted);
+  /* Write the last "digits" hex digits of val into buf at pos */
+  private static void formatHex(final int val,
+                                final int digits,
+                                final char[] buf,
+                                final int pos) {
+    int v = val;
 
-    return buf.toString();
+    for (int i = pos + digits - 1; i >= pos; i--) {
+      buf[i] = hexDigits[v & 0xf];
+      v >>>= 4;
+    }
   }
 
   /** From hibernate.util
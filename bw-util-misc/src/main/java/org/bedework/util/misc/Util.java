@@ -265,6 +265,25 @@ public class Util {
       }
     }
   }
+  /**
+   * @param pr the properties
+   * @param name of an integer property
+   * @param def value if the property is absent
+   * @return the value
+   * @throws NumberFormatException for a bad value
+   */
+  public static int intProperty(final Properties pr,
+                                final String name,
+                                final int def) {
+    final String val = pr.getProperty(name);
+
+    if (val == null) {
+      return def;
+    }
+
+    return Integer.parseInt(val.trim());
+  }
+
 
   /** Given a class name return an object of that class.
    * The class parameter is used to check that the
@@ -320,55 +339,24 @@ public class Util {
     }
   }
 
+  /** Replace ${name} references with property values. The parsed form
+   * of val is cached - see PropertyTemplate.
+   *
+   * @param val string with references
+   * @param props supply the values
+   * @return val with references replaced or null for null val
+   */
   public static String propertyReplace(final String val,
                                        final PropertyFetcher props) {
     if (val == null) {
       return null;
     }
 
-    int pos = val.indexOf("${");
-
-    if (pos < 0) {
+    if (val.indexOf("${") < 0) {
       return val;
     }
 
-    final StringBuilder sb = new StringBuilder(val.length());
-    int segStart = 0;
-
-    while (pos >= 0) {
-      if (pos > 0) {
-        sb.append(val.substring(segStart, pos));
-      }
-
-      int end = val.indexOf("}", pos);
-
-      if (end < 0) {
-        //No matching close. Just append rest and return.
-        sb.append(val.substring(pos));
-        break;
-      }
-
-      final String pval = props.get(val.substring(pos + 2, end).trim());
-
-      if (pval != null) {
-        sb.append(pval);
-      }
-
-      segStart = end + 1;
-      if (segStart > val.length()) {
-        break;
-      }
-
-      pos = val.indexOf("${", segStart);
-
-      if (pos < 0) {
-        //Done.
-        sb.append(val.substring(segStart));
-        break;
-      }
-    }
-
-    return sb.toString();
+    return PropertyTemplate.compile(val).render(props);
   }
 
   /** Format a message consisting of a format string
@@ -859,4 +847,19 @@ public class Util {
       return null;
     }
   }
+
+  /** Append a "name: value" line, e.g. for getStats methods.
+   *
+   * @param sb to append to
+   * @param name of the value
+   * @param val the value
+   */
+  public static void statline(final StringBuilder sb,
+                              final String name,
+                              final Object val) {
+    sb.append(name);
+    sb.append(": ");
+    sb.append(val);
+    sb.append("\n");
+  }
 }
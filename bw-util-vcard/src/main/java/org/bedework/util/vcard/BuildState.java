@@ -73,6 +73,19 @@ public class BuildState {
     this.tzRegistry = tzRegistry;
   }
 
+  /** Clear out any state left from a previous build so this object and its
+   * content handler can be reused.
+   */
+  public void reset() {
+    card = null;
+    propertyFactory = null;
+    group = null;
+    params = null;
+    property = null;
+    propertyName = null;
+    datesMissingTimezones.clear();
+  }
+
   /**
    * @param val the content handler
    */
@@ -18,6 +18,7 @@
 */
 package org.bedework.util.vcard;
 
+import org.bedework.util.misc.NameIndex;
 import org.bedework.util.xml.tagdefs.BedeworkServerTags;
 import org.bedework.util.xml.tagdefs.XcardTags;
 
@@ -174,14 +175,22 @@ public class CardPropertyIndex implements Serializable {
 
     private final DataType ptype;
 
-    private static final HashMap<String, ParameterInfoIndex> pnameLookup =
-            new HashMap<>();
+    private static final NameIndex<ParameterInfoIndex> pnameLookup;
+
+    private static final NameIndex<ParameterInfoIndex> jnameLookup;
 
     static {
+      final Map<String, ParameterInfoIndex> pnames = new HashMap<>();
+      final Map<String, ParameterInfoIndex> jnames = new HashMap<>();
+
       for (final ParameterInfoIndex pii: values()) {
         final String pname = pii.getPnameLC();
-        pnameLookup.put(pname, pii);
+        pnames.put(pname, pii);
+        jnames.put(pii.getJname(), pii);
       }
+
+      pnameLookup = new NameIndex<>(pnames, false);
+      jnameLookup = new NameIndex<>(jnames, false);
     }
 
     ParameterInfoIndex(final String pname) {
@@ -247,7 +256,16 @@ public class CardPropertyIndex implements Serializable {
      * @return ParameterInfoIndex
      */
     public static ParameterInfoIndex lookupPname(final String val) {
-      return pnameLookup.get(val.toLowerCase());
+      return pnameLookup.get(val);
+    }
+
+    /** get the index given the json parameter name
+     *
+     * @param val json name
+     * @return ParameterInfoIndex
+     */
+    public static ParameterInfoIndex lookupJname(final String val) {
+      return jnameLookup.get(val);
     }
   }
 
@@ -586,18 +604,26 @@ public class CardPropertyIndex implements Serializable {
 
     private boolean immutable;
 
-    private static Map<QName, PropertyInfoIndex> qnameLookup =
+    private static final NameIndex<PropertyInfoIndex> nameLookup;
+
+    private static final Map<QName, PropertyInfoIndex> qnameLookup =
             new HashMap<>();
 
-    private static Map<Class, PropertyInfoIndex> xmlClassLookup =
+    private static final Map<Class, PropertyInfoIndex> xmlClassLookup =
             new HashMap<>();
 
     static {
+      final Map<String, PropertyInfoIndex> names = new HashMap<>();
+
       for (PropertyInfoIndex pii: values()) {
+        names.put(pii.name(), pii);
+
         qnameLookup.put(pii.getQname(), pii);
 
         xmlClassLookup.put(pii.xmlClass, pii);
       }
+
+      nameLookup = new NameIndex<>(names, true);
     }
 
     PropertyInfoIndex(final QName qname,
@@ -639,26 +665,15 @@ public class CardPropertyIndex implements Serializable {
       this.immutable = immutable;
     }
 
-    /** Property names can have "-" in them. This method takes the
-     * name, replaces any "-" with underscore and then tries valueOf.
+    /** Property names can have "-" in them. This method looks up the
+     * name treating any "-" as underscore and ignoring case, i.e. it matches
+     * the enum constant names.
      *
      * @param pname - any case
      * @return index or null if not found
      */
     public static PropertyInfoIndex fromName(final String pname) {
-      final String name;
-
-      if (!pname.contains("-")) {
-        name = pname.toUpperCase();
-      } else {
-        name = pname.replace("-", "_").toUpperCase();
-      }
-
-      try {
-        return PropertyInfoIndex.valueOf(name);
-      } catch (final Throwable ignored) {
-        return null;
-      }
+      return nameLookup.get(pname);
     }
 
     /** get the qname
@@ -93,6 +93,9 @@ public class JsonCardBuilder {
 
   private final TimeZoneRegistry tzRegistry;
 
+  /* Reused for each build */
+  private final BuildState bs;
+
   private String lastProperty;
 
   private final static Set<String> semicolonListProperties = new TreeSet<>();
@@ -110,6 +113,9 @@ public class JsonCardBuilder {
    */
   public JsonCardBuilder(final TimeZoneRegistry tzRegistry) {
     this.tzRegistry = tzRegistry;
+
+    bs = new BuildState(tzRegistry);
+    bs.setContentHandler(new ContentHandler(bs));
   }
 
   /**
@@ -134,9 +140,8 @@ public class JsonCardBuilder {
    */
   public VCard build(final Reader in)
           throws IOException, ParserException {
-    final BuildState bs = new BuildState(tzRegistry);
-
-    bs.setContentHandler(new ContentHandler(bs));
+    bs.reset();
+    lastProperty = null;
 
     try {
       final JsonParser parser = jsonFactory.createParser(in);